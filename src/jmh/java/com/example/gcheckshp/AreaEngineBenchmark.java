@@ -0,0 +1,142 @@
+package com.example.gcheckshp;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygonal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * area 模式的整层面积：{@link ShoelaceAreaEngine} 从映射的坐标缓冲区计算（不能走快速路径的记录与 area 模式一样
+ * 改用 JTS），与全部记录都读成 JTS 几何、校验有效性后计算面积的路径对比。
+ * 图层由 {@link SyntheticLayerGenerator} 写到临时目录（建筑状多边形，约千分之一为自相交）；
+ * sidecar 为true时使用 check 模式写出的有效性旁车文件（已知有效的记录跳过预筛和 IsValidOp），
+ * area 为 geodesic 时按 WGS84 椭球计算，否则直接按经纬度平面计算。
+ * 运行: gradle jmh -Pbench=AreaEngineBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AreaEngineBenchmark {
+
+    /**
+     * 合成图层及其映射读取器
+     */
+    @State(Scope.Benchmark)
+    public static class Layer {
+
+        @Param({ "100000" })
+        public int buildings;
+
+        @Param({ "false", "true" })
+        public boolean sidecar;
+
+        @Param({ "planar", "geodesic" })
+        public String area;
+
+        File dir;
+        MappedShapefileReader reader;
+        ValiditySidecar validity;
+        GeodesicArea geodesic;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            dir = Files.createTempDirectory("area-bench").toFile();
+            File shp = new File(dir, "buildings.shp");
+            SyntheticLayerGenerator.writeBuildings(shp, buildings, (int) Math.ceil(Math.sqrt(buildings)), 0.0, 0.001,
+                    new Random(42));
+            reader = MappedShapefileReader.open(shp);
+            if (sidecar) {
+                // 与 check 模式一样逐条校验后写出旁车文件
+                BitSet valid = new BitSet(reader.getRecordCount());
+                for (int i = 0; i < reader.getRecordCount(); i++) {
+                    Geometry geom = reader.readGeometry(i, MappedShapefileReader.PACKED_FACTORY);
+                    if (geom != null && geom.isValid()) {
+                        valid.set(i);
+                    }
+                }
+                ValiditySidecar.write(shp, valid, reader.getRecordCount());
+                validity = ValiditySidecar.load(shp);
+                if (validity == null) {
+                    throw new IllegalStateException("Validity sidecar was not written");
+                }
+            }
+            geodesic = "geodesic".equals(area) ? new GeodesicArea("WGS 84", GeodesicArea.WGS84_SEMI_MAJOR,
+                    GeodesicArea.WGS84_INVERSE_FLATTENING) : null;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (reader != null) {
+                reader.close();
+            }
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+
+        // JTS 路径：与 area 模式一样，旁车文件中未记为有效的记录先做有效性校验
+        double jtsArea(int record) throws Exception {
+            Geometry geom = reader.readGeometry(record, MappedShapefileReader.PACKED_FACTORY);
+            if (!(geom instanceof Polygonal) || geom.isEmpty()) {
+                return 0.0;
+            }
+            String featureId = "buildings." + (record + 1);
+            if ((validity == null || !validity.isKnownValid(record)) && !GeometryEvents.isValid(geom, featureId)) {
+                return 0.0;
+            }
+            return geodesic != null ? geodesic.area(geom) : geom.getArea();
+        }
+    }
+
+    /**
+     * 面积引擎的后台线程数
+     */
+    @State(Scope.Benchmark)
+    public static class Engine {
+
+        @Param({ "1", "4" })
+        public int threads;
+    }
+
+    @Benchmark
+    public double shoelaceEngine(Layer layer, Engine engine) throws Exception {
+        double total = 0.0;
+        try (ShoelaceAreaEngine areas = new ShoelaceAreaEngine(layer.reader, layer.validity, null, layer.geodesic,
+                null, engine.threads)) {
+            for (int i = 0; i < layer.reader.getRecordCount(); i++) {
+                double area = areas.area(i);
+                if (area == ShoelaceAreaEngine.SKIPPED) {
+                    continue;
+                }
+                total += Double.isNaN(area) ? layer.jtsArea(i) : area;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double jtsFallback(Layer layer) throws Exception {
+        double total = 0.0;
+        for (int i = 0; i < layer.reader.getRecordCount(); i++) {
+            total += layer.jtsArea(i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.gcheckshp;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * intersect / area 热路径的微基准：候选查询+叠加（STRtree 和 Hilbert R 树）、重叠分组、批量合并、网格分块、坐标转换、CSV写出和面积循环。
+ * 输入为 {@link SyntheticPolygons} 生成的多边形，参数为顶点数、相邻多边形重叠比例和候选数；
+ * 每个基准只使用它依赖的参数（Feature 只有顶点数，Rows 没有参数），避免无关的参数组合。
+ * 面积循环只计算内存中的 JTS 几何；area 模式从映射图层计算的整层面积见 {@link AreaEngineBenchmark}。
+ * 运行: gradle jmh -Pbench=GeometryHotPathBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeometryHotPathBenchmark {
+
+    // 网格中单个多边形的半径（度）
+    private static final double RADIUS = 0.001;
+
+    /**
+     * 单个 shp1 要素
+     */
+    @State(Scope.Benchmark)
+    public static class Feature {
+
+        @Param({ "32", "512", "8192" })
+        public int vertices;
+
+        Geometry geometry;
+        MathTransform toUtm;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            geometry = new SyntheticPolygons(1).blob(SyntheticPolygons.ORIGIN_X, SyntheticPolygons.ORIGIN_Y, 0.05,
+                    vertices);
+            toUtm = CRS.findMathTransform(CRS.decode("EPSG:4326", true), CRS.decode("EPSG:32650"), true);
+        }
+    }
+
+    /**
+     * shp2 网格及覆盖整个网格的 shp1 要素：candidates 个 shp2 多边形全部落在 shp1 要素的包络内
+     */
+    @State(Scope.Benchmark)
+    public static class Layer {
+
+        @Param({ "32", "512" })
+        public int vertices;
+
+        @Param({ "0.0", "0.3" })
+        public double overlap;
+
+        @Param({ "16", "256" })
+        public int candidates;
+
+        List<Geometry> shp2;
+        Geometry shp1;
+        Envelope shp1Envelope;
+        Shp2Index strTree;
+        Shp2Index hilbertTree;
+        GeodesicArea geodesic;
+        RunMetrics.Phase queryPhase;
+        RunMetrics.Phase overlayPhase;
+        Diagnostics diagnostics;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            SyntheticPolygons generator = new SyntheticPolygons(42);
+            shp2 = generator.grid(candidates, vertices, RADIUS, overlap, SyntheticPolygons.ORIGIN_X,
+                    SyntheticPolygons.ORIGIN_Y);
+            Envelope extent = SyntheticPolygons.envelopeOf(shp2);
+            double radius = Math.max(extent.getWidth(), extent.getHeight()) / 2;
+            shp1 = generator.blob(extent.centre().x, extent.centre().y, radius, vertices);
+            shp1Envelope = shp1.getEnvelopeInternal();
+            strTree = new Shp2Index(false, 100, null);
+            hilbertTree = new Shp2Index(true, 16, null);
+            Map<Geometry, String> geomToGroup = new HashMap<>();
+            for (int i = 0; i < shp2.size(); i++) {
+                Geometry geom = shp2.get(i);
+                strTree.insert(geom, null);
+                hilbertTree.insert(geom, null);
+                geomToGroup.put(geom, "g" + (i % 4));
+            }
+            strTree.setGroups(geomToGroup);
+            hilbertTree.setGroups(geomToGroup);
+            strTree.build();
+            hilbertTree.build();
+            geodesic = new GeodesicArea("WGS 84", GeodesicArea.WGS84_SEMI_MAJOR,
+                    GeodesicArea.WGS84_INVERSE_FLATTENING);
+            RunMetrics metrics = new RunMetrics("benchmark", false);
+            queryPhase = metrics.phase("candidate_query");
+            overlayPhase = metrics.phase("overlay");
+            diagnostics = Diagnostics.create();
+        }
+    }
+
+    /**
+     * CSV 写出：8个属性字段（含需要转义的逗号和引号）和4个分组列，写到空输出
+     */
+    @State(Scope.Benchmark)
+    public static class Rows {
+
+        static final String[] VALUES = { "350102", "鼓楼区", "Fuzhou, Fujian", "building \"A\"", "residential",
+                "12", "1998", "note\nwith newline" };
+
+        SimpleFeature feature;
+        List<String> fieldNames;
+        List<String> groupValues;
+        Map<String, gcheckshp.GroupStats> groupStats;
+        PrintWriter writer;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            SimpleFeatureType type = DataUtilities.createType("bench",
+                    "the_geom:Polygon,code:String,name:String,city:String,label:String,use:String,floors:String,"
+                            + "year:String,note:String");
+            Object[] attributes = new Object[VALUES.length + 1];
+            System.arraycopy(VALUES, 0, attributes, 1, VALUES.length);
+            feature = SimpleFeatureBuilder.build(type, attributes, "bench.1");
+            fieldNames = Arrays.asList("code", "name", "city", "label", "use", "floors", "year", "note");
+            groupValues = Arrays.asList("g0", "g1", "g2", "g3");
+            groupStats = new HashMap<>();
+            for (int i = 0; i < 3; i++) {
+                gcheckshp.GroupStats stats = new gcheckshp.GroupStats();
+                stats.addArea(1234.5678 * (i + 1));
+                stats.incrementCount();
+                groupStats.put("g" + i, stats);
+            }
+            writer = new PrintWriter(Writer.nullWriter());
+        }
+    }
+
+    @Benchmark
+    public Object calculateIntersections(Layer layer) {
+        return gcheckshp.calculateIntersections(layer.shp1, layer.shp1Envelope, layer.strTree, "bench.1", "group",
+                null, null, layer.diagnostics, layer.queryPhase, layer.overlayPhase);
+    }
+
+    @Benchmark
+    public Object calculateIntersectionsHilbert(Layer layer) {
+        return gcheckshp.calculateIntersections(layer.shp1, layer.shp1Envelope, layer.hilbertTree, "bench.1",
+                "group", null, null, layer.diagnostics, layer.queryPhase, layer.overlayPhase);
+    }
+
+    @Benchmark
+    public int findOverlapGroups(Layer layer) {
+        return gcheckshp.findOverlapGroups(layer.shp2).size();
+    }
+
+    @Benchmark
+    public Geometry mergeGeometriesRobustly(Layer layer) {
+        // 超过100个几何对象时会原地排序，每次复制一份
+        return gcheckshp.mergeGeometriesRobustly(new ArrayList<>(layer.shp2));
+    }
+
+    @Benchmark
+    public double areaPlanar(Layer layer) {
+        double total = 0;
+        for (Geometry geom : layer.shp2) {
+            total += geom.getArea();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double areaGeodesic(Layer layer) {
+        double total = 0;
+        for (Geometry geom : layer.shp2) {
+            total += layer.geodesic.area(geom);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int splitGeometryIntoTiles(Feature feature) {
+        return gcheckshp.splitGeometryIntoTiles(feature.geometry, 4).size();
+    }
+
+    @Benchmark
+    public Geometry transformGeometry(Feature feature) {
+        return gcheckshp.transformGeometry(feature.geometry, feature.toUtm, null, Diagnostics.create(), "bench.1",
+                null);
+    }
+
+    @Benchmark
+    public int escapeCsv() {
+        int length = 0;
+        for (String value : Rows.VALUES) {
+            length += gcheckshp.escapeCsv(value).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public void writeCsvRow(Rows rows) {
+        gcheckshp.writeCsvRow(rows.writer, rows.feature, rows.fieldNames, 98765.4321, 4321.0987, 3, "group",
+                rows.groupStats, rows.groupValues);
+    }
+}
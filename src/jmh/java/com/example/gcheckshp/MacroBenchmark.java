@@ -0,0 +1,241 @@
+package com.example.gcheckshp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端基准：对 {@link SyntheticLayerGenerator} 生成的图层逐个模式（check、clean、reproject、area、intersect、
+ * dedup、grouped、packed、hilbert）启动独立的 JVM 运行 fat jar，记录墙钟时间（含JVM启动）。每个模式重复 --repeat 次。
+ *
+ * 结果逐模式追加到 results.ndjson，每行包含标签、提交、Java版本、输入记录数、各次耗时、中位数和最小值，
+ * 不同版本或分支的结果可以直接对比；area 和 intersect 模式同时写出 --metrics 报告。每次运行的控制台输出
+ * 写入 logs/。运行: gradle macroBenchmark [-PbenchLabel=...] [-PbenchModes=area,intersect] [-PbenchRepeat=3]
+ */
+public final class MacroBenchmark {
+
+    private static final List<String> ALL_MODES = Arrays.asList("check", "clean", "reproject", "area", "intersect",
+            "dedup", "grouped", "packed", "hilbert");
+
+    private MacroBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        File jar = null;
+        File layerDir = new File("build/synthetic");
+        File outDir = new File("build/macro");
+        List<String> modes = ALL_MODES;
+        int repeat = 3;
+        String label = "";
+        String projection = "EPSG:32650";
+        List<String> jvmArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--jar": jar = new File(value); i++; break;
+                case "--layers": layerDir = new File(value); i++; break;
+                case "--out": outDir = new File(value); i++; break;
+                case "--modes": modes = Arrays.asList(value.split(",")); i++; break;
+                case "--repeat": repeat = Integer.parseInt(value); i++; break;
+                case "--label": label = value; i++; break;
+                case "--projection": projection = value; i++; break;
+                case "--jvm-args":
+                    if (!value.isBlank()) {
+                        jvmArgs.addAll(Arrays.asList(value.trim().split("\\s+")));
+                    }
+                    i++;
+                    break;
+                default:
+                    System.out.println("Usage: MacroBenchmark --jar checkshp.jar [--layers dir] [--out dir] "
+                            + "[--modes check,clean,...] [--repeat n] [--label text] [--projection crs] "
+                            + "[--jvm-args \"...\"]");
+                    return;
+            }
+        }
+        File buildings = new File(layerDir, "buildings.shp");
+        File districts = new File(layerDir, "districts.shp");
+        if (jar == null || !jar.isFile()) {
+            throw new IllegalArgumentException("Fat jar not found: " + jar);
+        }
+        if (!buildings.isFile() || !districts.isFile()) {
+            throw new IllegalArgumentException("Synthetic layers not found in " + layerDir
+                    + "; run gradle generateLayers first");
+        }
+        for (String mode : modes) {
+            if (!ALL_MODES.contains(mode)) {
+                throw new IllegalArgumentException("Unknown mode: " + mode + " (expected one of " + ALL_MODES + ")");
+            }
+        }
+        File logDir = new File(outDir, "logs");
+        logDir.mkdirs();
+        String commit = commit();
+        String java = System.getProperty("java.version");
+        String timestamp = Instant.now().toString();
+
+        // 之前的 check 运行可能留下旁车文件
+        removeOutputs(layerDir, buildings, districts);
+        List<String> summary = new ArrayList<>();
+        for (String mode : modes) {
+            long[] wall = new long[repeat];
+            int exitCode = 0;
+            File metrics = new File(outDir, mode + ".metrics.json");
+            for (int r = 0; r < repeat; r++) {
+                List<String> command = new ArrayList<>();
+                command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+                command.addAll(jvmArgs);
+                command.add("-jar");
+                command.add(jar.getPath());
+                command.addAll(arguments(mode, buildings, districts, projection, outDir, metrics));
+                File log = new File(logDir, mode + "-" + (r + 1) + ".log");
+                System.out.println("[" + mode + " " + (r + 1) + "/" + repeat + "] " + String.join(" ", command));
+                long start = System.nanoTime();
+                Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                        .redirectOutput(log).start();
+                int code = process.waitFor();
+                wall[r] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                exitCode = Math.max(exitCode, code);
+                removeOutputs(layerDir, buildings, districts);
+            }
+            long[] sorted = wall.clone();
+            Arrays.sort(sorted);
+            long median = sorted[repeat / 2];
+            long min = sorted[0];
+
+            StringBuilder json = new StringBuilder("{");
+            field(json, "timestamp", timestamp);
+            field(json, "label", label);
+            field(json, "commit", commit);
+            field(json, "java", java);
+            field(json, "jvm_args", String.join(" ", jvmArgs));
+            field(json, "mode", mode);
+            boolean intersect = isIntersect(mode);
+            json.append("\"shp1_records\":").append(recordCount(intersect ? districts : buildings)).append(',');
+            json.append("\"shp2_records\":").append(intersect ? String.valueOf(recordCount(buildings)) : "null")
+                    .append(',');
+            json.append("\"wall_ms\":[");
+            for (int r = 0; r < repeat; r++) {
+                json.append(r > 0 ? "," : "").append(wall[r]);
+            }
+            json.append("],\"median_ms\":").append(median).append(",\"min_ms\":").append(min);
+            json.append(",\"exit_code\":").append(exitCode);
+            json.append(",\"metrics\":").append(metrics.isFile() ? quote(metrics.getPath()) : "null").append('}');
+            Files.write(new File(outDir, "results.ndjson").toPath(),
+                    Collections.singletonList(json.toString()), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            summary.add(String.format(Locale.ROOT, "%-10s %10d %10d %6d", mode, median, min, exitCode));
+        }
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-10s %10s %10s %6s", "mode", "median_ms", "min_ms", "exit"));
+        summary.forEach(System.out::println);
+        System.out.println("Results appended to " + new File(outDir, "results.ndjson").getPath());
+    }
+
+    private static boolean isIntersect(String mode) {
+        return mode.equals("intersect") || mode.equals("dedup") || mode.equals("grouped") || mode.equals("packed")
+                || mode.equals("hilbert");
+    }
+
+    // 各模式的命令行参数；area 和 intersect 类模式同时写出指标报告
+    private static List<String> arguments(String mode, File buildings, File districts, String projection,
+            File outDir, File metrics) {
+        String b = buildings.getPath();
+        String d = districts.getPath();
+        String m = metrics.getPath();
+        switch (mode) {
+            case "check":
+                return Arrays.asList(b, "summary", "false");
+            case "clean":
+                return Arrays.asList(b, "summary", "true");
+            case "reproject":
+                return Arrays.asList(b, "summary", "false", projection);
+            case "area":
+                return Arrays.asList(b, "area", new File(outDir, "buildings_area.csv").getPath(), "--projection",
+                        projection, "--metrics", m);
+            case "intersect":
+                return Arrays.asList(d, "intersect", b, "--projection", projection, "--metrics", m);
+            case "dedup":
+                return Arrays.asList(d, "intersect", b, "--projection", projection, "--deduplicate-shp2",
+                        "--metrics", m);
+            case "grouped":
+                return Arrays.asList(d, "intersect", b, "--projection", projection, "--group-field", "TYPE",
+                        "--metrics", m);
+            case "packed":
+                return Arrays.asList(d, "intersect", b, "--projection", projection, "--packed-shp2", "--metrics", m);
+            case "hilbert":
+                return Arrays.asList(d, "intersect", b, "--projection", projection, "--hilbert-index",
+                        "--hilbert-order", "--metrics", m);
+            default:
+                throw new IllegalArgumentException(mode);
+        }
+    }
+
+    // clean 和 reproject 的输出写在图层旁边，每次运行后删除，避免影响下一次运行；check 写出的有效性旁车文件
+    // 会让之后的 area、intersect 等模式跳过有效性校验，同样删除，所有模式都在没有旁车文件时计时
+    private static void removeOutputs(File layerDir, File buildings, File districts) throws IOException {
+        Files.deleteIfExists(ValiditySidecar.sidecarFile(buildings).toPath());
+        Files.deleteIfExists(ValiditySidecar.sidecarFile(districts).toPath());
+        File[] files = layerDir.listFiles((dir, name) -> name.startsWith("buildings_clean.")
+                || name.startsWith("buildings_reproj"));
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    // .shx 为100字节文件头加每条记录8字节
+    private static long recordCount(File shp) {
+        String name = shp.getName();
+        File shx = new File(shp.getParentFile(), name.substring(0, name.length() - 4) + ".shx");
+        return (shx.length() - 100) / 8;
+    }
+
+    private static String commit() {
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true)
+                    .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            return process.waitFor() == 0 ? output : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static void field(StringBuilder json, String name, String value) {
+        json.append(quote(name)).append(':').append(value != null ? quote(value) : "null").append(',');
+    }
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
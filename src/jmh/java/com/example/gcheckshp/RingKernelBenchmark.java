@@ -0,0 +1,86 @@
+package com.example.gcheckshp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 环内核：标量实现 与 向量实现（jdk.incubator.vector）对比。
+ * 环为带随机扰动的闭合圆环，点在环内判断每次调用测试一组分布在包络内的点。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RingKernelBenchmark {
+
+    private static final int POINTS = 64;
+
+    @Param({ "16", "256", "4096" })
+    public int vertices;
+
+    @Param({ "scalar", "vector" })
+    public String kernel;
+
+    private RingKernels.Kernels kernels;
+    private double[] coords;
+    private double[] points;
+    private final double[] envelope = new double[4];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("vector".equals(kernel)) {
+            if (!RingKernels.isVectorized()) {
+                throw new IllegalStateException("Vector kernels not available; run with --add-modules jdk.incubator.vector");
+            }
+            kernels = RingKernels.active();
+        } else {
+            kernels = RingKernels.scalar();
+        }
+        Random random = new Random(42);
+        coords = new double[(vertices + 1) * 2];
+        for (int i = 0; i < vertices; i++) {
+            double angle = -2 * Math.PI * i / vertices;
+            double radius = 1000 + random.nextDouble() * 100;
+            coords[i * 2] = 500000 + radius * Math.cos(angle);
+            coords[i * 2 + 1] = 2800000 + radius * Math.sin(angle);
+        }
+        coords[vertices * 2] = coords[0];
+        coords[vertices * 2 + 1] = coords[1];
+        points = new double[POINTS * 2];
+        for (int i = 0; i < POINTS; i++) {
+            points[i * 2] = 500000 + (random.nextDouble() - 0.5) * 2200;
+            points[i * 2 + 1] = 2800000 + (random.nextDouble() - 0.5) * 2200;
+        }
+    }
+
+    @Benchmark
+    public double signedArea() {
+        return kernels.signedArea(coords, 0, vertices + 1);
+    }
+
+    @Benchmark
+    public double envelope() {
+        kernels.envelope(coords, 0, vertices + 1, envelope);
+        return envelope[0] + envelope[1] + envelope[2] + envelope[3];
+    }
+
+    @Benchmark
+    public int containsPoint() {
+        int inside = 0;
+        for (int i = 0; i < POINTS; i++) {
+            if (kernels.containsPoint(coords, 0, vertices + 1, points[i * 2], points[i * 2 + 1])) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+}
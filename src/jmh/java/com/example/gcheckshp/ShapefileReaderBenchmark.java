@@ -0,0 +1,93 @@
+package com.example.gcheckshp;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Geometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 读取整个图层并计算面积：GeoTools 要素迭代器 与 内存映射读取器 对比。
+ * 两者都读取几何和第一个属性字段，结果送入 Blackhole。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ShapefileReaderBenchmark {
+
+    @Param({ "fuzhou.shp" })
+    public String shpPath;
+
+    private File shpFile;
+    private ShapefileDataStore store;
+    private String firstField;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        shpFile = new File(shpPath);
+        Map<String, Object> params = new HashMap<>();
+        params.put("url", shpFile.toURI().toURL());
+        store = (ShapefileDataStore) new ShapefileDataStoreFactory().createDataStore(params);
+        store.setCharset(Charset.forName("UTF-8"));
+        try (MappedDbfReader dbf = MappedDbfReader.open(shpFile, Charset.forName("UTF-8"))) {
+            firstField = dbf.getFieldName(0);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (store != null) {
+            store.dispose();
+        }
+    }
+
+    @Benchmark
+    public double geotoolsIterator(Blackhole bh) throws Exception {
+        double total = 0.0;
+        try (SimpleFeatureIterator it = store.getFeatureSource().getFeatures().features()) {
+            while (it.hasNext()) {
+                SimpleFeature feature = it.next();
+                Object geom = feature.getDefaultGeometry();
+                if (geom instanceof Geometry) {
+                    total += ((Geometry) geom).getArea();
+                }
+                bh.consume(feature.getAttribute(firstField));
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double mappedReader(Blackhole bh) throws Exception {
+        try (MappedShapefileReader reader = MappedShapefileReader.open(shpFile);
+                MappedDbfReader dbf = MappedDbfReader.open(shpFile, Charset.forName("UTF-8"))) {
+            int field = dbf.indexOf(firstField);
+            double total = 0.0;
+            for (int i = 0; i < reader.getRecordCount(); i++) {
+                Geometry geom = reader.readGeometry(i, MappedShapefileReader.PACKED_FACTORY);
+                if (geom != null) {
+                    total += geom.getArea();
+                }
+                bh.consume(dbf.getValue(i, field));
+            }
+            return total;
+        }
+    }
+}
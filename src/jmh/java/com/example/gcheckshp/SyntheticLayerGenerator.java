@@ -0,0 +1,445 @@
+package com.example.gcheckshp;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 合成大图层生成器：在福州附近（WGS84 经纬度）写出可重复的 buildings.shp 和 districts.shp，供端到端基准使用。
+ *
+ * buildings：按网格排列的建筑状多边形（旋转矩形、L形、带天井的回字形），数量可达数百万；overlap 比例的要素
+ * 与前一个要素部分重叠（去重模式的输入），invalid 比例的要素为自相交的蝴蝶结（清理模式的输入）。
+ * 属性为 ID、TYPE（分组字段）和 FLOORS。
+ * districts：覆盖整个建筑范围的 n×n 行政区，相邻区共用同一条锯齿边界（每条边生成一次，两侧正反使用），
+ * 边界顶点数可调，用来产生边界极复杂、彼此无缝无叠的面。属性为 ID 和 NAME。
+ *
+ * .shp/.shx/.dbf 直接按记录流式写出，不经过 GeoTools，内存占用与要素数无关。固定种子时输出逐字节相同。
+ * 运行: gradle generateLayers -Pbuildings=2000000 -Poverlap=0.05 -Pdistricts=8 -PedgeVertices=5000
+ */
+public final class SyntheticLayerGenerator {
+
+    private static final double ORIGIN_X = 119.0;
+    private static final double ORIGIN_Y = 25.8;
+    // 建筑网格间距约30米（度）
+    private static final double SPACING = 0.0003;
+    // 建筑边长 8–20 米（度），旋转后也不会碰到相邻网格的建筑
+    private static final double MIN_SIZE = 8 / 111000.0;
+    private static final double MAX_SIZE = 20 / 111000.0;
+    private static final double JITTER = 0.00002;
+    private static final String[] TYPES = { "residential", "residential", "residential", "commercial", "industrial",
+            "public" };
+
+    private static final String WGS84_WKT = "GEOGCS[\"GCS_WGS_1984\",DATUM[\"D_WGS_1984\",SPHEROID[\"WGS_1984\","
+            + "6378137.0,298.257223563]],PRIMEM[\"Greenwich\",0.0],UNIT[\"Degree\",0.0174532925199433]]";
+
+    private SyntheticLayerGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File outDir = new File("build/synthetic");
+        long buildings = 1_000_000;
+        double overlap = 0.05;
+        double invalid = 0.001;
+        int districts = 8;
+        int edgeVertices = 2000;
+        long seed = 42;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--out": outDir = new File(value); i++; break;
+                case "--buildings": buildings = Long.parseLong(value); i++; break;
+                case "--overlap": overlap = Double.parseDouble(value); i++; break;
+                case "--invalid": invalid = Double.parseDouble(value); i++; break;
+                case "--districts": districts = Integer.parseInt(value); i++; break;
+                case "--edge-vertices": edgeVertices = Integer.parseInt(value); i++; break;
+                case "--seed": seed = Long.parseLong(value); i++; break;
+                default:
+                    System.out.println("Usage: SyntheticLayerGenerator [--out dir] [--buildings n] [--overlap ratio] "
+                            + "[--invalid ratio] [--districts n] [--edge-vertices n] [--seed n]");
+                    return;
+            }
+        }
+        if (buildings <= 0 || districts <= 0 || edgeVertices < 0 || overlap < 0 || overlap >= 1 || invalid < 0
+                || invalid >= 1) {
+            throw new IllegalArgumentException("Invalid generator parameters");
+        }
+        outDir.mkdirs();
+        int side = (int) Math.ceil(Math.sqrt(buildings));
+        double extent = side * SPACING;
+
+        long start = System.nanoTime();
+        File buildingsShp = new File(outDir, "buildings.shp");
+        writeBuildings(buildingsShp, buildings, side, overlap, invalid, new Random(seed));
+        System.out.println(String.format(Locale.ROOT, "Wrote %s: %d buildings, overlap %.3f, invalid %.4f (%.1f s)",
+                buildingsShp.getPath(), buildings, overlap, invalid, (System.nanoTime() - start) / 1e9));
+
+        start = System.nanoTime();
+        File districtsShp = new File(outDir, "districts.shp");
+        writeDistricts(districtsShp, districts, edgeVertices, extent, seed);
+        System.out.println(String.format(Locale.ROOT, "Wrote %s: %d districts, %d vertices per edge (%.1f s)",
+                districtsShp.getPath(), districts * districts, edgeVertices, (System.nanoTime() - start) / 1e9));
+    }
+
+    // ---------------------------------------------------------------- buildings
+
+    // 也用于 AreaEngineBenchmark 在临时目录中生成图层
+    static void writeBuildings(File shp, long count, int side, double overlap, double invalid, Random random)
+            throws IOException {
+        Field[] fields = { new Field("ID", 'N', 10), new Field("TYPE", 'C', 12), new Field("FLOORS", 'N', 3) };
+        try (PolygonWriter writer = new PolygonWriter(shp, fields, count)) {
+            long cell = 0;
+            double[][] previous = null;
+            for (long k = 0; k < count; k++) {
+                double[][] rings;
+                if (previous != null && random.nextDouble() < overlap) {
+                    // 与前一个要素部分重叠：平移约三分之一边长
+                    rings = shift(previous, MIN_SIZE * 0.4, MIN_SIZE * 0.3);
+                    previous = null;
+                } else {
+                    double cx = ORIGIN_X + (cell % side + 0.5) * SPACING + (random.nextDouble() * 2 - 1) * JITTER;
+                    double cy = ORIGIN_Y + (cell / side + 0.5) * SPACING + (random.nextDouble() * 2 - 1) * JITTER;
+                    cell++;
+                    rings = building(cx, cy, random);
+                    if (random.nextDouble() < invalid) {
+                        bowTie(rings[0]);
+                    }
+                    previous = rings;
+                }
+                writer.write(rings, k + 1, TYPES[random.nextInt(TYPES.length)], 1 + random.nextInt(30));
+            }
+        }
+    }
+
+    // 旋转矩形（70%）、L形（20%）或回字形（10%）；外环顺时针，内环逆时针
+    private static double[][] building(double cx, double cy, Random random) {
+        double w = MIN_SIZE + random.nextDouble() * (MAX_SIZE - MIN_SIZE);
+        double h = MIN_SIZE + random.nextDouble() * (MAX_SIZE - MIN_SIZE);
+        double angle = random.nextDouble() * Math.PI;
+        double shape = random.nextDouble();
+        if (shape < 0.7) {
+            return new double[][] { place(new double[] { -w / 2, -h / 2, -w / 2, h / 2, w / 2, h / 2, w / 2, -h / 2 },
+                    cx, cy, angle) };
+        }
+        if (shape < 0.9) {
+            return new double[][] { place(new double[] { -w / 2, -h / 2, -w / 2, h / 2, 0, h / 2, 0, 0, w / 2, 0,
+                    w / 2, -h / 2 }, cx, cy, angle) };
+        }
+        double iw = w * 0.2;
+        double ih = h * 0.2;
+        return new double[][] {
+                place(new double[] { -w / 2, -h / 2, -w / 2, h / 2, w / 2, h / 2, w / 2, -h / 2 }, cx, cy, angle),
+                place(new double[] { -iw, -ih, iw, -ih, iw, ih, -iw, ih }, cx, cy, angle) };
+    }
+
+    // 旋转平移并闭合
+    private static double[] place(double[] local, double cx, double cy, double angle) {
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        int n = local.length / 2;
+        double[] ring = new double[(n + 1) * 2];
+        for (int i = 0; i < n; i++) {
+            double x = local[i * 2];
+            double y = local[i * 2 + 1];
+            ring[i * 2] = cx + x * cos - y * sin;
+            ring[i * 2 + 1] = cy + x * sin + y * cos;
+        }
+        ring[n * 2] = ring[0];
+        ring[n * 2 + 1] = ring[1];
+        return ring;
+    }
+
+    private static double[][] shift(double[][] rings, double dx, double dy) {
+        double[][] shifted = new double[rings.length][];
+        for (int r = 0; r < rings.length; r++) {
+            shifted[r] = rings[r].clone();
+            for (int i = 0; i < shifted[r].length; i += 2) {
+                shifted[r][i] += dx;
+                shifted[r][i + 1] += dy;
+            }
+        }
+        return shifted;
+    }
+
+    // 交换外环第2、3个顶点，得到自相交的蝴蝶结
+    private static void bowTie(double[] ring) {
+        for (int c = 0; c < 2; c++) {
+            double t = ring[2 + c];
+            ring[2 + c] = ring[4 + c];
+            ring[4 + c] = t;
+        }
+    }
+
+    // ---------------------------------------------------------------- districts
+
+    private static void writeDistricts(File shp, int n, int edgeVertices, double extent, long seed)
+            throws IOException {
+        Field[] fields = { new Field("ID", 'N', 6), new Field("NAME", 'C', 16) };
+        double cell = extent / n;
+        try (PolygonWriter writer = new PolygonWriter(shp, fields, (long) n * n)) {
+            for (int j = 0; j < n; j++) {
+                for (int i = 0; i < n; i++) {
+                    // 逆时针：下边、右边、上边（反向）、左边（反向），最后整体反转为顺时针
+                    double[] bottom = edge(seed, 0, i, j, cell, edgeVertices);
+                    double[] right = edge(seed, 1, i + 1, j, cell, edgeVertices);
+                    double[] top = edge(seed, 0, i, j + 1, cell, edgeVertices);
+                    double[] left = edge(seed, 1, i, j, cell, edgeVertices);
+                    int m = bottom.length / 2;
+                    double[] ring = new double[(4 * (m - 1) + 1) * 2];
+                    int p = 0;
+                    p = append(ring, p, bottom, false, m - 1);
+                    p = append(ring, p, right, false, m - 1);
+                    p = append(ring, p, top, true, m - 1);
+                    p = append(ring, p, left, true, m - 1);
+                    ring[p] = ring[0];
+                    ring[p + 1] = ring[1];
+                    reverse(ring);
+                    int id = j * n + i + 1;
+                    writer.write(new double[][] { ring }, id, String.format(Locale.ROOT, "District_%03d", id));
+                }
+            }
+        }
+    }
+
+    /**
+     * 一条共用边：type 0 为从角点 (i,j) 向右的水平边，1 为向上的竖直边。沿边方向坐标严格递增、
+     * 垂直方向偏移为 A·sin(πt)·noise，因此边本身不自交；A 为边长的0.2倍，A·π 小于边长，相邻边只在角点相接。
+     * 每条边由 (seed, type, i, j) 决定，两侧的区得到相同的坐标
+     */
+    private static double[] edge(long seed, int type, int i, int j, double cell, int interior) {
+        Random random = new Random(seed * 1_000_003L + type * 7_919L + i * 104_729L + j * 1_299_709L);
+        double phase1 = random.nextDouble() * 2 * Math.PI;
+        double phase2 = random.nextDouble() * 2 * Math.PI;
+        int k1 = 1 + random.nextInt(4);
+        int k2 = 8 + random.nextInt(25);
+        double amplitude = 0.2 * cell;
+        double x0 = ORIGIN_X + i * cell;
+        double y0 = ORIGIN_Y + j * cell;
+        int m = interior + 2;
+        double[] coords = new double[m * 2];
+        for (int k = 0; k < m; k++) {
+            double t = (double) k / (m - 1);
+            double noise = 0.5 * Math.sin(2 * Math.PI * k1 * t + phase1) + 0.3 * Math.sin(2 * Math.PI * k2 * t + phase2)
+                    + 0.2 * (random.nextDouble() * 2 - 1);
+            double offset = k == 0 || k == m - 1 ? 0 : amplitude * Math.sin(Math.PI * t) * noise;
+            // 沿边坐标按 (i + t) 计算，端点与相邻边的角点逐位相同
+            coords[k * 2] = type == 0 ? ORIGIN_X + (i + t) * cell : x0 + offset;
+            coords[k * 2 + 1] = type == 0 ? y0 + offset : ORIGIN_Y + (j + t) * cell;
+        }
+        return coords;
+    }
+
+    // 追加边的前 count 个点（不含终点，终点是下一条边的起点）
+    private static int append(double[] ring, int p, double[] edge, boolean reversed, int count) {
+        int m = edge.length / 2;
+        for (int k = 0; k < count; k++) {
+            int src = reversed ? m - 1 - k : k;
+            ring[p++] = edge[src * 2];
+            ring[p++] = edge[src * 2 + 1];
+        }
+        return p;
+    }
+
+    private static void reverse(double[] ring) {
+        int n = ring.length / 2;
+        for (int a = 0, b = n - 1; a < b; a++, b--) {
+            double x = ring[a * 2];
+            double y = ring[a * 2 + 1];
+            ring[a * 2] = ring[b * 2];
+            ring[a * 2 + 1] = ring[b * 2 + 1];
+            ring[b * 2] = x;
+            ring[b * 2 + 1] = y;
+        }
+    }
+
+    // ---------------------------------------------------------------- shapefile output
+
+    private static final class Field {
+        final String name;
+        final char type;
+        final int length;
+
+        Field(String name, char type, int length) {
+            this.name = name;
+            this.type = type;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 流式写出面图层：.shp/.shx 文件头先占位、结束时按位置写入长度和范围；.dbf 的记录数在创建时已知
+     */
+    private static final class PolygonWriter implements AutoCloseable {
+        private static final int HEADER_LENGTH = 100;
+
+        private final FileChannel shpChannel;
+        private final FileChannel shxChannel;
+        private final OutputStream shp;
+        private final OutputStream shx;
+        private final OutputStream dbf;
+        private final Field[] fields;
+        private final byte[] dbfRecord;
+        private ByteBuffer content = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer recordHeader = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+        private long shpLength = HEADER_LENGTH;
+        private int records;
+        private double minX = Double.POSITIVE_INFINITY;
+        private double minY = Double.POSITIVE_INFINITY;
+        private double maxX = Double.NEGATIVE_INFINITY;
+        private double maxY = Double.NEGATIVE_INFINITY;
+
+        PolygonWriter(File shpFile, Field[] fields, long count) throws IOException {
+            this.fields = fields;
+            this.shpChannel = open(shpFile);
+            this.shxChannel = open(companion(shpFile, ".shx"));
+            this.shp = new BufferedOutputStream(Channels.newOutputStream(shpChannel), 1 << 16);
+            this.shx = new BufferedOutputStream(Channels.newOutputStream(shxChannel), 1 << 16);
+            this.dbf = new BufferedOutputStream(Files.newOutputStream(companion(shpFile, ".dbf").toPath()), 1 << 16);
+            shp.write(new byte[HEADER_LENGTH]);
+            shx.write(new byte[HEADER_LENGTH]);
+            int recordLength = 1;
+            for (Field field : fields) {
+                recordLength += field.length;
+            }
+            dbfRecord = new byte[recordLength];
+            writeDbfHeader(count, recordLength);
+            Files.write(companion(shpFile, ".prj").toPath(), WGS84_WKT.getBytes(StandardCharsets.ISO_8859_1));
+            Files.write(companion(shpFile, ".cpg").toPath(), "UTF-8".getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        private static FileChannel open(File file) throws IOException {
+            return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        private static File companion(File shp, String extension) {
+            String name = shp.getName();
+            return new File(shp.getParentFile(), name.substring(0, name.length() - 4) + extension);
+        }
+
+        private void writeDbfHeader(long count, int recordLength) throws IOException {
+            int headerLength = 32 + 32 * fields.length + 1;
+            ByteBuffer header = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+            LocalDate today = LocalDate.now();
+            header.put((byte) 0x03).put((byte) (today.getYear() - 1900)).put((byte) today.getMonthValue())
+                    .put((byte) today.getDayOfMonth());
+            header.putInt((int) count).putShort((short) headerLength).putShort((short) recordLength);
+            header.position(32);
+            for (Field field : fields) {
+                byte[] name = field.name.getBytes(StandardCharsets.US_ASCII);
+                int start = header.position();
+                header.put(name);
+                header.position(start + 11);
+                header.put((byte) field.type);
+                header.position(start + 16);
+                header.put((byte) field.length).put((byte) 0);
+                header.position(start + 32);
+            }
+            header.put((byte) 0x0D);
+            dbf.write(header.array());
+        }
+
+        void write(double[][] rings, Object... values) throws IOException {
+            int points = 0;
+            double bx0 = Double.POSITIVE_INFINITY;
+            double by0 = Double.POSITIVE_INFINITY;
+            double bx1 = Double.NEGATIVE_INFINITY;
+            double by1 = Double.NEGATIVE_INFINITY;
+            for (double[] ring : rings) {
+                points += ring.length / 2;
+                for (int i = 0; i < ring.length; i += 2) {
+                    bx0 = Math.min(bx0, ring[i]);
+                    bx1 = Math.max(bx1, ring[i]);
+                    by0 = Math.min(by0, ring[i + 1]);
+                    by1 = Math.max(by1, ring[i + 1]);
+                }
+            }
+            int length = 44 + 4 * rings.length + 16 * points;
+            if (content.capacity() < length) {
+                content = ByteBuffer.allocate(Integer.highestOneBit(length) << 1).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            content.clear();
+            content.putInt(5).putDouble(bx0).putDouble(by0).putDouble(bx1).putDouble(by1);
+            content.putInt(rings.length).putInt(points);
+            int part = 0;
+            for (double[] ring : rings) {
+                content.putInt(part);
+                part += ring.length / 2;
+            }
+            for (double[] ring : rings) {
+                for (double c : ring) {
+                    content.putDouble(c);
+                }
+            }
+
+            recordHeader.clear();
+            recordHeader.putInt((int) (shpLength / 2)).putInt(length / 2);
+            shx.write(recordHeader.array());
+            recordHeader.clear();
+            recordHeader.putInt(++records).putInt(length / 2);
+            shp.write(recordHeader.array());
+            shp.write(content.array(), 0, length);
+            shpLength += 8 + length;
+            minX = Math.min(minX, bx0);
+            minY = Math.min(minY, by0);
+            maxX = Math.max(maxX, bx1);
+            maxY = Math.max(maxY, by1);
+
+            writeDbfRecord(values);
+        }
+
+        // 数值右对齐、字符左对齐，空格补齐
+        private void writeDbfRecord(Object[] values) throws IOException {
+            java.util.Arrays.fill(dbfRecord, (byte) ' ');
+            int offset = 1;
+            for (int f = 0; f < fields.length; f++) {
+                Field field = fields[f];
+                byte[] text = String.valueOf(values[f]).getBytes(StandardCharsets.UTF_8);
+                int length = Math.min(text.length, field.length);
+                int start = field.type == 'N' ? offset + field.length - length : offset;
+                System.arraycopy(text, 0, dbfRecord, start, length);
+                offset += field.length;
+            }
+            dbf.write(dbfRecord);
+        }
+
+        private byte[] fileHeader(long length) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.order(ByteOrder.BIG_ENDIAN).putInt(0, 9994).putInt(24, (int) (length / 2));
+            header.order(ByteOrder.LITTLE_ENDIAN).putInt(28, 1000).putInt(32, 5);
+            header.putDouble(36, minX).putDouble(44, minY).putDouble(52, maxX).putDouble(60, maxY);
+            return header.array();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                shp.flush();
+                shx.flush();
+                dbf.write(0x1A);
+                shpChannel.write(ByteBuffer.wrap(fileHeader(shpLength)), 0);
+                shxChannel.write(ByteBuffer.wrap(fileHeader(HEADER_LENGTH + 8L * records)), 0);
+            } finally {
+                try {
+                    dbf.close();
+                } finally {
+                    try {
+                        shpChannel.close();
+                    } finally {
+                        shxChannel.close();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.gcheckshp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * 基准用的合成多边形：带随机扰动的星形多边形，按网格排列，顶点数和相邻多边形的重叠程度可调。
+ * 坐标为福州附近的经纬度，既可直接做平面运算，也可作为坐标转换和椭球面积的输入。固定种子，结果可重复。
+ */
+final class SyntheticPolygons {
+
+    static final double ORIGIN_X = 119.0;
+    static final double ORIGIN_Y = 26.0;
+
+    private final GeometryFactory factory = new GeometryFactory();
+    private final Random random;
+
+    SyntheticPolygons(long seed) {
+        this.random = new Random(seed);
+    }
+
+    GeometryFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * 以 (cx, cy) 为中心的星形多边形：角度单调、半径在 [0.85, 1] × radius 内随机，因此必为简单多边形；
+     * 顶点按顺时针排列（shapefile 外环方向）
+     */
+    Polygon blob(double cx, double cy, double radius, int vertices) {
+        Coordinate[] ring = new Coordinate[vertices + 1];
+        for (int i = 0; i < vertices; i++) {
+            double angle = -2 * Math.PI * i / vertices;
+            double r = radius * (0.85 + 0.15 * random.nextDouble());
+            ring[i] = new Coordinate(cx + r * Math.cos(angle), cy + r * Math.sin(angle));
+        }
+        ring[vertices] = new Coordinate(ring[0]);
+        return factory.createPolygon(ring);
+    }
+
+    /**
+     * count 个多边形按行排列在近似正方形的网格上。overlap 为相邻多边形沿半径方向的重叠比例：
+     * 0 时中心距为两倍半径，相邻多边形不重叠；0.5 时中心距等于半径
+     */
+    List<Geometry> grid(int count, int vertices, double radius, double overlap, double originX, double originY) {
+        int side = (int) Math.ceil(Math.sqrt(count));
+        double spacing = 2 * radius * (1 - overlap);
+        List<Geometry> polygons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double cx = originX + radius + (i % side) * spacing;
+            double cy = originY + radius + (i / side) * spacing;
+            polygons.add(blob(cx, cy, radius, vertices));
+        }
+        return polygons;
+    }
+
+    static Envelope envelopeOf(List<Geometry> geometries) {
+        Envelope envelope = new Envelope();
+        for (Geometry geom : geometries) {
+            envelope.expandToInclude(geom.getEnvelopeInternal());
+        }
+        return envelope;
+    }
+}
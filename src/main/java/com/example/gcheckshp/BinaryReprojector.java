@@ -0,0 +1,437 @@
+package com.example.gcheckshp;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.TransformException;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * 二进制重投影：.dbf（及.cpg）按字节原样复制，.prj 写入目标坐标系，.shp 逐条记录只改写X/Y坐标和包络，.shx 重新生成。
+ * 不解码属性，也不构建 SimpleFeature 和 JTS 几何，属性表的宽度不影响耗时。
+ *
+ * 记录结构（部件、点数、Z/M值）保持不变；转换若改变了环的方向，则把该环的点（及其Z/M值）反转，
+ * 保持 Shapefile 外环顺时针、内环逆时针的约定。某条记录无法转换（转换失败或结果出现非有限坐标）或记录内的
+ * 部件数、点数与记录长度不符时写出空几何，记录数与 .dbf 保持一致，并在返回的 {@link NullShapes} 中计数。遇到不支持的几何类型时抛出 IOException，
+ * 调用方应删除输出并改用 GeoTools 写出。
+ */
+final class BinaryReprojector {
+
+    // 空几何记录的内容：几何类型0（小端）
+    private static final byte[] NULL_SHAPE_CONTENT = new byte[4];
+
+    // 转换后记录的暂存：内容及包络（空记录为null）；failed表示无法转换、已改写为空几何
+    private static final class Record {
+        final byte[] content;
+        final Envelope envelope;
+        final boolean failed;
+
+        Record(byte[] content, Envelope envelope) {
+            this(content, envelope, false);
+        }
+
+        private Record(byte[] content, Envelope envelope, boolean failed) {
+            this.content = content;
+            this.envelope = envelope;
+            this.failed = failed;
+        }
+    }
+
+    /**
+     * 一个输出中因无法读取或转换而写为空几何的记录数，及第一条这样的记录（从0开始，没有时为-1）
+     */
+    static final class NullShapes {
+        int count;
+        int firstRecord = -1;
+    }
+
+    private BinaryReprojector() {
+    }
+
+    // 一个输出文件：.shp 和 .shx 按记录顺序追加写出，文件头在结束时按位置写入
+    private static final class Output implements AutoCloseable {
+        final File shpFile;
+        final FileChannel shpChannel;
+        final FileChannel shxChannel;
+        // 流只做缓冲，不关闭
+        final OutputStream shpOut;
+        final OutputStream shxOut;
+        final ByteBuffer recordHeader = ByteBuffer.allocate(ShpRecordScanner.RECORD_HEADER_LENGTH)
+                .order(ByteOrder.BIG_ENDIAN);
+        final ByteBuffer index = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+        final Envelope bounds = new Envelope();
+        final NullShapes nullShapes = new NullShapes();
+        long shpLength = ShpRecordScanner.SHP_HEADER_LENGTH;
+
+        Output(File shpFile) throws IOException {
+            this.shpFile = shpFile;
+            this.shpChannel = open(shpFile);
+            FileChannel shx = null;
+            try {
+                shx = open(ShpRecordScanner.companion(shpFile, ".shx"));
+            } finally {
+                if (shx == null) {
+                    shpChannel.close();
+                }
+            }
+            this.shxChannel = shx;
+            this.shpOut = new BufferedOutputStream(Channels.newOutputStream(shpChannel), 1 << 16);
+            this.shxOut = new BufferedOutputStream(Channels.newOutputStream(shxChannel), 1 << 16);
+            // 文件头先占位
+            shpOut.write(new byte[ShpRecordScanner.SHP_HEADER_LENGTH]);
+            shxOut.write(new byte[ShpRecordScanner.SHP_HEADER_LENGTH]);
+        }
+
+        private static FileChannel open(File file) throws IOException {
+            return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void write(int record, Record result) throws IOException {
+            int words = result.content.length / 2;
+            index.clear();
+            index.putInt((int) (shpLength / 2)).putInt(words);
+            shxOut.write(index.array());
+            recordHeader.clear();
+            recordHeader.putInt(record + 1).putInt(words);
+            shpOut.write(recordHeader.array());
+            shpOut.write(result.content);
+            shpLength += ShpRecordScanner.RECORD_HEADER_LENGTH + result.content.length;
+            if (result.envelope != null) {
+                bounds.expandToInclude(result.envelope);
+            }
+            if (result.failed) {
+                if (nullShapes.count++ == 0) {
+                    nullShapes.firstRecord = record;
+                }
+            }
+        }
+
+        void finish(byte[] sourceHeader, int recordCount) throws IOException {
+            shpOut.flush();
+            shxOut.flush();
+            shpChannel.write(ByteBuffer.wrap(fileHeader(sourceHeader, shpLength, bounds)), 0);
+            shxChannel.write(ByteBuffer.wrap(
+                    fileHeader(sourceHeader, ShpRecordScanner.SHP_HEADER_LENGTH + 8L * recordCount, bounds)), 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                shpChannel.close();
+            } finally {
+                shxChannel.close();
+            }
+        }
+    }
+
+    /**
+     * 把 srcShp 重投影到 outShp；threads > 1 时记录在工作线程中转换，按记录顺序写出
+     */
+    static NullShapes reproject(File srcShp, File outShp, CoordinateReferenceSystem targetCrs, MathTransform transform,
+            int threads) throws Exception {
+        return reproject(srcShp, new File[] { outShp }, new CoordinateReferenceSystem[] { targetCrs },
+                new MathTransform[] { transform }, threads)[0];
+    }
+
+    /**
+     * 一次读取 srcShp，同时重投影到多个目标：每条记录只读取一次，在同一个工作线程中依次应用各目标的转换，
+     * 结果按记录顺序写入对应的输出。返回各输出中写为空几何的记录
+     */
+    static NullShapes[] reproject(File srcShp, File[] outShps, CoordinateReferenceSystem[] targetCrs,
+            MathTransform[] transforms, int threads) throws Exception {
+        int targets = outShps.length;
+        Output[] outputs = new Output[targets];
+        NullShapes[] nullShapes = new NullShapes[targets];
+        try (MappedShapefileReader reader = MappedShapefileReader.open(srcShp)) {
+            int recordCount = reader.getRecordCount();
+            byte[] header = reader.readHeader();
+            for (int t = 0; t < targets; t++) {
+                outputs[t] = new Output(outShps[t]);
+            }
+            OrderedBatchPipeline.Sink<Integer, Record[]> sink = (record, results) -> {
+                for (int t = 0; t < targets; t++) {
+                    outputs[t].write(record, results[t]);
+                }
+            };
+            OrderedBatchPipeline.Worker<Integer, Record[]> worker = record -> {
+                byte[] content = reader.readContent(record);
+                Record[] results = new Record[targets];
+                for (int t = 0; t < targets; t++) {
+                    // 转换在内容上原地进行，最后一个目标直接使用读取的副本
+                    results[t] = transformRecord(t + 1 < targets ? content.clone() : content, record, transforms[t]);
+                }
+                return results;
+            };
+            if (threads > 1) {
+                int[] next = { 0 };
+                new OrderedBatchPipeline<Integer, Record[]>(threads, OrderedBatchPipeline.DEFAULT_BATCH_SIZE)
+                        .run(() -> next[0] < recordCount ? next[0]++ : null, worker, sink);
+            } else {
+                for (int record = 0; record < recordCount; record++) {
+                    sink.accept(record, worker.apply(record));
+                }
+            }
+            for (int t = 0; t < targets; t++) {
+                outputs[t].finish(header, recordCount);
+                nullShapes[t] = outputs[t].nullShapes;
+            }
+        } finally {
+            for (Output output : outputs) {
+                if (output != null) {
+                    output.close();
+                }
+            }
+        }
+
+        for (int t = 0; t < targets; t++) {
+            copyCompanion(srcShp, outShps[t], ".dbf");
+            copyCompanion(srcShp, outShps[t], ".cpg");
+            Files.write(ShpRecordScanner.companion(outShps[t], ".prj").toPath(),
+                    toSingleLineWkt(targetCrs[t]).getBytes(StandardCharsets.ISO_8859_1));
+            // 旧的空间索引与新坐标不符
+            for (String extension : new String[] { ".qix", ".fix", ".sbn", ".sbx" }) {
+                Files.deleteIfExists(ShpRecordScanner.companion(outShps[t], extension).toPath());
+            }
+        }
+        return nullShapes;
+    }
+
+    // 源文件头只替换文件长度和XY范围；几何类型和Z/M范围不变
+    private static byte[] fileHeader(byte[] source, long length, Envelope bounds) {
+        ByteBuffer header = ByteBuffer.wrap(source.clone());
+        header.order(ByteOrder.BIG_ENDIAN).putInt(24, (int) (length / 2));
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (!bounds.isNull()) {
+            header.putDouble(36, bounds.getMinX());
+            header.putDouble(44, bounds.getMinY());
+            header.putDouble(52, bounds.getMaxX());
+            header.putDouble(60, bounds.getMaxY());
+        }
+        return header.array();
+    }
+
+    // 在记录内容的副本上改写坐标和包络；无法转换或结构损坏的记录改写为空几何
+    private static Record transformRecord(byte[] content, int record, MathTransform transform) throws IOException {
+        try {
+            return transformShape(content, record, transform);
+        } catch (TransformException e) {
+            return new Record(NULL_SHAPE_CONTENT, null, true);
+        }
+    }
+
+    private static Record transformShape(byte[] content, int record, MathTransform transform)
+            throws IOException, TransformException {
+        if (content.length < 4) {
+            return new Record(NULL_SHAPE_CONTENT, null, true);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+        int type = buf.getInt(0);
+        if (type != ShpRecordScanner.NULL_SHAPE && !wellFormed(buf, type)) {
+            return new Record(NULL_SHAPE_CONTENT, null, true);
+        }
+        switch (type) {
+            case ShpRecordScanner.NULL_SHAPE:
+                return new Record(content, null);
+            case ShpRecordScanner.POINT:
+            case ShpRecordScanner.POINT_Z:
+            case ShpRecordScanner.POINT_M: {
+                double[] coords = { buf.getDouble(4), buf.getDouble(12) };
+                transformPoints(transform, coords, 1, record);
+                buf.putDouble(4, coords[0]);
+                buf.putDouble(12, coords[1]);
+                return new Record(content, new Envelope(coords[0], coords[0], coords[1], coords[1]));
+            }
+            case ShpRecordScanner.MULTIPOINT:
+            case ShpRecordScanner.MULTIPOINT_Z:
+            case ShpRecordScanner.MULTIPOINT_M: {
+                int numPoints = buf.getInt(36);
+                Envelope envelope = transformPointArray(buf, 40, numPoints, transform, record);
+                writeBox(buf, envelope);
+                return new Record(content, envelope);
+            }
+            case ShpRecordScanner.POLYLINE:
+            case ShpRecordScanner.POLYLINE_Z:
+            case ShpRecordScanner.POLYLINE_M:
+            case ShpRecordScanner.POLYGON:
+            case ShpRecordScanner.POLYGON_Z:
+            case ShpRecordScanner.POLYGON_M: {
+                int numParts = buf.getInt(36);
+                int numPoints = buf.getInt(40);
+                int pointsOffset = 44 + numParts * 4;
+                boolean polygon = type == ShpRecordScanner.POLYGON || type == ShpRecordScanner.POLYGON_Z
+                        || type == ShpRecordScanner.POLYGON_M;
+                double[] before = polygon ? readPoints(buf, pointsOffset, numPoints) : null;
+                Envelope envelope = transformPointArray(buf, pointsOffset, numPoints, transform, record);
+                writeBox(buf, envelope);
+                if (polygon) {
+                    keepOrientation(buf, type, numParts, numPoints, pointsOffset, before);
+                }
+                return new Record(content, envelope);
+            }
+            default:
+                throw new IOException("Unsupported shape type " + type + " in record " + (record + 1));
+        }
+    }
+
+    /**
+     * 校验记录内的点数、部件数和部件起点与记录长度一致（与 MappedShapefileReader 读取几何时的校验相同），
+     * 不支持的类型返回true，由 transformShape 报告
+     */
+    private static boolean wellFormed(ByteBuffer buf, int type) {
+        int length = buf.capacity();
+        switch (type) {
+            case ShpRecordScanner.POINT:
+            case ShpRecordScanner.POINT_Z:
+            case ShpRecordScanner.POINT_M:
+                return length >= 20;
+            case ShpRecordScanner.MULTIPOINT:
+            case ShpRecordScanner.MULTIPOINT_Z:
+            case ShpRecordScanner.MULTIPOINT_M: {
+                if (length < 40) {
+                    return false;
+                }
+                int numPoints = buf.getInt(36);
+                return numPoints >= 0 && 40 + 16L * numPoints <= length;
+            }
+            case ShpRecordScanner.POLYLINE:
+            case ShpRecordScanner.POLYLINE_Z:
+            case ShpRecordScanner.POLYLINE_M:
+            case ShpRecordScanner.POLYGON:
+            case ShpRecordScanner.POLYGON_Z:
+            case ShpRecordScanner.POLYGON_M: {
+                if (length < 44) {
+                    return false;
+                }
+                int numParts = buf.getInt(36);
+                int numPoints = buf.getInt(40);
+                if (numParts < 0 || numPoints < 0 || 44 + 4L * numParts + 16L * numPoints > length) {
+                    return false;
+                }
+                int previous = 0;
+                for (int i = 0; i < numParts; i++) {
+                    int start = buf.getInt(44 + i * 4);
+                    if (start < previous || start > numPoints) {
+                        return false;
+                    }
+                    previous = start;
+                }
+                return true;
+            }
+            default:
+                return true;
+        }
+    }
+
+    // 转换连续存放的点数组并写回，返回转换后的包络
+    private static Envelope transformPointArray(ByteBuffer buf, int pointsOffset, int numPoints,
+            MathTransform transform, int record) throws TransformException {
+        double[] coords = readPoints(buf, pointsOffset, numPoints);
+        transformPoints(transform, coords, numPoints, record);
+        buf.slice(pointsOffset, numPoints * 16).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().put(coords);
+        double[] box = new double[4];
+        RingKernels.envelope(coords, 0, numPoints, box);
+        return numPoints > 0 ? new Envelope(box[0], box[1], box[2], box[3]) : new Envelope();
+    }
+
+    private static double[] readPoints(ByteBuffer buf, int pointsOffset, int numPoints) {
+        double[] coords = new double[numPoints * 2];
+        buf.slice(pointsOffset, numPoints * 16).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(coords);
+        return coords;
+    }
+
+    private static void transformPoints(MathTransform transform, double[] coords, int count, int record)
+            throws TransformException {
+        transform.transform(coords, 0, coords, 0, count);
+        for (double value : coords) {
+            if (!Double.isFinite(value)) {
+                throw new TransformException("Transformed coordinates are not finite in record " + (record + 1));
+            }
+        }
+    }
+
+    private static void writeBox(ByteBuffer buf, Envelope envelope) {
+        if (envelope.isNull()) {
+            return;
+        }
+        buf.putDouble(4, envelope.getMinX());
+        buf.putDouble(12, envelope.getMinY());
+        buf.putDouble(20, envelope.getMaxX());
+        buf.putDouble(28, envelope.getMaxY());
+    }
+
+    // 转换改变环方向时反转该环的点及其Z/M值
+    private static void keepOrientation(ByteBuffer buf, int type, int numParts, int numPoints, int pointsOffset,
+            double[] before) {
+        double[] after = readPoints(buf, pointsOffset, numPoints);
+        int zOffset = -1;
+        int mOffset = -1;
+        int valuesEnd = pointsOffset + numPoints * 16;
+        if (type == ShpRecordScanner.POLYGON_Z) {
+            zOffset = valuesEnd + 16;
+            valuesEnd = zOffset + numPoints * 8;
+            // Z记录的M值可选
+            if (buf.capacity() >= valuesEnd + 16 + numPoints * 8) {
+                mOffset = valuesEnd + 16;
+            }
+        } else if (type == ShpRecordScanner.POLYGON_M && buf.capacity() >= valuesEnd + 16 + numPoints * 8) {
+            mOffset = valuesEnd + 16;
+        }
+        for (int part = 0; part < numParts; part++) {
+            int start = buf.getInt(44 + part * 4);
+            int end = part + 1 < numParts ? buf.getInt(44 + (part + 1) * 4) : numPoints;
+            int count = end - start;
+            if (count < 3 || start < 0 || end > numPoints) {
+                continue;
+            }
+            double areaBefore = RingKernels.signedArea(before, start, count);
+            double areaAfter = RingKernels.signedArea(after, start, count);
+            if (areaBefore != 0 && areaAfter != 0 && (areaBefore > 0) != (areaAfter > 0)) {
+                reverse(buf, pointsOffset, 16, start, end);
+                if (zOffset >= 0) {
+                    reverse(buf, zOffset, 8, start, end);
+                }
+                if (mOffset >= 0) {
+                    reverse(buf, mOffset, 8, start, end);
+                }
+            }
+        }
+    }
+
+    // 反转 [start, end) 范围内宽度为width字节的元素
+    private static void reverse(ByteBuffer buf, int offset, int width, int start, int end) {
+        byte[] a = new byte[width];
+        byte[] b = new byte[width];
+        for (int i = start, j = end - 1; i < j; i++, j--) {
+            buf.get(offset + i * width, a);
+            buf.get(offset + j * width, b);
+            buf.put(offset + i * width, b);
+            buf.put(offset + j * width, a);
+        }
+    }
+
+    private static void copyCompanion(File srcShp, File outShp, String extension) throws IOException {
+        File source = ShpRecordScanner.companion(srcShp, extension);
+        if (source.exists()) {
+            Files.copy(source.toPath(), ShpRecordScanner.companion(outShp, extension).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // 与 GeoTools 写出的 .prj 一致：单行 WKT
+    private static String toSingleLineWkt(CoordinateReferenceSystem crs) {
+        return crs.toWKT().replace("\r", "").replaceAll("\n\\s*", "");
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.gcheckshp;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * 机器可读的校验报告：发现问题时逐条写出，不在内存中累积。
+ *
+ * 按文件扩展名选择格式：.json/.ndjson/.jsonl 写出NDJSON（每行一个JSON对象），其余写出CSV。
+ * 字段：record（从1开始的记录号）、feature_id、error_type、message、x、y、fixable。
+ */
+final class CheckReportWriter implements Closeable {
+
+    // 写出缓冲区大小（64KB）
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer writer;
+    private final boolean json;
+    private long issueCount;
+
+    private CheckReportWriter(Writer writer, boolean json) {
+        this.writer = writer;
+        this.json = json;
+    }
+
+    static CheckReportWriter open(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+        boolean json = name.endsWith(".json") || name.endsWith(".ndjson") || name.endsWith(".jsonl");
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (!json) {
+            writer.write("record,feature_id,error_type,message,x,y,fixable\n");
+        }
+        return new CheckReportWriter(writer, json);
+    }
+
+    long getIssueCount() {
+        return issueCount;
+    }
+
+    /**
+     * 写出一条问题记录；record小于1或坐标为NaN时对应字段留空（JSON中为null）
+     */
+    void write(int record, String featureId, String errorType, String message, double x, double y,
+            boolean fixable) throws IOException {
+        issueCount++;
+        boolean hasLocation = !Double.isNaN(x) && !Double.isNaN(y);
+        if (json) {
+            writer.write("{\"record\":");
+            writer.write(record > 0 ? Integer.toString(record) : "null");
+            writer.write(",\"feature_id\":");
+            writeJsonString(featureId);
+            writer.write(",\"error_type\":");
+            writeJsonString(errorType);
+            writer.write(",\"message\":");
+            writeJsonString(message);
+            writer.write(",\"x\":");
+            writer.write(hasLocation && !Double.isInfinite(x) ? Double.toString(x) : "null");
+            writer.write(",\"y\":");
+            writer.write(hasLocation && !Double.isInfinite(y) ? Double.toString(y) : "null");
+            writer.write(",\"fixable\":");
+            writer.write(fixable ? "true" : "false");
+            writer.write("}\n");
+        } else {
+            writer.write(record > 0 ? Integer.toString(record) : "");
+            writer.write(',');
+            writeCsvField(featureId);
+            writer.write(',');
+            writeCsvField(errorType);
+            writer.write(',');
+            writeCsvField(message);
+            writer.write(',');
+            writer.write(hasLocation ? Double.toString(x) : "");
+            writer.write(',');
+            writer.write(hasLocation ? Double.toString(y) : "");
+            writer.write(',');
+            writer.write(fixable ? "true" : "false");
+            writer.write('\n');
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeCsvField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private void writeJsonString(String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,413 @@
+package com.example.gcheckshp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.io.WKTWriter;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
+
+/**
+ * 多边形覆盖（coverage）拓扑检查：查找要素之间的缝隙（gap）和重叠（overlap），并识别其中的细长碎片（sliver）。
+ *
+ * 图层范围（向外扩展一圈）被划分为规则瓦片，各瓦片并行处理：
+ * 瓦片内未被要素覆盖的区域中，不接触瓦片边界的部分即为缝隙；接触瓦片边界的部分可能属于图层外部，
+ * 也可能是跨瓦片的缝隙，全部瓦片完成后统一拼接，拼接后不接触扩展范围边界的部分为缝隙。
+ * 与瓦片相交的要素完整参与该瓦片的计算（即瓦片的halo），每对要素的重叠由其内部点所在的瓦片负责输出，
+ * 因此跨瓦片的要素不会被重复报告。
+ * 单个要素的内环（洞）是要素本身定义的空白，不是要素之间的缝隙：计算缝隙时按填平内环后的外壳计算覆盖范围。
+ *
+ * 结果逐条写出到CSV：type, sliver, area, width, features, wkt
+ */
+final class CoverageCheck {
+
+    private static final Logger logger = Logger.getLogger(CoverageCheck.class.getName());
+
+    // 每个瓦片的目标要素数
+    private static final int FEATURES_PER_TILE = 500;
+
+    // 瓦片网格每边的最大瓦片数
+    private static final int MAX_TILES_PER_SIDE = 256;
+
+    // 扩展图层范围的比例，保证图层外部区域连通并接触扩展范围边界
+    private static final double EXTENT_MARGIN = 0.01;
+
+    // 等周商 4*pi*A/P^2 低于该值的缝隙或重叠视为细长碎片
+    static final double SLIVER_COMPACTNESS = 0.05;
+
+    // 拼接跨瓦片未覆盖区域时的距离容差（相对于图层范围）
+    private static final double STITCH_TOLERANCE = 1e-9;
+
+    // 写出缓冲区大小（64KB）
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final String AREA_FORMAT = "%.6f";
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    /**
+     * 检查结果汇总
+     */
+    static final class Summary {
+        int tiles;
+        int failedTiles;
+        int gaps;
+        int gapSlivers;
+        double gapArea;
+        int overlaps;
+        int overlapSlivers;
+        double overlapArea;
+    }
+
+    // 单个缝隙或重叠多边形
+    private static final class Finding {
+        final boolean gap;
+        final Geometry geometry;
+        final String features;
+
+        Finding(boolean gap, Geometry geometry, String features) {
+            this.gap = gap;
+            this.geometry = geometry;
+            this.features = features;
+        }
+    }
+
+    // 单个瓦片的结果：确定的缝隙与重叠，以及接触瓦片边界、需要拼接的未覆盖区域
+    private static final class TileResult {
+        final List<Finding> findings = new ArrayList<>();
+        final List<Geometry> boundaryPieces = new ArrayList<>();
+        boolean failed;
+    }
+
+    private CoverageCheck() {
+    }
+
+    /**
+     * 执行覆盖检查并把缝隙和重叠多边形流式写入output
+     */
+    static Summary run(List<Geometry> geometries, List<String> featureIds, int threads, File output)
+            throws Exception {
+        Summary summary = new Summary();
+        int n = geometries.size();
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(output.toPath()), StandardCharsets.UTF_8),
+                BUFFER_SIZE)) {
+            writer.write("type,sliver,area,width,features,wkt\n");
+            if (n == 0) {
+                return summary;
+            }
+            GeometryFactory factory = geometries.get(0).getFactory();
+            STRtree index = new STRtree();
+            Envelope layerExtent = new Envelope();
+            for (int i = 0; i < n; i++) {
+                Envelope env = geometries.get(i).getEnvelopeInternal();
+                index.insert(env, i);
+                layerExtent.expandToInclude(env);
+            }
+            index.build();
+
+            Envelope extent = new Envelope(layerExtent);
+            double margin = Math.max(Math.max(layerExtent.getWidth(), layerExtent.getHeight()) * EXTENT_MARGIN,
+                    1e-9);
+            extent.expandBy(margin);
+
+            int perSide = (int) Math.ceil(Math.sqrt(Math.max(1.0, (double) n / FEATURES_PER_TILE)));
+            if (threads > 1) {
+                perSide = Math.max(perSide, (int) Math.ceil(Math.sqrt(threads * 2.0)));
+            }
+            perSide = Math.min(perSide, MAX_TILES_PER_SIDE);
+            summary.tiles = perSide * perSide;
+
+            int poolId = POOL_COUNTER.incrementAndGet();
+            AtomicInteger workerCounter = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+                Thread t = new Thread(runnable, "checkshp-coverage-" + poolId + "-" + workerCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            List<Geometry> boundaryPieces = new ArrayList<>();
+            WKTWriter wktWriter = new WKTWriter();
+            try {
+                List<Future<TileResult>> futures = new ArrayList<>(summary.tiles);
+                for (int row = 0; row < perSide; row++) {
+                    for (int col = 0; col < perSide; col++) {
+                        Envelope tile = tileEnvelope(extent, perSide, row, col);
+                        boolean lastCol = col == perSide - 1;
+                        boolean lastRow = row == perSide - 1;
+                        futures.add(pool.submit(() -> processTile(tile, lastCol, lastRow, geometries, featureIds,
+                                index, factory)));
+                    }
+                }
+                // 按瓦片顺序写出结果，已写出的瓦片结果随即释放
+                for (Future<TileResult> future : futures) {
+                    TileResult result;
+                    try {
+                        result = future.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        throw cause instanceof Exception ? (Exception) cause : e;
+                    }
+                    if (result.failed) {
+                        summary.failedTiles++;
+                    }
+                    for (Finding finding : result.findings) {
+                        writeFinding(writer, wktWriter, finding, summary);
+                    }
+                    boundaryPieces.addAll(result.boundaryPieces);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+
+            // 拼接接触瓦片边界的未覆盖区域：不接触扩展范围边界的连通部分是跨瓦片的缝隙
+            double tolerance = Math.max(extent.getWidth(), extent.getHeight()) * STITCH_TOLERANCE;
+            for (List<Geometry> component : stitch(boundaryPieces, tolerance)) {
+                boolean exterior = false;
+                for (Geometry piece : component) {
+                    if (touchesBoundary(piece, extent)) {
+                        exterior = true;
+                        break;
+                    }
+                }
+                if (!exterior) {
+                    Geometry gap = component.size() == 1 ? component.get(0) : UnaryUnionOp.union(component);
+                    writeFinding(writer, wktWriter, new Finding(true, gap, ""), summary);
+                }
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * 把距离不超过tolerance的未覆盖区域归为同一连通部分。
+     * 相邻瓦片各自裁剪，同一条瓦片边上的交点可能存在浮点误差，因此按距离而不是严格相接判断连通。
+     */
+    private static List<List<Geometry>> stitch(List<Geometry> pieces, double tolerance) {
+        List<List<Geometry>> components = new ArrayList<>();
+        if (pieces.isEmpty()) {
+            return components;
+        }
+        STRtree pieceIndex = new STRtree();
+        for (int i = 0; i < pieces.size(); i++) {
+            pieceIndex.insert(pieces.get(i).getEnvelopeInternal(), i);
+        }
+        pieceIndex.build();
+        UnionFind uf = new UnionFind(pieces.size());
+        for (int i = 0; i < pieces.size(); i++) {
+            Geometry piece = pieces.get(i);
+            Envelope search = new Envelope(piece.getEnvelopeInternal());
+            search.expandBy(tolerance);
+            for (Object obj : pieceIndex.query(search)) {
+                int j = (Integer) obj;
+                if (j > i && piece.isWithinDistance(pieces.get(j), tolerance)) {
+                    uf.union(i, j);
+                }
+            }
+        }
+        List<List<Integer>> groups = uf.groups();
+        boolean[] grouped = new boolean[pieces.size()];
+        for (List<Integer> group : groups) {
+            List<Geometry> component = new ArrayList<>(group.size());
+            for (int i : group) {
+                component.add(pieces.get(i));
+                grouped[i] = true;
+            }
+            components.add(component);
+        }
+        for (int i = 0; i < pieces.size(); i++) {
+            if (!grouped[i]) {
+                List<Geometry> component = new ArrayList<>(1);
+                component.add(pieces.get(i));
+                components.add(component);
+            }
+        }
+        return components;
+    }
+
+    // 计算瓦片范围；最后一行/列直接使用扩展范围的边界，避免浮点误差留下缝隙
+    private static Envelope tileEnvelope(Envelope extent, int perSide, int row, int col) {
+        double width = extent.getWidth() / perSide;
+        double height = extent.getHeight() / perSide;
+        double minX = extent.getMinX() + col * width;
+        double maxX = col == perSide - 1 ? extent.getMaxX() : extent.getMinX() + (col + 1) * width;
+        double minY = extent.getMinY() + row * height;
+        double maxY = row == perSide - 1 ? extent.getMaxY() : extent.getMinY() + (row + 1) * height;
+        return new Envelope(minX, maxX, minY, maxY);
+    }
+
+    private static TileResult processTile(Envelope tile, boolean lastCol, boolean lastRow,
+            List<Geometry> geometries, List<String> featureIds, STRtree index, GeometryFactory factory) {
+        TileResult result = new TileResult();
+        Geometry tileGeometry = factory.toGeometry(tile);
+        List<?> hits = index.query(tile);
+        List<Integer> members = new ArrayList<>(hits.size());
+        for (Object obj : hits) {
+            int i = (Integer) obj;
+            if (geometries.get(i).getEnvelopeInternal().intersects(tile)) {
+                members.add(i);
+            }
+        }
+        members.sort(null);
+
+        // 缝隙：瓦片内未被任何要素外壳覆盖的区域
+        try {
+            List<Geometry> clipped = new ArrayList<>(members.size());
+            for (int i : members) {
+                Geometry geom = shells(geometries.get(i));
+                if (tile.contains(geom.getEnvelopeInternal())) {
+                    clipped.add(geom);
+                    continue;
+                }
+                // 只接触瓦片边的要素裁剪后会带有线或点，只保留面的部分
+                Geometry part = geom.intersection(tileGeometry);
+                for (int k = 0; k < part.getNumGeometries(); k++) {
+                    if (part.getGeometryN(k) instanceof Polygon && !part.getGeometryN(k).isEmpty()) {
+                        clipped.add(part.getGeometryN(k));
+                    }
+                }
+            }
+            Geometry covered = clipped.isEmpty() ? null : UnaryUnionOp.union(clipped);
+            Geometry uncovered = covered == null || covered.isEmpty() ? tileGeometry
+                    : tileGeometry.difference(covered);
+            for (int k = 0; k < uncovered.getNumGeometries(); k++) {
+                Geometry piece = uncovered.getGeometryN(k);
+                if (!(piece instanceof Polygon) || piece.isEmpty() || piece.getArea() <= 0.0) {
+                    continue;
+                }
+                if (touchesBoundary(piece, tile)) {
+                    result.boundaryPieces.add(piece);
+                } else {
+                    result.findings.add(new Finding(true, piece, ""));
+                }
+            }
+        } catch (Exception e) {
+            result.failed = true;
+            logger.warning("Failed to compute coverage gaps for tile " + tile + ": " + e.getMessage());
+        }
+
+        // 重叠：成对求交，由交集内部点所在的瓦片输出
+        for (int a = 0; a < members.size(); a++) {
+            int i = members.get(a);
+            Geometry geom1 = geometries.get(i);
+            Envelope env1 = geom1.getEnvelopeInternal();
+            for (int b = a + 1; b < members.size(); b++) {
+                int j = members.get(b);
+                Geometry geom2 = geometries.get(j);
+                Envelope env2 = geom2.getEnvelopeInternal();
+                if (!env1.intersects(env2) || !env1.intersection(env2).intersects(tile)) {
+                    continue;
+                }
+                try {
+                    if (!geom1.intersects(geom2)) {
+                        continue;
+                    }
+                    Geometry overlap = geom1.intersection(geom2);
+                    if (overlap == null || overlap.getArea() <= 0.0) {
+                        continue;
+                    }
+                    Point interior = overlap.getInteriorPoint();
+                    if (!owns(tile, lastCol, lastRow, interior.getX(), interior.getY())) {
+                        continue;
+                    }
+                    result.findings.add(new Finding(false, overlap, featureIds.get(i) + ";" + featureIds.get(j)));
+                } catch (Exception e) {
+                    result.failed = true;
+                    logger.warning("Failed to check overlap between " + featureIds.get(i) + " and "
+                            + featureIds.get(j) + ": " + e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    // 填平多边形的内环，只保留外壳；没有内环时返回原几何
+    private static Geometry shells(Geometry geometry) {
+        if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            return polygon.getNumInteriorRing() == 0 ? polygon
+                    : polygon.getFactory().createPolygon(polygon.getExteriorRing());
+        }
+        if (geometry instanceof MultiPolygon) {
+            boolean holes = false;
+            Polygon[] parts = new Polygon[geometry.getNumGeometries()];
+            for (int k = 0; k < parts.length; k++) {
+                parts[k] = (Polygon) shells(geometry.getGeometryN(k));
+                holes |= parts[k] != geometry.getGeometryN(k);
+            }
+            return holes ? geometry.getFactory().createMultiPolygon(parts) : geometry;
+        }
+        return geometry;
+    }
+
+    // 瓦片按左闭右开划分，最后一行/列包含上边界，保证每个点只属于一个瓦片
+    private static boolean owns(Envelope tile, boolean lastCol, boolean lastRow, double x, double y) {
+        boolean inX = x >= tile.getMinX() && (x < tile.getMaxX() || (lastCol && x <= tile.getMaxX()));
+        boolean inY = y >= tile.getMinY() && (y < tile.getMaxY() || (lastRow && y <= tile.getMaxY()));
+        return inX && inY;
+    }
+
+    private static boolean touchesBoundary(Geometry piece, Envelope tile) {
+        Envelope env = piece.getEnvelopeInternal();
+        return env.getMinX() <= tile.getMinX() || env.getMaxX() >= tile.getMaxX()
+                || env.getMinY() <= tile.getMinY() || env.getMaxY() >= tile.getMaxY();
+    }
+
+    // 等周商：圆为1，越细长越接近0
+    static double compactness(Geometry geometry) {
+        double perimeter = geometry.getLength();
+        return perimeter > 0.0 ? 4.0 * Math.PI * geometry.getArea() / (perimeter * perimeter) : 0.0;
+    }
+
+    private static void writeFinding(Writer writer, WKTWriter wktWriter, Finding finding, Summary summary)
+            throws IOException {
+        double area = finding.geometry.getArea();
+        double perimeter = finding.geometry.getLength();
+        // 平均宽度近似为 2A/P
+        double width = perimeter > 0.0 ? 2.0 * area / perimeter : 0.0;
+        boolean sliver = compactness(finding.geometry) < SLIVER_COMPACTNESS;
+        if (finding.gap) {
+            summary.gaps++;
+            summary.gapArea += area;
+            if (sliver) {
+                summary.gapSlivers++;
+            }
+        } else {
+            summary.overlaps++;
+            summary.overlapArea += area;
+            if (sliver) {
+                summary.overlapSlivers++;
+            }
+        }
+        writer.write(finding.gap ? "gap" : "overlap");
+        writer.write(',');
+        writer.write(sliver ? "true" : "false");
+        writer.write(',');
+        writer.write(String.format(AREA_FORMAT, area));
+        writer.write(',');
+        writer.write(String.format(AREA_FORMAT, width));
+        writer.write(",\"");
+        writer.write(finding.features.replace("\"", "\"\""));
+        writer.write("\",\"");
+        writer.write(wktWriter.write(finding.geometry));
+        writer.write("\"\n");
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.gcheckshp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * 热循环中的诊断收集器：转换失败、修复、裁剪失败、叠加失败等按类别计数，每个类别保留前几个要素ID作为示例，
+ * 处理结束时输出一段汇总，代替逐要素的 logger.warning。
+ *
+ * 热路径上只累加计数器；只有指定了 --diagnostics 文件时才取异常消息并逐条写出（格式同校验报告，
+ * 按扩展名选择NDJSON或CSV，error_type 为类别名）。可在多个线程中并发使用。
+ */
+final class Diagnostics implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(Diagnostics.class.getName());
+
+    // 每个类别保留的示例要素ID数
+    private static final int SAMPLE_SIZE = 5;
+
+    enum Category {
+        TRANSFORM_FAILED("coordinate transform failed"),
+        TRANSFORM_REPAIRED("invalid after transform, repaired"),
+        TRANSFORM_INVALID("invalid after transform, dropped"),
+        SOURCE_REPAIRED("invalid source geometry, repaired"),
+        SOURCE_INVALID("invalid source geometry, dropped"),
+        CLIP_FAILED("clip to shp1 bounds failed"),
+        MERGE_FAILED("merge of overlapping group failed"),
+        AREA_FAILED("area projection failed"),
+        OVERLAY_FAILED("intersection overlay failed"),
+        CRS_MISSING("CRS information missing, skipped");
+
+        final String description;
+
+        Category(String description) {
+            this.description = description;
+        }
+    }
+
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final LongAdder[] counts = new LongAdder[CATEGORIES.length];
+    private final AtomicInteger[] sampleCounts = new AtomicInteger[CATEGORIES.length];
+    private final AtomicReferenceArray<String> samples = new AtomicReferenceArray<>(CATEGORIES.length * SAMPLE_SIZE);
+    // 逐条写出的诊断文件；为null时只计数
+    private final CheckReportWriter sink;
+    private boolean sinkFailed;
+
+    private Diagnostics(CheckReportWriter sink) {
+        this.sink = sink;
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            counts[i] = new LongAdder();
+            sampleCounts[i] = new AtomicInteger();
+        }
+    }
+
+    // 只计数、不写文件的收集器
+    static Diagnostics create() {
+        return new Diagnostics(null);
+    }
+
+    /**
+     * file 不为null时逐条写出到该文件（.json/.ndjson/.jsonl 为NDJSON，其余为CSV）
+     */
+    static Diagnostics open(File file) throws IOException {
+        return new Diagnostics(file != null ? CheckReportWriter.open(file) : null);
+    }
+
+    void record(Category category, String featureId) {
+        record(category, featureId, null);
+    }
+
+    /**
+     * 记录一次事件；cause 只在写出诊断文件时使用
+     */
+    void record(Category category, String featureId, Throwable cause) {
+        int c = category.ordinal();
+        counts[c].increment();
+        if (featureId != null && sampleCounts[c].get() < SAMPLE_SIZE) {
+            int slot = sampleCounts[c].getAndIncrement();
+            if (slot < SAMPLE_SIZE) {
+                samples.set(c * SAMPLE_SIZE + slot, featureId);
+            }
+        }
+        if (sink != null) {
+            write(category, featureId, cause);
+        }
+    }
+
+    private synchronized void write(Category category, String featureId, Throwable cause) {
+        if (sinkFailed) {
+            return;
+        }
+        String message = cause != null && cause.getMessage() != null ? cause.getMessage() : category.description;
+        try {
+            // 要素ID为 typeName.记录号，记录号列由其得出；无法解析时留空
+            int record = ValiditySidecar.recordIndexOf(featureId) + 1;
+            sink.write(record, featureId, category.name(), message, Double.NaN, Double.NaN, false);
+        } catch (IOException e) {
+            // 写出失败后只计数，不中断计算
+            sinkFailed = true;
+            logger.warning("Failed to write diagnostics: " + e.getMessage());
+        }
+    }
+
+    long count(Category category) {
+        return counts[category.ordinal()].sum();
+    }
+
+    long total() {
+        long total = 0;
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * 输出各类别的计数与示例要素ID；没有任何事件时不输出
+     */
+    void printSummary(PrintStream out) {
+        if (total() == 0) {
+            return;
+        }
+        out.println("--- Diagnostics ---");
+        for (Category category : CATEGORIES) {
+            int c = category.ordinal();
+            long count = counts[c].sum();
+            if (count == 0) {
+                continue;
+            }
+            StringBuilder line = new StringBuilder("  ").append(category.description).append(": ").append(count);
+            int shown = Math.min(sampleCounts[c].get(), SAMPLE_SIZE);
+            if (shown > 0) {
+                line.append(" (e.g. ");
+                for (int i = 0; i < shown; i++) {
+                    if (i > 0) {
+                        line.append(", ");
+                    }
+                    line.append(samples.get(c * SAMPLE_SIZE + i));
+                }
+                line.append(count > shown ? ", ...)" : ")");
+            }
+            out.println(line);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sink != null) {
+            synchronized (this) {
+                sink.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.gcheckshp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.geotools.api.metadata.extent.GeographicBoundingBox;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.crs.GeographicCRS;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.geom.util.PolygonExtracter;
+
+/**
+ * 坐标转换前的适用范围预筛选：把目标坐标系的适用范围（domain of validity，经纬度包络）转换到源坐标系，
+ * 转换前用要素包络与其比较。完全在范围内的要素直接转换，跨越边界的要素先裁剪到范围内再转换，
+ * 完全在范围外的要素直接跳过，避免投影到范围外产生 NaN 坐标、无效几何以及随后的修复开销。
+ *
+ * 三种结果（范围内、裁剪、范围外）只计数，处理结束时输出一行汇总，不逐要素写日志；转换本身的失败和修复
+ * 记入 {@link Diagnostics}。目标坐标系没有适用范围、范围覆盖全球或跨越180°经线时不筛选。计数器可并发使用。
+ */
+final class DomainOfValidityFilter {
+
+    private static final Logger logger = Logger.getLogger(DomainOfValidityFilter.class.getName());
+
+    // 适用范围每条边的加密点数，投影到源坐标系后边界为曲线
+    private static final int EDGE_POINTS = 32;
+
+    private final String label;
+    // 源坐标系中的适用范围；为null时不筛选
+    private final Geometry domain;
+    private final PreparedGeometry preparedDomain;
+    private final Envelope domainEnvelope;
+    // 源坐标系为地理坐标系时适用范围为矩形，只需比较包络
+    private final boolean rectangular;
+
+    private final LongAdder inside = new LongAdder();
+    private final LongAdder clipped = new LongAdder();
+    private final LongAdder outside = new LongAdder();
+
+    private DomainOfValidityFilter(String label, Geometry domain, boolean rectangular) {
+        this.label = label;
+        this.domain = domain;
+        this.preparedDomain = domain != null ? PreparedGeometryFactory.prepare(domain) : null;
+        this.domainEnvelope = domain != null ? domain.getEnvelopeInternal() : null;
+        this.rectangular = rectangular;
+    }
+
+    /**
+     * 为 source 到 target 的转换创建预筛选；无法确定适用范围时返回不筛选的实例
+     */
+    static DomainOfValidityFilter create(String label, CoordinateReferenceSystem source,
+            CoordinateReferenceSystem target) {
+        Geometry domain = null;
+        if (source != null && target != null) {
+            try {
+                domain = domainIn(source, CRS.getGeographicBoundingBox(target));
+            } catch (Exception e) {
+                logger.fine("Domain of validity unavailable for " + label + ": " + e.getMessage());
+            }
+        }
+        return new DomainOfValidityFilter(label, domain, domain != null && source instanceof GeographicCRS);
+    }
+
+    // 把经纬度适用范围加密后转换到源坐标系
+    private static Geometry domainIn(CoordinateReferenceSystem source, GeographicBoundingBox box) throws Exception {
+        if (box == null) {
+            return null;
+        }
+        double west = box.getWestBoundLongitude();
+        double east = box.getEastBoundLongitude();
+        double south = box.getSouthBoundLatitude();
+        double north = box.getNorthBoundLatitude();
+        // 跨越180°经线或覆盖全球的范围不筛选
+        if (!(west < east) || !(south < north) || (west <= -180 && east >= 180 && south <= -90 && north >= 90)) {
+            return null;
+        }
+        Coordinate[] ring = new Coordinate[EDGE_POINTS * 4 + 1];
+        for (int i = 0; i < EDGE_POINTS; i++) {
+            double t = (double) i / EDGE_POINTS;
+            ring[i] = new Coordinate(west + (east - west) * t, south);
+            ring[EDGE_POINTS + i] = new Coordinate(east, south + (north - south) * t);
+            ring[EDGE_POINTS * 2 + i] = new Coordinate(east - (east - west) * t, north);
+            ring[EDGE_POINTS * 3 + i] = new Coordinate(west, north - (north - south) * t);
+        }
+        ring[EDGE_POINTS * 4] = new Coordinate(ring[0]);
+        GeometryFactory factory = new GeometryFactory();
+        // 顺时针：shapefile 外环方向
+        Polygon geographic = (Polygon) factory.createPolygon(ring).reverse();
+        MathTransform toSource = CRS.findMathTransform(DefaultGeographicCRS.WGS84, source, true);
+        Geometry domain = org.geotools.geometry.jts.JTS.transform(geographic, toSource);
+        for (Coordinate c : domain.getCoordinates()) {
+            if (!Double.isFinite(c.x) || !Double.isFinite(c.y)) {
+                return null;
+            }
+        }
+        return domain.isValid() ? domain : null;
+    }
+
+    boolean isActive() {
+        return domain != null;
+    }
+
+    /**
+     * 转换前的筛选：返回原几何（在范围内）、裁剪后的几何（跨越边界）或null（在范围外）
+     */
+    Geometry apply(Geometry geom) {
+        if (domain == null) {
+            return geom;
+        }
+        Envelope env = geom.getEnvelopeInternal();
+        if (!domainEnvelope.intersects(env)) {
+            outside.increment();
+            return null;
+        }
+        if (rectangular ? domainEnvelope.contains(env) : preparedDomain.contains(domain.getFactory().toGeometry(env))) {
+            inside.increment();
+            return geom;
+        }
+        Geometry clip = geom.intersection(domain);
+        if (geom instanceof Polygonal && !(clip instanceof Polygonal)) {
+            // 裁剪可能在边界上留下线或点，面要素只保留面部分
+            List<Polygon> polygons = new ArrayList<>();
+            PolygonExtracter.getPolygons(clip, polygons);
+            clip = geom.getFactory().buildGeometry(polygons);
+        }
+        if (clip.isEmpty()) {
+            outside.increment();
+            return null;
+        }
+        clipped.increment();
+        return clip;
+    }
+
+    long getOutsideCount() {
+        return outside.sum();
+    }
+
+    long getClippedCount() {
+        return clipped.sum();
+    }
+
+    /**
+     * 汇总行；不筛选或没有被裁剪、跳过的要素时返回null
+     */
+    String summary() {
+        long out = outside.sum();
+        long clip = clipped.sum();
+        if (domain == null || (out == 0 && clip == 0)) {
+            return null;
+        }
+        return label + ": " + inside.sum() + " inside domain of validity, " + clip + " clipped to it, "
+                + out + " outside (skipped)";
+    }
+}
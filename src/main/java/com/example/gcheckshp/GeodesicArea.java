@@ -0,0 +1,151 @@
+package com.example.gcheckshp;
+
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.crs.GeographicCRS;
+import org.geotools.api.referencing.datum.Ellipsoid;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * 椭球面积：直接由经纬度计算多边形在椭球面上的面积（平方米），不需要投影坐标系，也不使用 MathTransform。
+ *
+ * 每个顶点映射到椭球的 Lambert 等积圆柱投影（x = a·λ，y = a·q(φ)/2），该映射严格保持椭球面积，
+ * 再对环用鞋带公式求面积。边按在该映射中为直线处理；对常见的要素尺度，与大地线边界的差异可以忽略，
+ * 跨越大范围的长边可能有少量偏差。跨越±180°经线的环按相邻顶点的最短经差展开。
+ *
+ * 环面积逐点计算，不分配数组。每个顶点的开销主要是 sin 和 log，鞋带公式的乘加可以忽略，
+ * 因此不使用 {@link RingKernels} 的向量实现。
+ */
+final class GeodesicArea {
+
+    // WGS84 椭球参数
+    static final double WGS84_SEMI_MAJOR = 6378137.0;
+    static final double WGS84_INVERSE_FLATTENING = 298.257223563;
+
+    private final String ellipsoidName;
+    private final double semiMajor;
+    private final double e;
+    private final double e2;
+
+    GeodesicArea(String ellipsoidName, double semiMajor, double inverseFlattening) {
+        this.ellipsoidName = ellipsoidName;
+        this.semiMajor = semiMajor;
+        double f = Double.isInfinite(inverseFlattening) || inverseFlattening == 0 ? 0.0 : 1.0 / inverseFlattening;
+        this.e2 = f * (2 - f);
+        this.e = Math.sqrt(e2);
+    }
+
+    /**
+     * 按地理坐标系的椭球创建；坐标系缺失、不是地理坐标系或无法确定椭球时抛出 IllegalArgumentException，
+     * 不默认使用 WGS84
+     */
+    static GeodesicArea forCrs(CoordinateReferenceSystem crs) {
+        if (crs == null) {
+            throw new IllegalArgumentException("Geodesic area requires the layer's coordinate reference system, "
+                    + "but the layer has none. Add a .prj file (or define the CRS with reprojshp) first.");
+        }
+        if (!(CRS.getHorizontalCRS(crs) instanceof GeographicCRS)) {
+            throw new IllegalArgumentException("Geodesic area requires geographic (longitude/latitude) coordinates, but the layer CRS is "
+                    + crs.getName() + ". Reproject the layer with reprojshp first.");
+        }
+        Ellipsoid ellipsoid = CRS.getEllipsoid(crs);
+        if (ellipsoid == null) {
+            throw new IllegalArgumentException("Cannot determine the ellipsoid of the layer CRS " + crs.getName()
+                    + " for geodesic area.");
+        }
+        double inverseFlattening = ellipsoid.getInverseFlattening();
+        if (Double.isNaN(inverseFlattening) || inverseFlattening <= 0) {
+            double a = ellipsoid.getSemiMajorAxis();
+            double b = ellipsoid.getSemiMinorAxis();
+            inverseFlattening = a == b ? Double.POSITIVE_INFINITY : a / (a - b);
+        }
+        return new GeodesicArea(ellipsoid.getName().toString(), ellipsoid.getSemiMajorAxis(), inverseFlattening);
+    }
+
+    String getEllipsoidName() {
+        return ellipsoidName;
+    }
+
+    /**
+     * 环的有向面积（平方米，逆时针为正）。coords为经纬度交错数组（度），未闭合的环按闭合处理
+     */
+    double ringArea(double[] coords, int from, int count) {
+        if (count < 3) {
+            return 0.0;
+        }
+        // 鞋带公式以首点为原点，首尾自动闭合；逐点映射并累加
+        int base = from * 2;
+        double lon = coords[base];
+        double prevLon = lon;
+        double x0 = Math.toRadians(lon);
+        double y0 = authalicY(Math.toRadians(coords[base + 1]));
+        double prevX = x0;
+        double prevY = y0;
+        double sum = 0.0;
+        for (int i = 1; i < count; i++) {
+            double rawLon = coords[base + i * 2];
+            // 相邻顶点经差超过180°时按反方向展开
+            double delta = rawLon - prevLon;
+            if (delta > 180.0) {
+                delta -= 360.0;
+            } else if (delta < -180.0) {
+                delta += 360.0;
+            }
+            lon += delta;
+            prevLon = rawLon;
+            double x = Math.toRadians(lon);
+            double y = authalicY(Math.toRadians(coords[base + i * 2 + 1]));
+            if (i > 1) {
+                sum += (prevX - x0) * (y - y0) - (x - x0) * (prevY - y0);
+            }
+            prevX = x;
+            prevY = y;
+        }
+        return semiMajor * semiMajor * (sum / 2.0);
+    }
+
+    /**
+     * 几何对象的椭球面积：每个多边形为外环面积减去内环面积，非面几何为0
+     */
+    double area(Geometry geometry) {
+        double area = 0.0;
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry part = geometry.getGeometryN(i);
+            if (part instanceof Polygon) {
+                Polygon polygon = (Polygon) part;
+                double polygonArea = Math.abs(ringArea(polygon.getExteriorRing().getCoordinateSequence()));
+                for (int h = 0; h < polygon.getNumInteriorRing(); h++) {
+                    polygonArea -= Math.abs(ringArea(polygon.getInteriorRingN(h).getCoordinateSequence()));
+                }
+                area += polygonArea;
+            } else if (part != geometry && part.getNumGeometries() > 0) {
+                area += area(part);
+            }
+        }
+        return area;
+    }
+
+    private double ringArea(CoordinateSequence sequence) {
+        int n = sequence.size();
+        double[] coords = new double[n * 2];
+        for (int i = 0; i < n; i++) {
+            coords[i * 2] = sequence.getX(i);
+            coords[i * 2 + 1] = sequence.getY(i);
+        }
+        return ringArea(coords, 0, n);
+    }
+
+    // 等积圆柱投影的纵坐标（以长半轴为单位）：q(φ)/2
+    private double authalicY(double phi) {
+        double sinPhi = Math.sin(phi);
+        if (e == 0.0) {
+            return sinPhi;
+        }
+        double esin = e * sinPhi;
+        double q = (1 - e2) * (sinPhi / (1 - esin * esin) - Math.log((1 - esin) / (1 + esin)) / (2 * e));
+        return q / 2;
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.example.gcheckshp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.util.GeometryFixer;
+
+/**
+ * 几何热路径上的 JDK Flight Recorder 事件：叠加、批量合并、坐标转换、有效性检查/修复和 STRtree 查询。
+ * 每个事件带要素ID、顶点数和耗时，只有超过阈值的慢操作才被记录，用于区分异常的叠加和缓慢的转换。
+ *
+ * 调用方式固定为 begin → 操作 → end → shouldCommit 时再填字段并 commit；未开启记录时 begin/end 为空操作，
+ * 事件对象经逃逸分析消除，顶点数等字段也不会计算。阈值可在 jfr/checkshp.jfc 中调整：
+ * java -XX:StartFlightRecording:settings=default,settings=jfr/checkshp.jfc,filename=run.jfr ...
+ */
+final class GeometryEvents {
+
+    private GeometryEvents() {
+    }
+
+    @Name("com.example.gcheckshp.Overlay")
+    @Label("Overlay")
+    @Description("Intersection of one shp1 feature with one shp2 candidate")
+    @Category({"gcheckshp", "Geometry"})
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static final class OverlayEvent extends Event {
+        @Label("Feature ID")
+        String featureId;
+
+        @Label("Vertices")
+        int vertices;
+
+        @Label("Candidate Vertices")
+        int candidateVertices;
+
+        @Label("Result Vertices")
+        int resultVertices;
+    }
+
+    @Name("com.example.gcheckshp.UnionBatch")
+    @Label("Union Batch")
+    @Description("UnaryUnionOp over one batch of overlapping geometries")
+    @Category({"gcheckshp", "Geometry"})
+    @Threshold("50 ms")
+    @StackTrace(false)
+    static final class UnionBatchEvent extends Event {
+        @Label("Geometries")
+        int geometries;
+
+        @Label("Vertices")
+        int vertices;
+
+        @Label("Result Vertices")
+        int resultVertices;
+    }
+
+    @Name("com.example.gcheckshp.Transform")
+    @Label("Coordinate Transform")
+    @Description("Coordinate transformation of one feature")
+    @Category({"gcheckshp", "Geometry"})
+    @Threshold("5 ms")
+    @StackTrace(false)
+    static final class TransformEvent extends Event {
+        @Label("Feature ID")
+        String featureId;
+
+        @Label("Vertices")
+        int vertices;
+    }
+
+    @Name("com.example.gcheckshp.Validity")
+    @Label("Validity Check/Fix")
+    @Description("IsValidOp or GeometryFixer on one feature")
+    @Category({"gcheckshp", "Geometry"})
+    @Threshold("5 ms")
+    @StackTrace(false)
+    static final class ValidityEvent extends Event {
+        @Label("Feature ID")
+        String featureId;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Vertices")
+        int vertices;
+
+        @Label("Valid")
+        boolean valid;
+    }
+
+    @Name("com.example.gcheckshp.IndexQuery")
+    @Label("Index Query")
+    @Description("Spatial index query for one feature's envelope")
+    @Category({"gcheckshp", "Index"})
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class IndexQueryEvent extends Event {
+        @Label("Feature ID")
+        String featureId;
+
+        @Label("Candidates")
+        int candidates;
+
+        // "strtree" 或 "hilbert"
+        @Label("Index Kind")
+        String indexKind;
+    }
+
+    // 带事件的 IsValidOp
+    static boolean isValid(Geometry geom, String featureId) {
+        ValidityEvent event = new ValidityEvent();
+        event.begin();
+        boolean valid = geom.isValid();
+        event.end();
+        if (event.shouldCommit()) {
+            event.featureId = featureId;
+            event.operation = "check";
+            event.vertices = geom.getNumPoints();
+            event.valid = valid;
+            event.commit();
+        }
+        return valid;
+    }
+
+    // 带事件的 GeometryFixer，事件中的 valid 表示修复结果是否有效
+    static Geometry fix(Geometry geom, String featureId) {
+        ValidityEvent event = new ValidityEvent();
+        event.begin();
+        Geometry fixed = GeometryFixer.fix(geom);
+        event.end();
+        if (event.shouldCommit()) {
+            event.featureId = featureId;
+            event.operation = "fix";
+            event.vertices = geom.getNumPoints();
+            event.valid = fixed != null && !fixed.isEmpty() && fixed.isValid();
+            event.commit();
+        }
+        return fixed;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.gcheckshp;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.crs.GeographicCRS;
+import org.geotools.api.referencing.datum.Ellipsoid;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * 逐要素自动选择局部投影（auto-local）：按要素包络中心的经度选择 UTM 带或 CGCS2000 3度高斯-克吕格带，
+ * 在该带内计算面积，使全国范围的图层在任何位置都保持较小的投影变形。
+ *
+ * 各投影带的坐标系与转换按EPSG代码缓存在并发Map中，整个图层通常只涉及几十个带，
+ * 热路径上只有一次Map查找。可在多个线程中并发使用。
+ */
+final class LocalZoneProjection {
+
+    // 分带方式
+    enum Scheme {
+        // WGS84 UTM 6度带：EPSG:326zz（北半球）/ 327zz（南半球）
+        UTM,
+        // CGCS2000 3度高斯-克吕格带（不加带号）：EPSG:4534（中央经线75°E）至 EPSG:4554（135°E）
+        GK_CGCS2000
+    }
+
+    private static final int CGCS2000_GK_FIRST_EPSG = 4534;
+    private static final int CGCS2000_GK_FIRST_MERIDIAN = 75;
+    private static final int CGCS2000_GK_LAST_MERIDIAN = 135;
+
+    // 单个投影带：坐标系与源坐标系到该带的转换
+    static final class Zone {
+        final int epsg;
+        final CoordinateReferenceSystem crs;
+        final MathTransform transform;
+
+        Zone(int epsg, CoordinateReferenceSystem crs, MathTransform transform) {
+            this.epsg = epsg;
+            this.crs = crs;
+            this.transform = transform;
+        }
+    }
+
+    private final Scheme scheme;
+    private final CoordinateReferenceSystem sourceCrs;
+    // 源坐标系为投影坐标系时，把包络中心转换到经纬度；源为地理坐标系时为null
+    private final MathTransform toGeographic;
+    private final ConcurrentHashMap<Integer, Zone> zones = new ConcurrentHashMap<>();
+
+    private LocalZoneProjection(Scheme scheme, CoordinateReferenceSystem sourceCrs, MathTransform toGeographic) {
+        this.scheme = scheme;
+        this.sourceCrs = sourceCrs;
+        this.toGeographic = toGeographic;
+    }
+
+    /**
+     * 判断投影参数是否为 auto-local（auto-local、auto-local:utm、auto-local:gk）
+     */
+    static boolean isAutoLocal(String spec) {
+        return spec != null && spec.trim().toLowerCase(Locale.ROOT).startsWith("auto-local");
+    }
+
+    /**
+     * 按投影参数和图层坐标系创建。未指定分带方式时，CGCS2000 图层使用3度高斯-克吕格带，其余使用 UTM。
+     */
+    static LocalZoneProjection create(String spec, CoordinateReferenceSystem sourceCrs) throws Exception {
+        if (sourceCrs == null) {
+            throw new IllegalArgumentException("auto-local projection requires the layer CRS (.prj file)");
+        }
+        String lower = spec.trim().toLowerCase(Locale.ROOT);
+        Scheme scheme;
+        if (lower.equals("auto-local")) {
+            scheme = isCgcs2000(sourceCrs) ? Scheme.GK_CGCS2000 : Scheme.UTM;
+        } else if (lower.equals("auto-local:utm")) {
+            scheme = Scheme.UTM;
+        } else if (lower.equals("auto-local:gk")) {
+            scheme = Scheme.GK_CGCS2000;
+        } else {
+            throw new IllegalArgumentException("Unsupported auto-local projection: " + spec
+                    + " (use auto-local, auto-local:utm or auto-local:gk)");
+        }
+        MathTransform toGeographic = null;
+        if (!(CRS.getHorizontalCRS(sourceCrs) instanceof GeographicCRS)) {
+            toGeographic = CRS.findMathTransform(sourceCrs, CRS.decode("EPSG:4326", true), true);
+        }
+        return new LocalZoneProjection(scheme, sourceCrs, toGeographic);
+    }
+
+    Scheme getScheme() {
+        return scheme;
+    }
+
+    // 分带方式的说明，用于输出统计信息
+    String describe() {
+        return scheme == Scheme.GK_CGCS2000 ? "CGCS2000 3-degree Gauss-Kruger zones (UTM outside 75E-135E)"
+                : "WGS 84 UTM zones";
+    }
+
+    // 已使用的投影带数量
+    int getZoneCount() {
+        return zones.size();
+    }
+
+    /**
+     * 按源坐标系中的包络选择投影带，返回EPSG代码
+     */
+    int zoneFor(Envelope sourceEnvelope) throws Exception {
+        double[] center = { (sourceEnvelope.getMinX() + sourceEnvelope.getMaxX()) / 2,
+                (sourceEnvelope.getMinY() + sourceEnvelope.getMaxY()) / 2 };
+        if (toGeographic != null) {
+            toGeographic.transform(center, 0, center, 0, 1);
+        }
+        return zoneFor(center[0], center[1]);
+    }
+
+    /**
+     * 按经纬度选择投影带，返回EPSG代码
+     */
+    int zoneFor(double lon, double lat) {
+        // 经度规范到[-180, 180)
+        double normalized = ((lon + 180.0) % 360.0 + 360.0) % 360.0 - 180.0;
+        if (scheme == Scheme.GK_CGCS2000) {
+            int meridian = (int) Math.round(normalized / 3.0) * 3;
+            if (meridian >= CGCS2000_GK_FIRST_MERIDIAN && meridian <= CGCS2000_GK_LAST_MERIDIAN) {
+                return CGCS2000_GK_FIRST_EPSG + (meridian - CGCS2000_GK_FIRST_MERIDIAN) / 3;
+            }
+            // 超出中国范围的要素使用 UTM
+        }
+        int zone = Math.min(60, (int) Math.floor((normalized + 180.0) / 6.0) + 1);
+        return (lat >= 0 ? 32600 : 32700) + zone;
+    }
+
+    /**
+     * 几何对象（源坐标系）所在投影带的转换
+     */
+    MathTransform transformFor(Geometry geometry) throws Exception {
+        return zone(zoneFor(geometry.getEnvelopeInternal())).transform;
+    }
+
+    /**
+     * 取得（必要时创建并缓存）投影带
+     */
+    Zone zone(int epsg) throws Exception {
+        Zone zone = zones.get(epsg);
+        if (zone != null) {
+            return zone;
+        }
+        CoordinateReferenceSystem crs = CRS.decode("EPSG:" + epsg, true);
+        MathTransform transform = CRS.findMathTransform(sourceCrs, crs, true);
+        Zone created = new Zone(epsg, crs, transform);
+        Zone existing = zones.putIfAbsent(epsg, created);
+        return existing != null ? existing : created;
+    }
+
+    // 判断坐标系是否基于 CGCS2000
+    private static boolean isCgcs2000(CoordinateReferenceSystem crs) {
+        try {
+            Integer code = CRS.lookupEpsgCode(CRS.getHorizontalCRS(crs), false);
+            if (code != null && (code == 4490 || (code >= 4491 && code <= 4554))) {
+                return true;
+            }
+        } catch (Exception e) {
+            // 无法查找EPSG代码时按名称判断
+        }
+        Ellipsoid ellipsoid = CRS.getEllipsoid(crs);
+        String names = crs.getName() + " " + (ellipsoid != null ? ellipsoid.getName() : "");
+        String upper = names.toUpperCase(Locale.ROOT);
+        return upper.contains("CGCS2000") || upper.contains("CGCS_2000") || upper.contains("CHINA_2000")
+                || upper.contains("CHINA 2000");
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.gcheckshp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * 基于内存映射的 .dbf 读取器：只解析文件头和字段描述，属性值在请求时才按字段解码。
+ *
+ * 返回值类型与 GeoTools 的 DbaseFileReader 一致：字符型返回去除首尾空白的字符串，
+ * 无小数位的N型返回Integer（宽度小于10）或Long，有小数位的N型和所有F型返回Double，逻辑型返回Boolean，
+ * 日期型返回UTC零点的Date，空值返回null。可在多个线程中并发调用。
+ *
+ * 打开时校验记录区不超出文件，{@link #close()} 立即解除映射，关闭后不得再读取。
+ */
+final class MappedDbfReader implements Closeable {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    // 原始映射缓冲区，用于解除映射
+    private final MappedByteBuffer mapping;
+    private final ByteBuffer buffer;
+    private final Charset charset;
+    private final int recordCount;
+    private final int headerLength;
+    private final int recordLength;
+    private final String[] names;
+    private final char[] types;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] decimals;
+    private boolean closed;
+
+    private MappedDbfReader(MappedByteBuffer mapping, Charset charset) throws IOException {
+        this.mapping = mapping;
+        this.buffer = mapping.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.charset = charset;
+        if (this.buffer.capacity() < 32) {
+            throw new IOException("Invalid dbf header");
+        }
+        this.recordCount = this.buffer.getInt(4);
+        this.headerLength = this.buffer.getShort(8) & 0xffff;
+        this.recordLength = this.buffer.getShort(10) & 0xffff;
+        if (recordCount < 0 || headerLength < 33
+                || headerLength + (long) recordCount * recordLength > this.buffer.capacity()) {
+            throw new IOException("Invalid dbf header");
+        }
+
+        int fieldCount = 0;
+        while (32 + fieldCount * 32 < headerLength - 1 && this.buffer.get(32 + fieldCount * 32) != 0x0D) {
+            fieldCount++;
+        }
+        names = new String[fieldCount];
+        types = new char[fieldCount];
+        offsets = new int[fieldCount];
+        lengths = new int[fieldCount];
+        decimals = new int[fieldCount];
+        // 跳过每条记录开头的删除标记
+        int offset = 1;
+        for (int i = 0; i < fieldCount; i++) {
+            int base = 32 + i * 32;
+            int nameLength = 0;
+            while (nameLength < 11 && this.buffer.get(base + nameLength) != 0) {
+                nameLength++;
+            }
+            byte[] nameBytes = new byte[nameLength];
+            this.buffer.get(base, nameBytes);
+            names[i] = new String(nameBytes, charset).trim();
+            types[i] = Character.toUpperCase((char) (this.buffer.get(base + 11) & 0xff));
+            lengths[i] = this.buffer.get(base + 16) & 0xff;
+            decimals[i] = this.buffer.get(base + 17) & 0xff;
+            offsets[i] = offset;
+            offset += lengths[i];
+        }
+        if (offset > recordLength) {
+            throw new IOException("Invalid dbf field definitions");
+        }
+    }
+
+    /**
+     * 打开与shp文件配套的.dbf，使用给定字符集解码字符型字段
+     */
+    static MappedDbfReader open(File shpFile, Charset charset) throws IOException {
+        File dbf = ShpRecordScanner.companion(shpFile, ".dbf");
+        MappedByteBuffer mapping = ShpRecordScanner.map(dbf);
+        try {
+            return new MappedDbfReader(mapping, charset != null ? charset : StandardCharsets.UTF_8);
+        } catch (IOException | RuntimeException e) {
+            ShpRecordScanner.unmap(mapping);
+            throw new IOException(e.getMessage() + ": " + dbf.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * 解除映射；重复调用无效
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            ShpRecordScanner.unmap(mapping);
+        }
+    }
+
+    /**
+     * 把源 .dbf 中 keep 标记的记录按原顺序原样写入 target：文件头（只更新记录数）、字段定义、宽度、小数位和
+     * 字符编码都与源文件逐字节一致。顺序读取源文件，不使用内存映射。
+     */
+    static void copyRecords(File source, File target, BitSet keep) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source.toPath()),
+                        1 << 16));
+                OutputStream out = new BufferedOutputStream(Files.newOutputStream(target.toPath()), 1 << 16)) {
+            byte[] prefix = new byte[32];
+            in.readFully(prefix);
+            ByteBuffer header = ByteBuffer.wrap(prefix).order(ByteOrder.LITTLE_ENDIAN);
+            int sourceCount = header.getInt(4);
+            int headerLength = header.getShort(8) & 0xffff;
+            int recordLength = header.getShort(10) & 0xffff;
+            if (headerLength < 33 || recordLength < 1 || keep.length() > sourceCount) {
+                throw new IOException("Invalid dbf header: " + source.getAbsolutePath());
+            }
+            header.putInt(4, keep.cardinality());
+            out.write(prefix);
+            copy(in, out, headerLength - 32);
+            byte[] record = new byte[recordLength];
+            int last = keep.length();
+            for (int i = 0; i < last; i++) {
+                in.readFully(record);
+                if (keep.get(i)) {
+                    out.write(record);
+                }
+            }
+            // 文件结束标记
+            out.write(0x1A);
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        new DataInputStream(in).readFully(bytes);
+        out.write(bytes);
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    int getFieldCount() {
+        return names.length;
+    }
+
+    String getFieldName(int field) {
+        return names[field];
+    }
+
+    // 按名称查找字段（不区分大小写），找不到返回-1
+    int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 记录是否带删除标记
+    boolean isDeleted(int record) {
+        return buffer.get(recordStart(record)) == '*';
+    }
+
+    /**
+     * 读取并解码一个属性值
+     */
+    Object getValue(int record, int field) {
+        int start = recordStart(record) + offsets[field];
+        byte[] raw = new byte[lengths[field]];
+        buffer.get(start, raw);
+        switch (types[field]) {
+            case 'N':
+                return parseNumber(ascii(raw), decimals[field], lengths[field]);
+            case 'F':
+                // 与 GeoTools 一致：F型总是浮点数
+                return parseNumber(ascii(raw), -1, lengths[field]);
+            case 'L':
+                return parseLogical(raw.length > 0 ? (char) raw[0] : ' ');
+            case 'D':
+                return parseDate(ascii(raw));
+            default:
+                String text = new String(raw, charset).trim();
+                return text;
+        }
+    }
+
+    private int recordStart(int record) {
+        return headerLength + record * recordLength;
+    }
+
+    private static String ascii(byte[] raw) {
+        return new String(raw, StandardCharsets.ISO_8859_1).trim();
+    }
+
+    private static Object parseNumber(String text, int decimalCount, int length) {
+        if (text.isEmpty() || text.charAt(0) == '*') {
+            return null;
+        }
+        try {
+            if (decimalCount == 0) {
+                long value = Long.parseLong(text);
+                // 与 GeoTools 一致：长度小于10的整数字段返回Integer
+                if (length < 10 && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            }
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static Boolean parseLogical(char c) {
+        switch (c) {
+            case 'T': case 't': case 'Y': case 'y':
+                return Boolean.TRUE;
+            case 'F': case 'f': case 'N': case 'n':
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    private static Date parseDate(String text) {
+        if (text.length() != 8 || "00000000".equals(text)) {
+            return null;
+        }
+        try {
+            int year = Integer.parseInt(text.substring(0, 4));
+            int month = Integer.parseInt(text.substring(4, 6));
+            int day = Integer.parseInt(text.substring(6, 8));
+            // 与 GeoTools 一致：日期按UTC零点解释，不受本机时区影响
+            Calendar calendar = Calendar.getInstance(UTC, Locale.US);
+            calendar.clear();
+            calendar.set(year, month - 1, day);
+            return calendar.getTime();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package com.example.gcheckshp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.algorithm.PointLocation;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+/**
+ * 基于内存映射的 .shp/.shx 读取器：按.shx偏移直接定位记录，把坐标解码为 PackedCoordinateSequence.Double，
+ * 不构建 SimpleFeature，也不创建 Coordinate 对象数组。属性由 {@link MappedDbfReader} 按需读取。
+ *
+ * 几何类型与 GeoTools 一致：面记录返回 MultiPolygon（顺时针环为外环，逆时针环为内环，
+ * 内环归属于包含它的最小外环），线记录返回 MultiLineString，点记录返回 Point/MultiPoint，空记录返回null。
+ * 只读取X/Y坐标。读取方法只使用绝对位置访问缓冲区，可在多个线程中并发调用。
+ *
+ * 打开时校验每条记录的.shx偏移和记录长度都在.shp文件范围内，不一致时抛出IOException，由调用方退回
+ * GeoTools 读取器。{@link #close()} 立即解除映射（Windows上映射期间文件被锁定），关闭后不得再调用读取方法，
+ * 调用方须确保所有读取线程都已结束。
+ */
+final class MappedShapefileReader implements Closeable {
+
+    // 使用紧凑坐标序列的几何工厂
+    static final GeometryFactory PACKED_FACTORY = new GeometryFactory(PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+
+    private final File shpFile;
+    private final String typeName;
+    // 原始映射缓冲区，用于解除映射
+    private final MappedByteBuffer shpMapping;
+    private final MappedByteBuffer shxMapping;
+    private final ByteBuffer shpLittle;
+    private final ByteBuffer shpBig;
+    private final ByteBuffer shx;
+    private final int recordCount;
+    private final int shapeType;
+    private final Envelope bounds;
+    private boolean closed;
+
+    private MappedShapefileReader(File shpFile, MappedByteBuffer shp, MappedByteBuffer shx) {
+        this.shpFile = shpFile;
+        this.shpMapping = shp;
+        this.shxMapping = shx;
+        String name = shpFile.getName();
+        int dot = name.lastIndexOf('.');
+        this.typeName = dot > 0 ? name.substring(0, dot) : name;
+        this.shpLittle = shp.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.shpBig = shp.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.shx = shx.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.recordCount = (shx.capacity() - ShpRecordScanner.SHP_HEADER_LENGTH) / 8;
+        this.shapeType = shpLittle.getInt(32);
+        this.bounds = new Envelope(shpLittle.getDouble(36), shpLittle.getDouble(52),
+                shpLittle.getDouble(44), shpLittle.getDouble(60));
+    }
+
+    static MappedShapefileReader open(File shpFile) throws IOException {
+        MappedByteBuffer shp = ShpRecordScanner.map(shpFile);
+        MappedByteBuffer shx;
+        try {
+            shx = ShpRecordScanner.map(ShpRecordScanner.companion(shpFile, ".shx"));
+        } catch (IOException e) {
+            ShpRecordScanner.unmap(shp);
+            throw e;
+        }
+        if (shp.capacity() < ShpRecordScanner.SHP_HEADER_LENGTH || shx.capacity() < ShpRecordScanner.SHP_HEADER_LENGTH) {
+            ShpRecordScanner.unmap(shp);
+            ShpRecordScanner.unmap(shx);
+            throw new IOException("Invalid shapefile header: " + shpFile.getAbsolutePath());
+        }
+        MappedShapefileReader reader = new MappedShapefileReader(shpFile, shp, shx);
+        try {
+            reader.validate();
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    // 校验每条记录的偏移和长度，保证后续读取不越过.shp文件末尾
+    private void validate() throws IOException {
+        int shpSize = shpMapping.capacity();
+        for (int record = 0; record < recordCount; record++) {
+            long offset = (shx.getInt(ShpRecordScanner.SHP_HEADER_LENGTH + record * 8) & 0xffffffffL) * 2;
+            if (offset < ShpRecordScanner.SHP_HEADER_LENGTH
+                    || offset + ShpRecordScanner.RECORD_HEADER_LENGTH > shpSize) {
+                throw new IOException("Record " + (record + 1) + " of " + shpFile.getName()
+                        + " has an .shx offset outside the .shp file");
+            }
+            long length = (shpBig.getInt((int) offset + 4) & 0xffffffffL) * 2;
+            if (length < 4 || offset + ShpRecordScanner.RECORD_HEADER_LENGTH + length > shpSize) {
+                throw new IOException("Record " + (record + 1) + " of " + shpFile.getName()
+                        + " has a content length outside the .shp file");
+            }
+        }
+    }
+
+    /**
+     * 解除.shp/.shx的映射；重复调用无效
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            ShpRecordScanner.unmap(shpMapping);
+            ShpRecordScanner.unmap(shxMapping);
+        }
+    }
+
+    File getFile() {
+        return shpFile;
+    }
+
+    String getTypeName() {
+        return typeName;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    // 文件头中的几何类型
+    int getShapeType() {
+        return shapeType;
+    }
+
+    // 文件头中的范围
+    Envelope getBounds() {
+        return new Envelope(bounds);
+    }
+
+    // 与 GeoTools 一致的要素ID：typeName.记录号（从1开始）
+    String featureId(int record) {
+        return typeName + "." + (record + 1);
+    }
+
+    // 记录内容（不含8字节记录头）在.shp中的起始位置
+    int contentOffset(int record) {
+        return (int) ((shx.getInt(ShpRecordScanner.SHP_HEADER_LENGTH + record * 8) & 0xffffffffL) * 2)
+                + ShpRecordScanner.RECORD_HEADER_LENGTH;
+    }
+
+    // 记录内容长度（字节）
+    int contentLength(int record) {
+        return (int) ((shpBig.getInt(contentOffset(record) - 4) & 0xffffffffL) * 2);
+    }
+
+    // 文件头的原始字节（100字节）
+    byte[] readHeader() {
+        byte[] header = new byte[ShpRecordScanner.SHP_HEADER_LENGTH];
+        shpLittle.slice(0, header.length).get(header);
+        return header;
+    }
+
+    // 记录内容的原始字节（不含记录头），返回副本
+    byte[] readContent(int record) {
+        byte[] content = new byte[contentLength(record)];
+        shpLittle.slice(contentOffset(record), content.length).get(content);
+        return content;
+    }
+
+    // 记录的几何类型
+    int recordShapeType(int record) {
+        return shpLittle.getInt(contentOffset(record));
+    }
+
+    // 对记录做与 ShpRecordScanner 相同的预筛，返回结论
+    byte prescreen(int record) {
+        return ShpRecordScanner.verdictOf(shpLittle, contentOffset(record), contentLength(record));
+    }
+
+    /**
+     * 读取记录的包络（点记录为点本身）；空记录返回null。只读取记录头部，不解码坐标。
+     */
+    Envelope readEnvelope(int record) {
+        int offset = contentOffset(record);
+        int length = contentLength(record);
+        switch (shpLittle.getInt(offset)) {
+            case ShpRecordScanner.NULL_SHAPE:
+                return null;
+            case ShpRecordScanner.POINT:
+            case ShpRecordScanner.POINT_Z:
+            case ShpRecordScanner.POINT_M: {
+                // 长度不足的记录按空记录处理
+                if (length < 20) {
+                    return null;
+                }
+                double x = shpLittle.getDouble(offset + 4);
+                double y = shpLittle.getDouble(offset + 12);
+                return new Envelope(x, x, y, y);
+            }
+            default:
+                if (length < 36) {
+                    return null;
+                }
+                return new Envelope(shpLittle.getDouble(offset + 4), shpLittle.getDouble(offset + 20),
+                        shpLittle.getDouble(offset + 12), shpLittle.getDouble(offset + 28));
+        }
+    }
+
+    /**
+     * 解码记录的几何对象；空记录返回null
+     */
+    Geometry readGeometry(int record, GeometryFactory factory) throws IOException {
+        int offset = contentOffset(record);
+        int length = contentLength(record);
+        int type = shpLittle.getInt(offset);
+        switch (type) {
+            case ShpRecordScanner.NULL_SHAPE:
+                return null;
+            case ShpRecordScanner.POINT:
+            case ShpRecordScanner.POINT_Z:
+            case ShpRecordScanner.POINT_M:
+                checkLength(record, length, 20);
+                return factory.createPoint(new PackedCoordinateSequence.Double(
+                        new double[] { shpLittle.getDouble(offset + 4), shpLittle.getDouble(offset + 12) }, 2, 0));
+            case ShpRecordScanner.MULTIPOINT:
+            case ShpRecordScanner.MULTIPOINT_Z:
+            case ShpRecordScanner.MULTIPOINT_M: {
+                checkLength(record, length, 40);
+                int numPoints = shpLittle.getInt(offset + 36);
+                checkLength(record, length, 40 + 16L * numPoints);
+                double[] coords = readCoordinates(offset + 40, 0, numPoints, false);
+                Point[] points = new Point[numPoints];
+                for (int i = 0; i < numPoints; i++) {
+                    points[i] = factory.createPoint(new PackedCoordinateSequence.Double(
+                            new double[] { coords[i * 2], coords[i * 2 + 1] }, 2, 0));
+                }
+                return factory.createMultiPoint(points);
+            }
+            case ShpRecordScanner.POLYLINE:
+            case ShpRecordScanner.POLYLINE_Z:
+            case ShpRecordScanner.POLYLINE_M:
+                checkParts(record, offset, length);
+                return readLines(offset, factory);
+            case ShpRecordScanner.POLYGON:
+            case ShpRecordScanner.POLYGON_Z:
+            case ShpRecordScanner.POLYGON_M:
+                checkParts(record, offset, length);
+                return readPolygons(offset, factory);
+            default:
+                throw new IOException("Unsupported shape type " + type + " in record " + (record + 1) + " of "
+                        + shpFile.getName());
+        }
+    }
+
+    private void checkLength(int record, int length, long needed) throws IOException {
+        if (needed < 0 || needed > length) {
+            throw new IOException("Record " + (record + 1) + " of " + shpFile.getName()
+                    + " is shorter than its declared point count");
+        }
+    }
+
+    // 校验部件数、点数和部件起点与记录长度一致，且部件起点不减
+    private void checkParts(int record, int offset, int length) throws IOException {
+        checkLength(record, length, 44);
+        int numParts = shpLittle.getInt(offset + 36);
+        int numPoints = shpLittle.getInt(offset + 40);
+        if (numParts < 0 || numPoints < 0) {
+            throw new IOException("Record " + (record + 1) + " of " + shpFile.getName()
+                    + " has a negative part or point count");
+        }
+        checkLength(record, length, 44 + 4L * numParts + 16L * numPoints);
+        int previous = 0;
+        for (int i = 0; i < numParts; i++) {
+            int start = shpLittle.getInt(offset + 44 + i * 4);
+            if (start < previous || start > numPoints) {
+                throw new IOException("Record " + (record + 1) + " of " + shpFile.getName()
+                        + " has an invalid part index");
+            }
+            previous = start;
+        }
+    }
+
+    // 部件的起止点序号：返回长度为numParts+1的数组
+    int[] readPartStarts(int offset) {
+        int numParts = shpLittle.getInt(offset + 36);
+        int numPoints = shpLittle.getInt(offset + 40);
+        int[] starts = new int[numParts + 1];
+        for (int i = 0; i < numParts; i++) {
+            starts[i] = shpLittle.getInt(offset + 44 + i * 4);
+        }
+        starts[numParts] = numPoints;
+        return starts;
+    }
+
+    /**
+     * 批量读取坐标（x0, y0, x1, y1, ...）。pointsOffset为点数组起始位置，close为true且首尾点不同时追加首点闭合环
+     */
+    double[] readCoordinates(int pointsOffset, int from, int to, boolean close) {
+        int count = to - from;
+        int start = pointsOffset + from * 16;
+        boolean needsClose = close && count > 0
+                && (shpLittle.getDouble(start) != shpLittle.getDouble(start + (count - 1) * 16)
+                        || shpLittle.getDouble(start + 8) != shpLittle.getDouble(start + (count - 1) * 16 + 8));
+        double[] coords = new double[(count + (needsClose ? 1 : 0)) * 2];
+        // slice不修改共享缓冲区的position，可并发调用
+        shpLittle.slice(start, count * 16).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(coords, 0, count * 2);
+        if (needsClose) {
+            coords[count * 2] = coords[0];
+            coords[count * 2 + 1] = coords[1];
+        }
+        return coords;
+    }
+
+    private Geometry readLines(int offset, GeometryFactory factory) {
+        int[] starts = readPartStarts(offset);
+        int numParts = starts.length - 1;
+        int pointsOffset = offset + 44 + numParts * 4;
+        List<LineString> lines = new ArrayList<>(numParts);
+        for (int part = 0; part < numParts; part++) {
+            double[] coords = readCoordinates(pointsOffset, starts[part], starts[part + 1], false);
+            if (coords.length == 2) {
+                // 只有一个点的部件：与 GeoTools 一样复制该点构成退化线段
+                coords = new double[] { coords[0], coords[1], coords[0], coords[1] };
+            }
+            if (coords.length >= 4) {
+                lines.add(factory.createLineString(new PackedCoordinateSequence.Double(coords, 2, 0)));
+            }
+        }
+        return factory.createMultiLineString(lines.toArray(new LineString[0]));
+    }
+
+    private Geometry readPolygons(int offset, GeometryFactory factory) {
+        int[] starts = readPartStarts(offset);
+        int numParts = starts.length - 1;
+        int pointsOffset = offset + 44 + numParts * 4;
+        List<LinearRing> shells = new ArrayList<>();
+        List<LinearRing> holes = new ArrayList<>();
+        for (int part = 0; part < numParts; part++) {
+            double[] coords = readCoordinates(pointsOffset, starts[part], starts[part + 1], true);
+            // 少于4个点的环不能构成多边形，与 GeoTools 一样跳过
+            if (coords.length < 8) {
+                continue;
+            }
+            PackedCoordinateSequence.Double sequence = new PackedCoordinateSequence.Double(coords, 2, 0);
+            LinearRing ring = factory.createLinearRing(sequence);
+            if (Orientation.isCCW(sequence)) {
+                holes.add(ring);
+            } else {
+                shells.add(ring);
+            }
+        }
+        if (shells.isEmpty() && holes.isEmpty()) {
+            return factory.createMultiPolygon(new Polygon[0]);
+        }
+        if (shells.size() == 1) {
+            return factory.createMultiPolygon(new Polygon[] {
+                    factory.createPolygon(shells.get(0), holes.toArray(new LinearRing[0])) });
+        }
+        if (shells.isEmpty() && holes.size() == 1) {
+            return factory.createMultiPolygon(new Polygon[] { factory.createPolygon(holes.get(0).reverse()) });
+        }
+        return factory.createMultiPolygon(assignHolesToShells(shells, holes, factory));
+    }
+
+    // 把每个内环分配给包含它的最小外环；不在任何外环内的内环作为独立的多边形
+    private static Polygon[] assignHolesToShells(List<LinearRing> shells, List<LinearRing> holes,
+            GeometryFactory factory) {
+        List<List<LinearRing>> holesForShells = new ArrayList<>(shells.size());
+        for (int i = 0; i < shells.size(); i++) {
+            holesForShells.add(new ArrayList<>());
+        }
+        List<Polygon> outside = new ArrayList<>();
+        for (LinearRing hole : holes) {
+            Envelope holeEnv = hole.getEnvelopeInternal();
+            Coordinate testPoint = hole.getCoordinateN(0);
+            int minShell = -1;
+            Envelope minEnv = null;
+            for (int i = 0; i < shells.size(); i++) {
+                LinearRing shell = shells.get(i);
+                Envelope shellEnv = shell.getEnvelopeInternal();
+                if (!shellEnv.contains(holeEnv)) {
+                    continue;
+                }
+                Coordinate[] shellCoords = shell.getCoordinates();
+                if (PointLocation.isInRing(testPoint, shellCoords) || PointLocation.isOnLine(testPoint, shellCoords)) {
+                    if (minShell < 0 || minEnv.contains(shellEnv)) {
+                        minShell = i;
+                        minEnv = shellEnv;
+                    }
+                }
+            }
+            if (minShell < 0) {
+                outside.add(factory.createPolygon(hole.reverse()));
+            } else {
+                holesForShells.get(minShell).add(hole);
+            }
+        }
+        Polygon[] polygons = new Polygon[shells.size() + outside.size()];
+        for (int i = 0; i < shells.size(); i++) {
+            polygons[i] = factory.createPolygon(shells.get(i), holesForShells.get(i).toArray(new LinearRing[0]));
+        }
+        for (int i = 0; i < outside.size(); i++) {
+            polygons[shells.size() + i] = outside.get(i);
+        }
+        return polygons;
+    }
+}
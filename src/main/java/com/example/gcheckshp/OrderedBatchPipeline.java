@@ -0,0 +1,180 @@
+package com.example.gcheckshp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 有序批处理流水线：读取线程 -> 工作线程池 -> 调用线程按输入顺序消费结果。
+ *
+ * 读取线程逐条读取输入并按批提交给工作线程池；待处理批次放在有界队列中，
+ * 队列满时读取线程阻塞，因此内存占用只与线程数和批大小有关，与输入总量无关。
+ * 调用线程按提交顺序取出批次结果，保证输出顺序与串行处理完全一致。
+ */
+final class OrderedBatchPipeline<I, R> {
+
+    // 读取下一条输入，输入耗尽时返回null
+    interface Source<I> {
+        I next() throws Exception;
+    }
+
+    // 在工作线程中处理单条输入
+    interface Worker<I, R> {
+        R apply(I item) throws Exception;
+    }
+
+    // 在调用线程中按输入顺序消费结果
+    interface Sink<I, R> {
+        void accept(I item, R result) throws Exception;
+    }
+
+    // 默认每批要素数量
+    static final int DEFAULT_BATCH_SIZE = 256;
+
+    // 每个工作线程允许排队的批次数
+    private static final int BATCHES_PER_THREAD = 4;
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    private final int threads;
+    private final int batchSize;
+
+    OrderedBatchPipeline(int threads, int batchSize) {
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * 解析线程数参数：auto或0表示使用全部可用处理器
+     */
+    static int parseThreads(String value) {
+        if (value == null || value.trim().isEmpty() || "auto".equalsIgnoreCase(value.trim())) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        int threads = Integer.parseInt(value.trim());
+        if (threads < 0) {
+            throw new IllegalArgumentException("Thread count must not be negative: " + value);
+        }
+        return threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    private static final class Batch<I, R> {
+        final List<I> items;
+        final List<R> results;
+
+        Batch(List<I> items, List<R> results) {
+            this.items = items;
+            this.results = results;
+        }
+    }
+
+    void run(Source<I> source, Worker<I, R> worker, Sink<I, R> sink) throws Exception {
+        int poolId = POOL_COUNTER.incrementAndGet();
+        AtomicInteger workerCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread t = new Thread(runnable, "checkshp-worker-" + poolId + "-" + workerCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // 队列中的null批次表示输入结束
+        BlockingQueue<Future<Batch<I, R>>> pending = new ArrayBlockingQueue<>(threads * BATCHES_PER_THREAD);
+
+        Thread reader = new Thread(() -> {
+            try {
+                List<I> items = new ArrayList<>(batchSize);
+                I item;
+                while ((item = source.next()) != null) {
+                    items.add(item);
+                    if (items.size() >= batchSize) {
+                        pending.put(submit(pool, items, worker));
+                        items = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!items.isEmpty()) {
+                    pending.put(submit(pool, items, worker));
+                }
+                pending.put(CompletableFuture.completedFuture(null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                CompletableFuture<Batch<I, R>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                try {
+                    pending.put(failed);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "checkshp-reader-" + poolId);
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            while (true) {
+                Batch<I, R> batch;
+                try {
+                    batch = pending.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw e;
+                }
+                if (batch == null) {
+                    break;
+                }
+                for (int i = 0; i < batch.items.size(); i++) {
+                    sink.accept(batch.items.get(i), batch.results.get(i));
+                }
+            }
+        } finally {
+            // 正常结束时读取线程已退出；出错时中断读取线程并丢弃未完成的批次
+            reader.interrupt();
+            pool.shutdownNow();
+            reader.join();
+            // 等待正在执行的批次结束：调用方返回后可能立即解除输入文件的映射
+            awaitTermination(pool);
+        }
+    }
+
+    /**
+     * 等待线程池中的任务全部结束；等待期间被中断时继续等待，结束后恢复中断状态
+     */
+    static void awaitTermination(ExecutorService pool) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <I, R> Future<Batch<I, R>> submit(ExecutorService pool, List<I> items, Worker<I, R> worker) {
+        return pool.submit(() -> {
+            List<R> results = new ArrayList<>(items.size());
+            for (I item : items) {
+                results.add(worker.apply(item));
+            }
+            return new Batch<>(items, results);
+        });
+    }
+}
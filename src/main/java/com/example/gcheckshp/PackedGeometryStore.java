@@ -0,0 +1,204 @@
+package com.example.gcheckshp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+/**
+ * shp2 面要素的紧凑存储：坐标以交错的 x/y 双精度写入堆外的直接缓冲区（按块分配），堆上每个要素只保留
+ * 坐标位置、环结构和分组下标。STRtree 中存放要素下标而不是几何对象，查询通过包络比较的候选才由
+ * {@link #geometry(int)} 构造几何，用完即可回收。
+ *
+ * 一个 JTS 多边形包含 Polygon、LinearRing、Coordinate[] 和每个带 x/y/z 的 Coordinate 对象，
+ * 建筑轮廓这类小多边形的堆占用约为坐标本身的10倍；这里每个顶点16字节且不在堆上。构造的几何使用
+ * {@link PackedCoordinateSequence}，只含 x/y，不再有逐点对象。
+ *
+ * 只支持 Polygon / MultiPolygon。写入在读取 shp2 的单个线程中完成，之后只读。
+ */
+final class PackedGeometryStore {
+
+    // 第一块缓冲区的容量（双精度个数，512 KB），之后每块加倍，直到 CHUNK_DOUBLES
+    private static final int FIRST_CHUNK_DOUBLES = 1 << 16;
+    // 每块缓冲区的最大容量（64 MB）；超过一块的要素单独分配一块
+    private static final int CHUNK_DOUBLES = 1 << 23;
+
+    private final GeometryFactory factory = new GeometryFactory(PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+    private final List<DoubleBuffer> chunks = new ArrayList<>();
+    private DoubleBuffer current;
+    private int currentFill;
+    private int nextChunkDoubles = FIRST_CHUNK_DOUBLES;
+    // 已写满（不再写入）的块中实际使用的双精度个数
+    private long filledDoubles;
+    // 已分配的堆外容量
+    private long offHeapBytes;
+
+    // 每个要素的坐标位置：高32位为块号，低32位为块内的双精度下标
+    private long[] coordPosition = new long[1024];
+    // 每个要素在 structure 中的起始位置；structure 依次为多边形数，及每个多边形的环数和各环点数
+    private int[] structureStart = new int[1024];
+    private int[] structure = new int[4096];
+    private int structureSize;
+    // 每个要素的分组下标，未分组时为 -1
+    private int[] group = new int[1024];
+    private final List<String> groupKeys = new ArrayList<>();
+    private final Map<String, Integer> groupIndex = new HashMap<>();
+    private int size;
+
+    /**
+     * 写入一个面几何及其分组值（可为null），返回要素下标
+     */
+    int add(Geometry geometry, String groupKey) {
+        int polygons = 0;
+        int rings = 0;
+        int points = 0;
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry part = geometry.getGeometryN(i);
+            if (part instanceof Polygon && !part.isEmpty()) {
+                Polygon polygon = (Polygon) part;
+                polygons++;
+                rings += 1 + polygon.getNumInteriorRing();
+                points += polygon.getNumPoints();
+            }
+        }
+        if (polygons == 0) {
+            throw new IllegalArgumentException("Not a polygonal geometry: " + geometry.getGeometryType());
+        }
+        if (size == coordPosition.length) {
+            int capacity = size + (size >> 1);
+            coordPosition = Arrays.copyOf(coordPosition, capacity);
+            structureStart = Arrays.copyOf(structureStart, capacity);
+            group = Arrays.copyOf(group, capacity);
+        }
+        ensureStructure(1 + polygons + rings);
+        DoubleBuffer chunk = reserve(points * 2);
+
+        coordPosition[size] = ((long) (chunks.size() - 1) << 32) | currentFill;
+        structureStart[size] = structureSize;
+        group[size] = groupKey != null ? groupIndex.computeIfAbsent(groupKey, k -> {
+            groupKeys.add(k);
+            return groupKeys.size() - 1;
+        }) : -1;
+        structure[structureSize++] = polygons;
+        int position = currentFill;
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry part = geometry.getGeometryN(i);
+            if (!(part instanceof Polygon) || part.isEmpty()) {
+                continue;
+            }
+            Polygon polygon = (Polygon) part;
+            structure[structureSize++] = 1 + polygon.getNumInteriorRing();
+            for (int r = -1; r < polygon.getNumInteriorRing(); r++) {
+                LinearRing ring = r < 0 ? polygon.getExteriorRing() : polygon.getInteriorRingN(r);
+                CoordinateSequence sequence = ring.getCoordinateSequence();
+                int n = sequence.size();
+                structure[structureSize++] = n;
+                for (int k = 0; k < n; k++) {
+                    chunk.put(position++, sequence.getX(k));
+                    chunk.put(position++, sequence.getY(k));
+                }
+            }
+        }
+        currentFill = position;
+        return size++;
+    }
+
+    /**
+     * 构造要素的几何：单个多边形返回 Polygon，否则返回 MultiPolygon
+     */
+    Geometry geometry(int index) {
+        long location = coordPosition[index];
+        DoubleBuffer chunk = chunks.get((int) (location >>> 32));
+        int position = (int) location;
+        int s = structureStart[index];
+        int polygons = structure[s++];
+        Polygon[] parts = new Polygon[polygons];
+        for (int p = 0; p < polygons; p++) {
+            int rings = structure[s++];
+            LinearRing shell = null;
+            LinearRing[] holes = new LinearRing[rings - 1];
+            for (int r = 0; r < rings; r++) {
+                int n = structure[s++];
+                double[] coords = new double[n * 2];
+                chunk.get(position, coords);
+                position += n * 2;
+                LinearRing ring = factory.createLinearRing(new PackedCoordinateSequence.Double(coords, 2, 0));
+                if (r == 0) {
+                    shell = ring;
+                } else {
+                    holes[r - 1] = ring;
+                }
+            }
+            parts[p] = factory.createPolygon(shell, holes);
+        }
+        return polygons == 1 ? parts[0] : factory.createMultiPolygon(parts);
+    }
+
+    /**
+     * 要素的分组值，写入时未指定分组返回null
+     */
+    String group(int index) {
+        int g = group[index];
+        return g >= 0 ? groupKeys.get(g) : null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // 坐标实际占用的堆外字节数
+    long getOffHeapBytes() {
+        return (filledDoubles + currentFill) * Double.BYTES;
+    }
+
+    // 已分配的堆外容量（最后一块通常未写满）
+    long getOffHeapCapacityBytes() {
+        return offHeapBytes;
+    }
+
+    // 堆上的结构数组（按已分配容量计）
+    long getHeapBytes() {
+        return (long) coordPosition.length * Long.BYTES
+                + (long) (structureStart.length + group.length + structure.length) * Integer.BYTES;
+    }
+
+    private void ensureStructure(int needed) {
+        if (structureSize + needed > structure.length) {
+            structure = Arrays.copyOf(structure, Math.max(structureSize + needed,
+                    structure.length + (structure.length >> 1)));
+        }
+    }
+
+    // 当前块放不下时分配新块，一个要素的坐标总在同一块内；块从小到大分配，小图层不会预占 64 MB
+    private DoubleBuffer reserve(int doubles) {
+        if (current == null || currentFill + doubles > current.capacity()) {
+            int capacity = Math.max(nextChunkDoubles, doubles);
+            ByteBuffer buffer;
+            try {
+                buffer = ByteBuffer.allocateDirect(capacity * Double.BYTES).order(ByteOrder.nativeOrder());
+            } catch (OutOfMemoryError e) {
+                throw new IllegalStateException("Out of direct memory after " + (offHeapBytes >> 20)
+                        + " MB of packed shp2 coordinates; raise -XX:MaxDirectMemorySize", e);
+            }
+            current = buffer.asDoubleBuffer();
+            chunks.add(current);
+            filledDoubles += currentFill;
+            currentFill = 0;
+            nextChunkDoubles = Math.min(CHUNK_DOUBLES, nextChunkDoubles * 2);
+            offHeapBytes += (long) capacity * Double.BYTES;
+        }
+        return current;
+    }
+}
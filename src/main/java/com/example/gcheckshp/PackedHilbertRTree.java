@@ -0,0 +1,241 @@
+package com.example.gcheckshp;
+
+import java.util.Arrays;
+
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * 静态的紧凑 Hilbert R 树：先用 {@link #add} 加入全部包络，{@link #finish()} 后只读。
+ * 叶子按包络中心的 Hilbert 值排序，每 nodeSize 个节点合成一个父节点，逐层向上直到根。
+ *
+ * 所有节点的包络按层依次存放在一个 double[]（minX, minY, maxX, maxY）中，对应的 int[] 在叶子层为
+ * 要素编号（加入的顺序），在上层为第一个子节点的位置；不为每个项分配 Envelope 或装箱对象。
+ * 查询结果写入调用方复用的 {@link Hits}，查询本身不分配内存。
+ */
+final class PackedHilbertRTree {
+
+    // Hilbert 曲线的阶数：坐标归一化到 [0, 65535]
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    /**
+     * 可复用的查询结果：命中的要素编号及遍历用的栈。由单个线程使用。
+     */
+    static final class Hits {
+        private int[] ids = new int[64];
+        private int size;
+        private int[] stack = new int[32];
+
+        int size() {
+            return size;
+        }
+
+        int get(int i) {
+            return ids[i];
+        }
+
+        private void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private final int nodeSize;
+    private int numItems;
+    private double[] boxes = new double[4 * 1024];
+    private int[] indices;
+    // 每层最后一个节点之后的位置，第0层为叶子
+    private int[] levelBounds;
+    private double minX = Double.POSITIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY;
+    private double maxY = Double.NEGATIVE_INFINITY;
+
+    PackedHilbertRTree(int nodeSize) {
+        if (nodeSize < 2) {
+            throw new IllegalArgumentException("Node size must be at least 2: " + nodeSize);
+        }
+        this.nodeSize = nodeSize;
+    }
+
+    /**
+     * 加入一个包络，返回其编号（从0开始，按加入顺序）
+     */
+    int add(Envelope envelope) {
+        if (levelBounds != null) {
+            throw new IllegalStateException("Tree is already built");
+        }
+        if (4 * numItems == boxes.length) {
+            boxes = Arrays.copyOf(boxes, 4 * (numItems + (numItems >> 1)));
+        }
+        int b = 4 * numItems;
+        boxes[b] = envelope.getMinX();
+        boxes[b + 1] = envelope.getMinY();
+        boxes[b + 2] = envelope.getMaxX();
+        boxes[b + 3] = envelope.getMaxY();
+        minX = Math.min(minX, boxes[b]);
+        minY = Math.min(minY, boxes[b + 1]);
+        maxX = Math.max(maxX, boxes[b + 2]);
+        maxY = Math.max(maxY, boxes[b + 3]);
+        return numItems++;
+    }
+
+    /**
+     * 按 Hilbert 值排序叶子并逐层构建上层节点；重复调用无效
+     */
+    void finish() {
+        if (levelBounds != null) {
+            return;
+        }
+        // 各层节点数
+        int n = numItems;
+        int numNodes = n;
+        int levels = 1;
+        for (int count = n; count > 1; levels++) {
+            count = (count + nodeSize - 1) / nodeSize;
+            numNodes += count;
+        }
+        levelBounds = new int[levels];
+        int end = n;
+        levelBounds[0] = end;
+        for (int level = 1, count = n; level < levels; level++) {
+            count = (count + nodeSize - 1) / nodeSize;
+            end += count;
+            levelBounds[level] = end;
+        }
+
+        // 排序键：高位为 Hilbert 值（32位），低位为编号，排序后可直接取出编号
+        double width = maxX - minX;
+        double height = maxY - minY;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int b = 4 * i;
+            long h = hilbert((boxes[b] + boxes[b + 2]) / 2, (boxes[b + 1] + boxes[b + 3]) / 2, minX, minY, width,
+                    height);
+            keys[i] = (h << 31) | i;
+        }
+        Arrays.sort(keys);
+
+        double[] packed = new double[4 * numNodes];
+        indices = new int[numNodes];
+        for (int i = 0; i < n; i++) {
+            int id = (int) (keys[i] & Integer.MAX_VALUE);
+            System.arraycopy(boxes, 4 * id, packed, 4 * i, 4);
+            indices[i] = id;
+        }
+        boxes = packed;
+
+        // 上层节点：包络为其子节点包络的并
+        int pos = 0;
+        int next = n;
+        for (int level = 0; level + 1 < levels; level++) {
+            int levelEnd = levelBounds[level];
+            while (pos < levelEnd) {
+                int first = pos;
+                double nodeMinX = Double.POSITIVE_INFINITY;
+                double nodeMinY = Double.POSITIVE_INFINITY;
+                double nodeMaxX = Double.NEGATIVE_INFINITY;
+                double nodeMaxY = Double.NEGATIVE_INFINITY;
+                for (int k = 0; k < nodeSize && pos < levelEnd; k++, pos++) {
+                    int b = 4 * pos;
+                    nodeMinX = Math.min(nodeMinX, boxes[b]);
+                    nodeMinY = Math.min(nodeMinY, boxes[b + 1]);
+                    nodeMaxX = Math.max(nodeMaxX, boxes[b + 2]);
+                    nodeMaxY = Math.max(nodeMaxY, boxes[b + 3]);
+                }
+                int b = 4 * next;
+                boxes[b] = nodeMinX;
+                boxes[b + 1] = nodeMinY;
+                boxes[b + 2] = nodeMaxX;
+                boxes[b + 3] = nodeMaxY;
+                indices[next++] = first;
+            }
+        }
+    }
+
+    /**
+     * 查询与包络相交的要素编号，结果写入 hits（先清空），返回命中数；未构建时先构建
+     */
+    int query(Envelope envelope, Hits hits) {
+        finish();
+        hits.size = 0;
+        if (numItems == 0 || envelope.isNull()) {
+            return 0;
+        }
+        double qMinX = envelope.getMinX();
+        double qMinY = envelope.getMinY();
+        double qMaxX = envelope.getMaxX();
+        double qMaxY = envelope.getMaxY();
+        int[] stack = hits.stack;
+        int top = 0;
+        int level = levelBounds.length - 1;
+        int nodeIndex = levelBounds[level] - 1;
+        while (true) {
+            int end = Math.min(nodeIndex + nodeSize, levelBounds[level]);
+            for (int pos = nodeIndex; pos < end; pos++) {
+                int b = 4 * pos;
+                if (boxes[b] > qMaxX || boxes[b + 1] > qMaxY || boxes[b + 2] < qMinX || boxes[b + 3] < qMinY) {
+                    continue;
+                }
+                if (level == 0) {
+                    hits.add(indices[pos]);
+                } else {
+                    if (top + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                        hits.stack = stack;
+                    }
+                    stack[top++] = indices[pos];
+                    stack[top++] = level - 1;
+                }
+            }
+            if (top == 0) {
+                return hits.size;
+            }
+            level = stack[--top];
+            nodeIndex = stack[--top];
+        }
+    }
+
+    int size() {
+        return numItems;
+    }
+
+    // 全部包络的并，没有要素时为空包络
+    Envelope getBounds() {
+        return numItems == 0 ? new Envelope() : new Envelope(minX, maxX, minY, maxY);
+    }
+
+    /**
+     * 点在范围 (minX, minY, width, height) 内的 Hilbert 值（0 到 2^32-1），范围外的点按边界计
+     */
+    static long hilbert(double x, double y, double minX, double minY, double width, double height) {
+        int hx = scale(x, minX, width);
+        int hy = scale(y, minY, height);
+        long d = 0;
+        for (int s = 1 << 15; s > 0; s >>= 1) {
+            int rx = (hx & s) != 0 ? 1 : 0;
+            int ry = (hy & s) != 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // 旋转象限，使下一级的曲线方向一致
+            if (ry == 0) {
+                if (rx == 1) {
+                    hx = HILBERT_MAX - hx;
+                    hy = HILBERT_MAX - hy;
+                }
+                int t = hx;
+                hx = hy;
+                hy = t;
+            }
+        }
+        return d;
+    }
+
+    private static int scale(double value, double min, double extent) {
+        if (!(extent > 0)) {
+            return 0;
+        }
+        double t = (value - min) / extent;
+        return t <= 0 ? 0 : t >= 1 ? HILBERT_MAX : (int) (t * HILBERT_MAX);
+    }
+}
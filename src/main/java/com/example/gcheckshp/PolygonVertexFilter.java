@@ -0,0 +1,126 @@
+package com.example.gcheckshp;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * 交叠计算的候选快速判定：候选几何的首个顶点严格落在面要素内部时，两者必然相交，可以跳过 intersects 的完整拓扑判断。
+ *
+ * 构建时把面要素的所有环复制为交错坐标数组，并用 {@link RingKernels} 预先算出每个环的包络；
+ * 判断时先比较包络，再对外环和内环做点在环内判断。点恰好落在边界上时射线法结果不确定，
+ * 但此时点在要素边界上，两者同样相交，因此判定为相交的结果总是正确的；判定为否时调用方仍需调用 intersects。
+ */
+final class PolygonVertexFilter {
+
+    private final double[] coords;
+    // 每个环的起始点下标和点数
+    private final int[] ringStart;
+    private final int[] ringCount;
+    // 每个环的包络：minX, maxX, minY, maxY
+    private final double[] ringEnvelope;
+    // 每个多边形的外环下标，其后到下一个多边形外环之前为其内环；末尾为环总数
+    private final int[] polygonRing;
+
+    private PolygonVertexFilter(double[] coords, int[] ringStart, int[] ringCount, double[] ringEnvelope,
+            int[] polygonRing) {
+        this.coords = coords;
+        this.ringStart = ringStart;
+        this.ringCount = ringCount;
+        this.ringEnvelope = ringEnvelope;
+        this.polygonRing = polygonRing;
+    }
+
+    /**
+     * 为面几何（Polygon / MultiPolygon）创建；不含多边形时返回null
+     */
+    static PolygonVertexFilter of(Geometry geometry) {
+        int polygons = 0;
+        int rings = 0;
+        int points = 0;
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry part = geometry.getGeometryN(i);
+            if (part instanceof Polygon && !part.isEmpty()) {
+                Polygon polygon = (Polygon) part;
+                polygons++;
+                rings += 1 + polygon.getNumInteriorRing();
+                points += polygon.getNumPoints();
+            }
+        }
+        if (polygons == 0) {
+            return null;
+        }
+        double[] coords = new double[points * 2];
+        int[] ringStart = new int[rings];
+        int[] ringCount = new int[rings];
+        double[] ringEnvelope = new double[rings * 4];
+        int[] polygonRing = new int[polygons + 1];
+        int polygonIndex = 0;
+        int ringIndex = 0;
+        int point = 0;
+        double[] envelope = new double[4];
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry part = geometry.getGeometryN(i);
+            if (!(part instanceof Polygon) || part.isEmpty()) {
+                continue;
+            }
+            Polygon polygon = (Polygon) part;
+            polygonRing[polygonIndex++] = ringIndex;
+            for (int r = -1; r < polygon.getNumInteriorRing(); r++) {
+                LinearRing ring = r < 0 ? polygon.getExteriorRing() : polygon.getInteriorRingN(r);
+                CoordinateSequence sequence = ring.getCoordinateSequence();
+                int n = sequence.size();
+                for (int k = 0; k < n; k++) {
+                    coords[(point + k) * 2] = sequence.getX(k);
+                    coords[(point + k) * 2 + 1] = sequence.getY(k);
+                }
+                ringStart[ringIndex] = point;
+                ringCount[ringIndex] = n;
+                RingKernels.envelope(coords, point, n, envelope);
+                System.arraycopy(envelope, 0, ringEnvelope, ringIndex * 4, 4);
+                ringIndex++;
+                point += n;
+            }
+        }
+        polygonRing[polygonIndex] = ringIndex;
+        return new PolygonVertexFilter(coords, ringStart, ringCount, ringEnvelope, polygonRing);
+    }
+
+    /**
+     * 候选几何的首个顶点是否落在面要素内；为true时两者一定相交
+     */
+    boolean containsVertexOf(Geometry candidate) {
+        Coordinate c = candidate.getCoordinate();
+        return c != null && contains(c.x, c.y);
+    }
+
+    private boolean contains(double x, double y) {
+        for (int p = 0; p + 1 < polygonRing.length; p++) {
+            int shell = polygonRing[p];
+            if (!inRing(shell, x, y)) {
+                continue;
+            }
+            boolean inHole = false;
+            for (int hole = shell + 1; hole < polygonRing[p + 1]; hole++) {
+                if (inRing(hole, x, y)) {
+                    inHole = true;
+                    break;
+                }
+            }
+            if (!inHole) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean inRing(int ring, double x, double y) {
+        int e = ring * 4;
+        if (x < ringEnvelope[e] || x > ringEnvelope[e + 1] || y < ringEnvelope[e + 2] || y > ringEnvelope[e + 3]) {
+            return false;
+        }
+        return RingKernels.containsPoint(coords, ringStart[ring], ringCount[ring], x, y);
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.gcheckshp;
+
+import java.util.logging.Logger;
+
+/**
+ * 环的计算内核：有向面积（鞋带公式）、包络和点在环内判断，输入为交错存放的坐标数组（x0, y0, x1, y1, ...）。
+ *
+ * 运行时存在 jdk.incubator.vector 模块（启动参数 --add-modules jdk.incubator.vector）且可选的向量实现
+ * （src/vector/java）已打包时使用 SIMD 实现，否则使用标量实现。标量实现的面积与 JTS Area.ofRingSigned
+ * 逐位一致；向量实现的求和顺序不同，结果可能在末位上有差异。
+ */
+final class RingKernels {
+
+    private static final Logger logger = Logger.getLogger(RingKernels.class.getName());
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_IMPL = "com.example.gcheckshp.VectorRingKernels";
+
+    /**
+     * 内核实现；坐标数组中的下标均以点为单位
+     */
+    interface Kernels {
+        /**
+         * 环的有向面积（与 JTS Area.ofRingSigned 相同：顺时针为正）；未闭合的环按闭合处理
+         */
+        double signedArea(double[] coords, int from, int count);
+
+        /**
+         * 环的包络，写入 out[0..3] = minX, maxX, minY, maxY
+         */
+        void envelope(double[] coords, int from, int count, double[] out);
+
+        /**
+         * 点是否在环内（射线法）；点恰好在边界上时结果不确定，调用方不能依赖
+         */
+        boolean containsPoint(double[] coords, int from, int count, double x, double y);
+    }
+
+    private static final Kernels SCALAR = new ScalarKernels();
+    private static final Kernels ACTIVE = load();
+
+    private RingKernels() {
+    }
+
+    // 是否使用 SIMD 实现
+    static boolean isVectorized() {
+        return ACTIVE != SCALAR;
+    }
+
+    // 当前使用的实现
+    static Kernels active() {
+        return ACTIVE;
+    }
+
+    static Kernels scalar() {
+        return SCALAR;
+    }
+
+    static double signedArea(double[] coords, int from, int count) {
+        return ACTIVE.signedArea(coords, from, count);
+    }
+
+    static void envelope(double[] coords, int from, int count, double[] out) {
+        ACTIVE.envelope(coords, from, count, out);
+    }
+
+    static boolean containsPoint(double[] coords, int from, int count, double x, double y) {
+        return ACTIVE.containsPoint(coords, from, count, x, y);
+    }
+
+    // 只有模块已解析时才加载向量实现，避免在未启用孵化模块的JVM上触发类加载错误
+    private static Kernels load() {
+        if (Boolean.getBoolean("checkshp.scalarKernels")
+                || ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (Kernels) Class.forName(VECTOR_IMPL).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return SCALAR;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            logger.warning("Vector kernels unavailable, using scalar kernels: " + e);
+            return SCALAR;
+        }
+    }
+
+    static boolean isClosed(double[] coords, int from, int count) {
+        int last = (from + count - 1) * 2;
+        return coords[from * 2] == coords[last] && coords[from * 2 + 1] == coords[last + 1];
+    }
+
+    // 标量实现
+    static final class ScalarKernels implements Kernels {
+
+        @Override
+        public double signedArea(double[] coords, int from, int count) {
+            // 计算顺序与 JTS Area.ofRingSigned 相同，结果逐位一致
+            boolean closed = isClosed(coords, from, count);
+            int n = closed ? count : count + 1;
+            if (n < 3) {
+                return 0.0;
+            }
+            int base = from * 2;
+            double x0 = coords[base];
+            double p0y;
+            double p1x = coords[base];
+            double p1y = coords[base + 1];
+            double p2x = coords[base + 2] - x0;
+            double p2y = coords[base + 3];
+            double sum = 0.0;
+            for (int i = 1; i < n - 1; i++) {
+                p0y = p1y;
+                p1x = p2x;
+                p1y = p2y;
+                // 第n-1个点为闭合点，即首点
+                int next = (i + 1 < count ? i + 1 : 0) * 2 + base;
+                p2x = coords[next] - x0;
+                p2y = coords[next + 1];
+                sum += p1x * (p0y - p2y);
+            }
+            return sum / 2.0;
+        }
+
+        @Override
+        public void envelope(double[] coords, int from, int count, double[] out) {
+            double minX = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            int end = (from + count) * 2;
+            for (int i = from * 2; i < end; i += 2) {
+                double x = coords[i];
+                double y = coords[i + 1];
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+            out[0] = minX;
+            out[1] = maxX;
+            out[2] = minY;
+            out[3] = maxY;
+        }
+
+        @Override
+        public boolean containsPoint(double[] coords, int from, int count, double x, double y) {
+            boolean inside = false;
+            int base = from * 2;
+            // 从最后一点到首点的边开始，未闭合的环自动闭合
+            int prev = base + (count - 1) * 2;
+            for (int i = base; i < base + count * 2; i += 2) {
+                double xi = coords[i];
+                double yi = coords[i + 1];
+                double xj = coords[prev];
+                double yj = coords[prev + 1];
+                if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                    inside = !inside;
+                }
+                prev = i;
+            }
+            return inside;
+        }
+    }
+}
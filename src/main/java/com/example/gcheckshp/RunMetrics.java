@@ -0,0 +1,348 @@
+package com.example.gcheckshp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一次运行的分阶段指标：各阶段的墙钟时间、CPU时间、要素数和顶点数（由此得到吞吐量），
+ * 每个要素的候选数直方图，堆内存峰值和GC时间。--metrics 指定文件时写出JSON报告，
+ * --progress 时按固定间隔向stderr输出进度和预计剩余时间。
+ *
+ * 整段执行的阶段（CRS解析、shp2读取、索引构建等）用 {@link #begin} 计时，同时记录当前线程的CPU时间；
+ * 在每个要素内交替执行的阶段（候选查询、叠加、写CSV等）用 {@link Phase#add} 累加纳秒数，只记录墙钟时间，
+ * 其CPU时间包含在外层的整段阶段中。计数器可并发累加。
+ */
+final class RunMetrics {
+
+    // 候选数直方图的桶数：0、1、2-3、4-7、...、2^(n-2) 以上
+    private static final int HISTOGRAM_BUCKETS = 16;
+    // 进度输出间隔
+    private static final long PROGRESS_INTERVAL_NANOS = 2_000_000_000L;
+
+    // 单个阶段的累计值
+    static final class Phase {
+        final String name;
+        private final LongAdder wallNanos = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private final LongAdder features = new LongAdder();
+        private final LongAdder vertices = new LongAdder();
+        private volatile boolean cpuMeasured;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 累加一次执行：耗时（纳秒）、处理的要素数和顶点数
+         */
+        void add(long nanos, long featureCount, long vertexCount) {
+            wallNanos.add(nanos);
+            if (featureCount != 0) {
+                features.add(featureCount);
+            }
+            if (vertexCount != 0) {
+                vertices.add(vertexCount);
+            }
+        }
+    }
+
+    // 整段阶段的计时
+    final class Span {
+        private final Phase phase;
+        private final long startNanos = System.nanoTime();
+        private final long startCpu = threadCpuTime();
+
+        private Span(Phase phase) {
+            this.phase = phase;
+        }
+
+        void end() {
+            end(0, 0);
+        }
+
+        void end(long featureCount, long vertexCount) {
+            phase.add(System.nanoTime() - startNanos, featureCount, vertexCount);
+            long cpu = threadCpuTime();
+            if (startCpu >= 0 && cpu >= 0) {
+                phase.cpuNanos.add(cpu - startCpu);
+                phase.cpuMeasured = true;
+            }
+        }
+    }
+
+    /**
+     * 进度输出：由处理循环所在的单个线程调用 {@link #step}
+     */
+    final class Progress {
+        private final String label;
+        private final long total;
+        private final long startNanos = System.nanoTime();
+        private long done;
+        private long lastPrint = startNanos;
+
+        private Progress(String label, long total) {
+            this.label = label;
+            this.total = total;
+        }
+
+        void step() {
+            done++;
+            if (!progressEnabled || (done & 0x3F) != 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (now - lastPrint >= PROGRESS_INTERVAL_NANOS) {
+                lastPrint = now;
+                print(now);
+            }
+        }
+
+        void finish() {
+            if (progressEnabled) {
+                print(System.nanoTime());
+            }
+        }
+
+        private void print(long now) {
+            double seconds = (now - startNanos) / 1e9;
+            double rate = seconds > 0 ? done / seconds : 0;
+            StringBuilder line = new StringBuilder("Progress ").append(label).append(": ").append(done);
+            if (total > 0) {
+                line.append(" / ").append(total)
+                        .append(String.format(Locale.ROOT, " (%.1f%%)", 100.0 * Math.min(done, total) / total));
+            }
+            line.append(String.format(Locale.ROOT, ", %.0f features/s", rate));
+            if (total > 0 && rate > 0 && done < total) {
+                line.append(", ETA ").append(formatDuration((long) ((total - done) / rate)));
+            }
+            line.append(", elapsed ").append(formatDuration((long) seconds));
+            System.err.println(line);
+        }
+    }
+
+    private final String mode;
+    private final boolean progressEnabled;
+    private final long startNanos = System.nanoTime();
+    private final Instant startTime = Instant.now();
+    private final long startProcessCpu = processCpuTime();
+    private final long startGcCount;
+    private final long startGcMillis;
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final Map<String, String> inputs = new LinkedHashMap<>();
+    private final LongAdder[] candidateHistogram = new LongAdder[HISTOGRAM_BUCKETS];
+    private final LongAdder candidateTotal = new LongAdder();
+    private final LongAdder candidateFeatures = new LongAdder();
+    private volatile long candidateMax;
+
+    RunMetrics(String mode, boolean progressEnabled) {
+        this.mode = mode;
+        this.progressEnabled = progressEnabled;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            candidateHistogram[i] = new LongAdder();
+        }
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        startGcCount = gcCount;
+        startGcMillis = gcMillis;
+        // 从本次运行开始统计堆内存峰值
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // 记录输入信息（文件路径、坐标系等），写入报告的 inputs 对象
+    void input(String key, Object value) {
+        synchronized (inputs) {
+            inputs.put(key, value != null ? value.toString() : null);
+        }
+    }
+
+    /**
+     * 按名称获取阶段，不存在时创建；热循环中应在循环外获取一次
+     */
+    Phase phase(String name) {
+        synchronized (phases) {
+            return phases.computeIfAbsent(name, Phase::new);
+        }
+    }
+
+    Span begin(String name) {
+        return new Span(phase(name));
+    }
+
+    Progress progress(String label, long total) {
+        return new Progress(label, total);
+    }
+
+    // 记录一个要素的候选数
+    void candidates(int count) {
+        candidateFeatures.increment();
+        candidateTotal.add(count);
+        int bucket = count == 0 ? 0 : Math.min(HISTOGRAM_BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(count));
+        candidateHistogram[bucket].increment();
+        if (count > candidateMax) {
+            synchronized (candidateHistogram) {
+                if (count > candidateMax) {
+                    candidateMax = count;
+                }
+            }
+        }
+    }
+
+    /**
+     * 写出JSON报告；diagnostics 不为null时附带各类别的计数
+     */
+    void writeJson(File file, Diagnostics diagnostics) throws IOException {
+        long wallNanos = System.nanoTime() - startNanos;
+        long processCpu = processCpuTime();
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        // 各堆内存池峰值之和：各池峰值不一定同时出现，是实际峰值的上界
+        long heapPeak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                heapPeak += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        StringBuilder json = new StringBuilder(2048);
+        json.append("{\n");
+        json.append("  \"mode\": ").append(quote(mode)).append(",\n");
+        json.append("  \"started\": ").append(quote(startTime.toString())).append(",\n");
+        json.append("  \"inputs\": {");
+        synchronized (inputs) {
+            int i = 0;
+            for (Map.Entry<String, String> entry : inputs.entrySet()) {
+                json.append(i++ > 0 ? ", " : "").append(quote(entry.getKey())).append(": ").append(quote(entry.getValue()));
+            }
+        }
+        json.append("},\n");
+        json.append("  \"wall_ms\": ").append(millis(wallNanos)).append(",\n");
+        json.append("  \"process_cpu_ms\": ")
+                .append(processCpu >= 0 && startProcessCpu >= 0 ? millis(processCpu - startProcessCpu) : "null")
+                .append(",\n");
+        json.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"phases\": [");
+        List<Phase> phaseList;
+        synchronized (phases) {
+            phaseList = new ArrayList<>(phases.values());
+        }
+        for (int i = 0; i < phaseList.size(); i++) {
+            Phase phase = phaseList.get(i);
+            long wall = phase.wallNanos.sum();
+            long features = phase.features.sum();
+            long vertices = phase.vertices.sum();
+            double seconds = wall / 1e9;
+            json.append(i > 0 ? ",\n" : "\n").append("    {\"name\": ").append(quote(phase.name))
+                    .append(", \"wall_ms\": ").append(millis(wall))
+                    .append(", \"cpu_ms\": ").append(phase.cpuMeasured ? millis(phase.cpuNanos.sum()) : "null")
+                    .append(", \"features\": ").append(features)
+                    .append(", \"vertices\": ").append(vertices)
+                    .append(", \"features_per_s\": ").append(rate(features, seconds))
+                    .append(", \"vertices_per_s\": ").append(rate(vertices, seconds))
+                    .append('}');
+        }
+        json.append(phaseList.isEmpty() ? "],\n" : "\n  ],\n");
+        long candidateFeatureCount = candidateFeatures.sum();
+        json.append("  \"candidates_per_feature\": {\"features\": ").append(candidateFeatureCount)
+                .append(", \"mean\": ")
+                .append(candidateFeatureCount > 0
+                        ? String.format(Locale.ROOT, "%.3f", (double) candidateTotal.sum() / candidateFeatureCount)
+                        : "0")
+                .append(", \"max\": ").append(candidateMax).append(", \"histogram\": [");
+        for (int b = 0; b < HISTOGRAM_BUCKETS; b++) {
+            long min = b == 0 ? 0 : 1L << (b - 1);
+            json.append(b > 0 ? ", " : "").append("{\"min\": ").append(min).append(", \"max\": ")
+                    .append(b == 0 ? "0" : b == HISTOGRAM_BUCKETS - 1 ? "null" : Long.toString((1L << b) - 1))
+                    .append(", \"count\": ").append(candidateHistogram[b].sum()).append('}');
+        }
+        json.append("]},\n");
+        json.append("  \"memory\": {\"heap_peak_bytes\": ").append(heapPeak)
+                .append(", \"heap_max_bytes\": ").append(Runtime.getRuntime().maxMemory()).append("},\n");
+        json.append("  \"gc\": {\"collections\": ").append(gcCount - startGcCount)
+                .append(", \"time_ms\": ").append(gcMillis - startGcMillis).append('}');
+        if (diagnostics != null) {
+            json.append(",\n  \"diagnostics\": {");
+            int i = 0;
+            for (Diagnostics.Category category : Diagnostics.Category.values()) {
+                json.append(i++ > 0 ? ", " : "").append(quote(category.name())).append(": ")
+                        .append(diagnostics.count(category));
+            }
+            json.append('}');
+        }
+        json.append("\n}\n");
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(json.toString());
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String rate(long count, double seconds) {
+        return seconds > 0 ? String.format(Locale.ROOT, "%.1f", count / seconds) : "null";
+    }
+
+    private static String formatDuration(long seconds) {
+        return String.format(Locale.ROOT, "%02d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // 当前线程的CPU时间（纳秒），不支持时为-1
+    private static long threadCpuTime() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    // 进程CPU时间（纳秒），不支持时为-1
+    private static long processCpuTime() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.gcheckshp;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.api.referencing.operation.MathTransform;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * 不构建几何对象的面积引擎：按.shx记录范围分块并行处理，直接从映射的坐标缓冲区批量转换坐标并用鞋带公式求面积。
+ *
+ * 只处理已知有效的面记录（预筛通过或有效性旁车文件中记为有效），其余记录返回 {@link #FALLBACK}，
+ * 由调用方走 JTS 路径。有效的多边形各外环互不重叠、内环位于外环内，面积与内环归属于哪个外环无关：
+ * 外环面积之和减去内环面积之和。不在任何外环内的逆时针环被 GeoTools 作为独立的多边形，按外环计。
+ * 结果与 JTS 的 getArea() 一致。
+ * 环面积使用 {@link RingKernels}；启用向量内核时求和顺序不同，与 JTS 的差异在末位。
+ *
+ * 指定 {@link GeodesicArea} 时不做坐标转换，环面积直接由经纬度按椭球计算。
+ * 指定 {@link LocalZoneProjection} 时每条记录转换到其包络中心所在的投影带；分块内的记录按投影带分组后依次计算。
+ *
+ * 调用方必须按记录号递增的顺序调用 {@link #area(int)}；后续分块在后台提前计算，内存占用与线程数成正比。
+ */
+final class ShoelaceAreaEngine implements AutoCloseable {
+
+    // 需要调用方用 JTS 计算的记录
+    static final double FALLBACK = Double.NaN;
+    // 非面记录、空记录或没有可用环的记录，调用方直接跳过
+    static final double SKIPPED = -1.0;
+
+    // 每个分块的记录数
+    private static final int BLOCK_SIZE = 4096;
+    // 每个线程提前提交的分块数
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    private final MappedShapefileReader reader;
+    private final ValiditySidecar validity;
+    private final MathTransform transform;
+    private final GeodesicArea geodesic;
+    private final LocalZoneProjection local;
+    private final ExecutorService pool;
+    private final int maxPending;
+    private final ArrayDeque<Future<double[]>> pending = new ArrayDeque<>();
+    private int nextBlock;
+    private int currentBlock = -1;
+    private double[] currentAreas;
+
+    /**
+     * @param validity  有效性旁车文件，可为null
+     * @param transform 源坐标系到面积计算坐标系的转换，为null表示不转换
+     * @param geodesic  椭球面积计算器，为null时按平面坐标计算
+     * @param local     逐要素局部投影，为null时使用transform
+     */
+    ShoelaceAreaEngine(MappedShapefileReader reader, ValiditySidecar validity, MathTransform transform,
+            GeodesicArea geodesic, LocalZoneProjection local, int threads) {
+        this.reader = reader;
+        this.validity = validity;
+        this.transform = geodesic != null || local != null ? null : transform;
+        this.geodesic = geodesic;
+        this.local = geodesic != null ? null : local;
+        int poolThreads = Math.max(1, threads);
+        int poolId = POOL_COUNTER.incrementAndGet();
+        AtomicInteger workerCounter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(poolThreads, runnable -> {
+            Thread t = new Thread(runnable, "checkshp-area-" + poolId + "-" + workerCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.maxPending = poolThreads * BLOCKS_PER_THREAD;
+    }
+
+    /**
+     * 返回记录的面积，或 {@link #FALLBACK}、{@link #SKIPPED}
+     */
+    double area(int record) throws Exception {
+        int block = record / BLOCK_SIZE;
+        if (block < currentBlock) {
+            throw new IllegalStateException("Records must be requested in increasing order");
+        }
+        while (currentBlock < block) {
+            fill();
+            try {
+                currentAreas = pending.removeFirst().get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+            currentBlock++;
+        }
+        fill();
+        return currentAreas[record - block * BLOCK_SIZE];
+    }
+
+    private void fill() {
+        int blockCount = (reader.getRecordCount() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        while (pending.size() < maxPending && nextBlock < blockCount) {
+            int from = nextBlock * BLOCK_SIZE;
+            int to = Math.min(reader.getRecordCount(), from + BLOCK_SIZE);
+            pending.addLast(pool.submit(() -> computeBlock(from, to)));
+            nextBlock++;
+        }
+    }
+
+    private double[] computeBlock(int from, int to) {
+        double[] areas = new double[to - from];
+        if (local != null) {
+            computeBlockByZone(from, to, areas);
+            return areas;
+        }
+        for (int record = from; record < to; record++) {
+            areas[record - from] = computeAreaOrFallback(record, transform);
+        }
+        return areas;
+    }
+
+    // 按投影带分组：高32位为EPSG代码，低32位为记录号，排序后同一投影带的记录连续计算
+    private void computeBlockByZone(int from, int to, double[] areas) {
+        long[] keys = new long[to - from];
+        int count = 0;
+        for (int record = from; record < to; record++) {
+            int epsg;
+            try {
+                Envelope envelope = reader.readEnvelope(record);
+                if (envelope == null) {
+                    areas[record - from] = SKIPPED;
+                    continue;
+                }
+                epsg = local.zoneFor(envelope);
+            } catch (Exception e) {
+                areas[record - from] = FALLBACK;
+                continue;
+            }
+            keys[count++] = ((long) epsg << 32) | record;
+        }
+        Arrays.sort(keys, 0, count);
+        int currentEpsg = -1;
+        MathTransform zoneTransform = null;
+        for (int i = 0; i < count; i++) {
+            int epsg = (int) (keys[i] >>> 32);
+            int record = (int) keys[i];
+            if (epsg != currentEpsg || zoneTransform == null) {
+                currentEpsg = epsg;
+                try {
+                    zoneTransform = local.zone(epsg).transform;
+                } catch (Exception e) {
+                    zoneTransform = null;
+                }
+            }
+            areas[record - from] = zoneTransform != null ? computeAreaOrFallback(record, zoneTransform) : FALLBACK;
+        }
+    }
+
+    private double computeAreaOrFallback(int record, MathTransform recordTransform) {
+        try {
+            return computeArea(record, recordTransform);
+        } catch (Exception e) {
+            // 坐标转换失败等情况交给 JTS 路径处理并记录日志
+            return FALLBACK;
+        }
+    }
+
+    private double computeArea(int record, MathTransform recordTransform) throws Exception {
+        int type = reader.recordShapeType(record);
+        if (type != ShpRecordScanner.POLYGON && type != ShpRecordScanner.POLYGON_Z
+                && type != ShpRecordScanner.POLYGON_M) {
+            // 空记录和非面记录不输出面积
+            return SKIPPED;
+        }
+        boolean knownValid = (validity != null && validity.isKnownValid(record))
+                || reader.prescreen(record) == ShpRecordScanner.CLEARED;
+        if (!knownValid) {
+            return FALLBACK;
+        }
+        int offset = reader.contentOffset(record);
+        int[] starts = reader.readPartStarts(offset);
+        int numParts = starts.length - 1;
+        int numPoints = starts[numParts];
+        int pointsOffset = offset + 44 + numParts * 4;
+
+        // 整条记录的坐标一次读入；环的角色由源坐标的方向决定（转换可能改变方向）
+        double[] coords = reader.readCoordinates(pointsOffset, 0, numPoints, false);
+        boolean[] usable = new boolean[numParts];
+        boolean[] shell = new boolean[numParts];
+        int shellCount = 0;
+        int holeCount = 0;
+        for (int part = 0; part < numParts; part++) {
+            int count = starts[part + 1] - starts[part];
+            // 与 GeoTools 一样跳过闭合后不足4个点的环
+            if (count == 0 || (RingKernels.isClosed(coords, starts[part], count) ? count : count + 1) < 4) {
+                continue;
+            }
+            usable[part] = true;
+            shell[part] = RingKernels.signedArea(coords, starts[part], count) >= 0;
+            if (shell[part]) {
+                shellCount++;
+            } else {
+                holeCount++;
+            }
+        }
+        if (shellCount + holeCount == 0) {
+            return SKIPPED;
+        }
+        if (shellCount > 1 && holeCount > 0) {
+            // 不在任何外环内的内环与 GeoTools 一样作为独立的多边形
+            markOutsideHoles(coords, starts, usable, shell);
+            shellCount = 0;
+            holeCount = 0;
+            for (int part = 0; part < numParts; part++) {
+                if (usable[part]) {
+                    if (shell[part]) {
+                        shellCount++;
+                    } else {
+                        holeCount++;
+                    }
+                }
+            }
+        }
+
+        // 整条记录一次批量转换
+        if (recordTransform != null) {
+            recordTransform.transform(coords, 0, coords, 0, numPoints);
+        }
+
+        // 求和顺序与 JTS 一致：每个多边形为外环面积依次减去内环面积，多个多边形按顺序相加
+        // （多个外环且有内环时先加全部外环再减全部内环，与 JTS 的差异在末位）
+        double area = 0.0;
+        if (shellCount >= 1 && holeCount > 0) {
+            double polygonArea = 0.0;
+            for (int part = 0; part < numParts; part++) {
+                if (usable[part] && shell[part]) {
+                    polygonArea += Math.abs(measure(coords, starts[part], starts[part + 1] - starts[part]));
+                }
+            }
+            for (int part = 0; part < numParts; part++) {
+                if (usable[part] && !shell[part]) {
+                    polygonArea -= Math.abs(measure(coords, starts[part], starts[part + 1] - starts[part]));
+                }
+            }
+            area += polygonArea;
+        } else {
+            // 全部为外环，或没有外环时所有环都作为外环
+            for (int part = 0; part < numParts; part++) {
+                if (usable[part]) {
+                    area += Math.abs(measure(coords, starts[part], starts[part + 1] - starts[part]));
+                }
+            }
+        }
+        return Double.isFinite(area) ? area : FALLBACK;
+    }
+
+    /**
+     * 把不在任何外环内的内环改记为外环。有效几何中内环最多在一点上接触其外环，因此取内环前三条边的中点
+     * 按多数判断是否在外环内，不受接触点落在边界上的影响。
+     */
+    private static void markOutsideHoles(double[] coords, int[] starts, boolean[] usable, boolean[] shell) {
+        int numParts = usable.length;
+        double[][] shellEnvelopes = new double[numParts][];
+        for (int part = 0; part < numParts; part++) {
+            if (usable[part] && shell[part]) {
+                shellEnvelopes[part] = new double[4];
+                RingKernels.envelope(coords, starts[part], starts[part + 1] - starts[part], shellEnvelopes[part]);
+            }
+        }
+        double[] holeEnvelope = new double[4];
+        for (int hole = 0; hole < numParts; hole++) {
+            if (!usable[hole] || shell[hole]) {
+                continue;
+            }
+            int from = starts[hole];
+            int count = starts[hole + 1] - from;
+            // 不重复计入闭合点的顶点数（可用的环至少3个）
+            int vertices = RingKernels.isClosed(coords, from, count) ? count - 1 : count;
+            RingKernels.envelope(coords, from, count, holeEnvelope);
+            boolean inside = false;
+            for (int part = 0; part < numParts && !inside; part++) {
+                double[] env = shellEnvelopes[part];
+                // 包络为 minX, maxX, minY, maxY
+                if (env == null || holeEnvelope[0] < env[0] || holeEnvelope[1] > env[1]
+                        || holeEnvelope[2] < env[2] || holeEnvelope[3] > env[3]) {
+                    continue;
+                }
+                int votes = 0;
+                for (int edge = 0; edge < 3; edge++) {
+                    int a = (from + edge % vertices) * 2;
+                    int b = (from + (edge + 1) % vertices) * 2;
+                    double x = (coords[a] + coords[b]) / 2;
+                    double y = (coords[a + 1] + coords[b + 1]) / 2;
+                    if (RingKernels.containsPoint(coords, starts[part], starts[part + 1] - starts[part], x, y)) {
+                        votes++;
+                    }
+                }
+                inside = votes >= 2;
+            }
+            if (!inside) {
+                shell[hole] = true;
+            }
+        }
+    }
+
+    // 转换后坐标上的环面积（平面或椭球）
+    private double measure(double[] coords, int from, int count) {
+        return geodesic != null ? geodesic.ringArea(coords, from, count)
+                : RingKernels.signedArea(coords, from, count);
+    }
+
+    // 等待预取的分块计算结束后返回：调用方随后会解除读取器的映射
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        OrderedBatchPipeline.awaitTermination(pool);
+    }
+}
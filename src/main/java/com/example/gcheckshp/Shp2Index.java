@@ -0,0 +1,124 @@
+package com.example.gcheckshp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * shp2 的空间索引及候选几何的来源。索引为 JTS {@link STRtree}，或 {@link PackedHilbertRTree}
+ * （此时几何对象按编号保存在列表中）；启用 {@link PackedGeometryStore} 时索引中只有要素下标，
+ * 候选几何在读取时才构造。
+ *
+ * {@link #query} 的结果保存在实例中，随后用 {@link #candidate} 和 {@link #group} 逐个读取；
+ * Hilbert 树的查询复用同一个结果缓冲区，不为每个 shp1 要素分配列表。由单个线程使用。
+ */
+final class Shp2Index {
+
+    private final STRtree strTree;
+    private final PackedHilbertRTree hilbertTree;
+    private final PackedGeometryStore packed;
+    // Hilbert 树的要素编号到几何对象（不使用紧凑存储时）
+    private final List<Geometry> geometries;
+    private final PackedHilbertRTree.Hits hits;
+    private List<?> strResults = Collections.emptyList();
+    private Map<Geometry, String> geomToGroup;
+
+    /**
+     * hilbert 为true时使用 Hilbert 树，否则使用 STRtree；packed 可为null
+     */
+    Shp2Index(boolean hilbert, int nodeCapacity, PackedGeometryStore packed) {
+        this.strTree = hilbert ? null : new STRtree(nodeCapacity);
+        this.hilbertTree = hilbert ? new PackedHilbertRTree(nodeCapacity) : null;
+        this.packed = packed;
+        this.geometries = hilbert && packed == null ? new ArrayList<>() : null;
+        this.hits = hilbert ? new PackedHilbertRTree.Hits() : null;
+    }
+
+    /**
+     * 加入几何对象；使用紧凑存储时写入存储并记录分组值，否则分组由 {@link #setGroups} 指定
+     */
+    void insert(Geometry geom, String groupKey) {
+        Envelope envelope = geom.getEnvelopeInternal();
+        if (packed != null) {
+            int index = packed.add(geom, groupKey);
+            if (hilbertTree != null) {
+                // Hilbert 树的编号与存储下标同序
+                hilbertTree.add(envelope);
+            } else {
+                strTree.insert(envelope, index);
+            }
+        } else if (hilbertTree != null) {
+            hilbertTree.add(envelope);
+            geometries.add(geom);
+        } else {
+            strTree.insert(envelope, geom);
+        }
+    }
+
+    // 几何对象到分组值（不使用紧凑存储时）
+    void setGroups(Map<Geometry, String> geomToGroup) {
+        this.geomToGroup = geomToGroup;
+    }
+
+    void build() {
+        if (hilbertTree != null) {
+            hilbertTree.finish();
+        } else {
+            strTree.build();
+        }
+    }
+
+    /**
+     * 查询包络相交的候选，返回候选数
+     */
+    int query(Envelope envelope) {
+        if (hilbertTree != null) {
+            return hilbertTree.query(envelope, hits);
+        }
+        strResults = strTree.query(envelope);
+        return strResults.size();
+    }
+
+    /**
+     * 最近一次查询的第 i 个候选的几何
+     */
+    Geometry candidate(int i) {
+        if (packed != null) {
+            return packed.geometry(item(i));
+        }
+        return hilbertTree != null ? geometries.get(hits.get(i)) : (Geometry) strResults.get(i);
+    }
+
+    /**
+     * 最近一次查询的第 i 个候选的分组值，candidate 为其几何；未分组时为null
+     */
+    String group(int i, Geometry candidate) {
+        if (packed != null) {
+            return packed.group(item(i));
+        }
+        return geomToGroup != null ? geomToGroup.get(candidate) : null;
+    }
+
+    // 索引类型，用于事件记录
+    String kind() {
+        return hilbertTree != null ? "hilbert" : "strtree";
+    }
+
+    // 全部 shp2 包络的并
+    Envelope getBounds() {
+        if (hilbertTree != null) {
+            return hilbertTree.getBounds();
+        }
+        Object bounds = strTree.isEmpty() ? null : strTree.getRoot().getBounds();
+        return bounds != null ? (Envelope) bounds : new Envelope();
+    }
+
+    private int item(int i) {
+        return hilbertTree != null ? hits.get(i) : (Integer) strResults.get(i);
+    }
+}
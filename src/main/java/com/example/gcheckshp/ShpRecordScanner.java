@@ -0,0 +1,567 @@
+package com.example.gcheckshp;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * .shp/.shx 二进制预扫描：直接在内存映射的缓冲区上按.shx偏移读取记录，不构建JTS几何对象。
+ *
+ * 能检测空几何、空部件、NaN/Infinity坐标、未闭合的环、环的点数过少、环方向错误以及
+ * .shx 与 .shp 记录长度不一致等问题。对于能够证明有效的记录（点、坐标有效的线、
+ * 各环简单且互不接触、嵌套关系与环方向一致的多边形，含内环和多部件）标记为 CLEARED，
+ * 调用方可跳过 IsValidOp；其余记录（包括所有可疑记录）仍需完整的JTS校验。
+ *
+ * 多边形的简单性用按 minX 排序的扫描线检查所有线段对，比较次数超过上限（线段高度重叠的病态情形）时
+ * 放弃证明，交给JTS。
+ */
+final class ShpRecordScanner {
+
+    // 记录结论：可跳过JTS校验
+    static final byte CLEARED = 0;
+    // 记录结论：廉价检查无法判断，需要JTS校验
+    static final byte NEEDS_VALIDATION = 1;
+    // 记录结论：廉价检查发现问题
+    static final byte SUSPECT = 2;
+
+    // 可疑原因（按位组合）
+    static final int FLAG_NULL_SHAPE = 1;
+    static final int FLAG_EMPTY_PART = 1 << 1;
+    static final int FLAG_NON_FINITE = 1 << 2;
+    static final int FLAG_UNCLOSED_RING = 1 << 3;
+    static final int FLAG_TOO_FEW_POINTS = 1 << 4;
+    static final int FLAG_WRONG_ORIENTATION = 1 << 5;
+    static final int FLAG_LENGTH_MISMATCH = 1 << 6;
+    static final int FLAG_MALFORMED = 1 << 7;
+
+    static final String[] FLAG_NAMES = {
+        "null shapes", "empty parts", "non-finite coordinates", "unclosed rings",
+        "too few ring points", "wrong ring orientation", ".shx/.shp length mismatches", "malformed records"
+    };
+
+    // 可证明有效的多边形的最大顶点数和环数，超过时交给JTS
+    static final int MAX_PROVABLE_POINTS = 1 << 20;
+    static final int MAX_PROVABLE_RINGS = 1024;
+    // 扫描线的线段比较次数上限：每条线段平均 SWEEP_BUDGET_PER_SEGMENT 次
+    private static final int SWEEP_BUDGET_PER_SEGMENT = 64;
+
+    static final int SHP_HEADER_LENGTH = 100;
+    static final int RECORD_HEADER_LENGTH = 8;
+
+    static final int NULL_SHAPE = 0;
+    static final int POINT = 1;
+    static final int POLYLINE = 3;
+    static final int POLYGON = 5;
+    static final int MULTIPOINT = 8;
+    static final int POINT_Z = 11;
+    static final int POLYLINE_Z = 13;
+    static final int POLYGON_Z = 15;
+    static final int MULTIPOINT_Z = 18;
+    static final int POINT_M = 21;
+    static final int POLYLINE_M = 23;
+    static final int POLYGON_M = 25;
+    static final int MULTIPOINT_M = 28;
+
+    /**
+     * 预扫描结果：每条记录的结论与可疑原因
+     */
+    static final class Result {
+        final byte[] verdicts;
+        final byte[] flags;
+        final int[] flagCounts = new int[FLAG_NAMES.length];
+        int cleared;
+        int suspect;
+        // .shx偏移与.shp记录顺序一致时，记录序号才能与GeoTools要素ID对应
+        boolean sequential = true;
+
+        Result(int recordCount) {
+            this.verdicts = new byte[recordCount];
+            this.flags = new byte[recordCount];
+        }
+
+        int getRecordCount() {
+            return verdicts.length;
+        }
+
+        // 判断记录（从0开始）是否已通过廉价检查证明有效
+        boolean isCleared(int recordIndex) {
+            return sequential && recordIndex >= 0 && recordIndex < verdicts.length && verdicts[recordIndex] == CLEARED;
+        }
+
+        void record(int recordIndex, byte verdict, int recordFlags) {
+            verdicts[recordIndex] = verdict;
+            flags[recordIndex] = (byte) recordFlags;
+            if (verdict == CLEARED) {
+                cleared++;
+            } else if (verdict == SUSPECT) {
+                suspect++;
+            }
+            for (int bit = 0; bit < FLAG_NAMES.length; bit++) {
+                if ((recordFlags & (1 << bit)) != 0) {
+                    flagCounts[bit]++;
+                }
+            }
+        }
+    }
+
+    private static final Logger logger = Logger.getLogger(ShpRecordScanner.class.getName());
+
+    private ShpRecordScanner() {
+    }
+
+    static File companion(File shpFile, String extension) {
+        String path = shpFile.getAbsolutePath();
+        int dot = path.lastIndexOf('.');
+        String prefix = dot >= 0 ? path.substring(0, dot) : path;
+        return new File(prefix + extension);
+    }
+
+    // 内存映射整个文件（shapefile规范限制单个文件不超过2GB）
+    static MappedByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to memory-map: " + file.getAbsolutePath());
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * 立即解除映射，不等待GC回收（Windows上映射期间文件不能被删除或覆盖）。
+     * buffer须为 {@link #map} 返回的原始缓冲区，解除后不得再访问它及其任何视图。
+     * 运行时不支持时留给GC回收。
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(field.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.fine("Could not unmap buffer: " + e);
+        }
+    }
+
+    /**
+     * 扫描整个shapefile
+     */
+    static Result scan(File shpFile) throws IOException {
+        MappedByteBuffer shp = map(shpFile);
+        MappedByteBuffer shx;
+        try {
+            shx = map(companion(shpFile, ".shx"));
+        } catch (IOException e) {
+            unmap(shp);
+            throw e;
+        }
+        try {
+            return scan(shp, shx, shpFile);
+        } finally {
+            unmap(shp);
+            unmap(shx);
+        }
+    }
+
+    private static Result scan(MappedByteBuffer shp, MappedByteBuffer shx, File shpFile) throws IOException {
+        if (shx.capacity() < SHP_HEADER_LENGTH || shp.capacity() < SHP_HEADER_LENGTH) {
+            throw new IOException("Invalid shapefile header: " + shpFile.getAbsolutePath());
+        }
+        int recordCount = (shx.capacity() - SHP_HEADER_LENGTH) / 8;
+        Result result = new Result(recordCount);
+        shx.order(ByteOrder.BIG_ENDIAN);
+        // 记录头为大端、记录内容为小端：使用两个固定字节序的视图，不切换共享缓冲区的字节序
+        ByteBuffer shpBig = shp.duplicate().order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer shpLittle = shp.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        // 文件头中的文件长度以16位字为单位，GeoTools顺序读取到该长度为止
+        long shpLength = Math.min((shpBig.getInt(24) & 0xffffffffL) * 2, shp.capacity());
+        long expectedOffset = SHP_HEADER_LENGTH;
+        for (int i = 0; i < recordCount; i++) {
+            int flags = 0;
+            // .shx中的偏移与长度以16位字为单位
+            long offset = (shx.getInt(SHP_HEADER_LENGTH + i * 8) & 0xffffffffL) * 2;
+            long indexLength = (shx.getInt(SHP_HEADER_LENGTH + i * 8 + 4) & 0xffffffffL) * 2;
+            if (offset != expectedOffset) {
+                result.sequential = false;
+            }
+            if (offset < SHP_HEADER_LENGTH || offset + RECORD_HEADER_LENGTH > shp.capacity()) {
+                result.record(i, SUSPECT, FLAG_MALFORMED);
+                continue;
+            }
+            long contentLength = (shpBig.getInt((int) offset + 4) & 0xffffffffL) * 2;
+            expectedOffset = offset + RECORD_HEADER_LENGTH + contentLength;
+            if (contentLength != indexLength) {
+                flags |= FLAG_LENGTH_MISMATCH;
+            }
+            int contentStart = (int) offset + RECORD_HEADER_LENGTH;
+            if (contentLength < 4 || contentStart + contentLength > shp.capacity()) {
+                result.record(i, SUSPECT, flags | FLAG_MALFORMED);
+                continue;
+            }
+            int recordFlags = scanRecord(shpLittle, contentStart, (int) contentLength);
+            byte verdict = (byte) (recordFlags >>> 16);
+            flags |= recordFlags & 0xffff;
+            if ((flags & FLAG_LENGTH_MISMATCH) != 0) {
+                verdict = SUSPECT;
+            }
+            result.record(i, verdict, flags);
+        }
+        if (expectedOffset != shpLength) {
+            result.sequential = false;
+        }
+        return result;
+    }
+
+    /**
+     * 对单条记录内容做预筛（buf需为小端字节序，start为记录内容起始位置），返回结论
+     */
+    static byte verdictOf(ByteBuffer buf, int start, int length) {
+        return (byte) (scanRecord(buf, start, length) >>> 16);
+    }
+
+    // 返回值高16位为结论，低16位为可疑原因
+    private static int scanRecord(ByteBuffer buf, int start, int length) {
+        int shapeType = buf.getInt(start);
+        switch (shapeType) {
+            case NULL_SHAPE:
+                return pack(SUSPECT, FLAG_NULL_SHAPE);
+            case POINT:
+            case POINT_Z:
+            case POINT_M: {
+                if (length < 20) {
+                    return pack(SUSPECT, FLAG_MALFORMED);
+                }
+                double x = buf.getDouble(start + 4);
+                double y = buf.getDouble(start + 12);
+                return isFinite(x, y) ? pack(CLEARED, 0) : pack(SUSPECT, FLAG_NON_FINITE);
+            }
+            case MULTIPOINT:
+            case MULTIPOINT_Z:
+            case MULTIPOINT_M: {
+                if (length < 40) {
+                    return pack(SUSPECT, FLAG_MALFORMED);
+                }
+                int numPoints = buf.getInt(start + 36);
+                if (numPoints < 0 || 40L + 16L * numPoints > length) {
+                    return pack(SUSPECT, FLAG_MALFORMED);
+                }
+                if (numPoints == 0) {
+                    return pack(SUSPECT, FLAG_EMPTY_PART);
+                }
+                int pointsStart = start + 40;
+                for (int p = 0; p < numPoints; p++) {
+                    if (!isFinite(buf.getDouble(pointsStart + p * 16), buf.getDouble(pointsStart + p * 16 + 8))) {
+                        return pack(SUSPECT, FLAG_NON_FINITE);
+                    }
+                }
+                return pack(CLEARED, 0);
+            }
+            case POLYLINE:
+            case POLYLINE_Z:
+            case POLYLINE_M:
+                return scanParts(buf, start, length, false);
+            case POLYGON:
+            case POLYGON_Z:
+            case POLYGON_M:
+                return scanParts(buf, start, length, true);
+            default:
+                // MultiPatch等类型交给JTS校验
+                return pack(NEEDS_VALIDATION, 0);
+        }
+    }
+
+    private static int scanParts(ByteBuffer buf, int start, int length, boolean polygon) {
+        if (length < 44) {
+            return pack(SUSPECT, FLAG_MALFORMED);
+        }
+        int numParts = buf.getInt(start + 36);
+        int numPoints = buf.getInt(start + 40);
+        if (numParts < 0 || numPoints < 0 || 44L + 4L * numParts + 16L * numPoints > length) {
+            return pack(SUSPECT, FLAG_MALFORMED);
+        }
+        if (numParts == 0 || numPoints == 0) {
+            return pack(SUSPECT, FLAG_EMPTY_PART);
+        }
+        int partsStart = start + 44;
+        int pointsStart = partsStart + 4 * numParts;
+
+        int flags = 0;
+        boolean provable = !polygon || (numPoints <= MAX_PROVABLE_POINTS && numParts <= MAX_PROVABLE_RINGS);
+        int shellCount = 0;
+        // 多边形各环去除相邻重复点后的坐标（交错存放）和每个环的起始点下标
+        double[] coords = provable && polygon ? new double[numPoints * 2] : null;
+        int[] ringStart = provable && polygon ? new int[numParts + 1] : null;
+        boolean[] clockwise = provable && polygon ? new boolean[numParts] : null;
+        int rings = 0;
+        int points = 0;
+        for (int part = 0; part < numParts; part++) {
+            int from = buf.getInt(partsStart + part * 4);
+            int to = part + 1 < numParts ? buf.getInt(partsStart + (part + 1) * 4) : numPoints;
+            if (from < 0 || to > numPoints || from > to) {
+                return pack(SUSPECT, flags | FLAG_MALFORMED);
+            }
+            int count = to - from;
+            if (count == 0) {
+                flags |= FLAG_EMPTY_PART;
+                continue;
+            }
+            boolean finite = true;
+            for (int p = from; p < to; p++) {
+                if (!isFinite(buf.getDouble(pointsStart + p * 16), buf.getDouble(pointsStart + p * 16 + 8))) {
+                    finite = false;
+                    break;
+                }
+            }
+            if (!finite) {
+                flags |= FLAG_NON_FINITE;
+                continue;
+            }
+            if (!polygon) {
+                // 线要素至少需要两个不同的点
+                if (!hasDistinctPoints(buf, pointsStart, from, to)) {
+                    flags |= FLAG_TOO_FEW_POINTS;
+                }
+                continue;
+            }
+            if (count < 4) {
+                flags |= FLAG_TOO_FEW_POINTS;
+                continue;
+            }
+            int firstPos = pointsStart + from * 16;
+            int lastPos = pointsStart + (to - 1) * 16;
+            if (buf.getDouble(firstPos) != buf.getDouble(lastPos)
+                    || buf.getDouble(firstPos + 8) != buf.getDouble(lastPos + 8)) {
+                flags |= FLAG_UNCLOSED_RING;
+                continue;
+            }
+            // shapefile规范：外环顺时针（有向面积为负），内环逆时针
+            double signedArea = signedArea(buf, pointsStart, from, to);
+            if (signedArea < 0) {
+                shellCount++;
+            }
+            if (provable) {
+                ringStart[rings] = points;
+                for (int p = from; p < to; p++) {
+                    double x = buf.getDouble(pointsStart + p * 16);
+                    double y = buf.getDouble(pointsStart + p * 16 + 8);
+                    if (points > ringStart[rings] && coords[(points - 1) * 2] == x && coords[(points - 1) * 2 + 1] == y) {
+                        continue;
+                    }
+                    coords[points * 2] = x;
+                    coords[points * 2 + 1] = y;
+                    points++;
+                }
+                clockwise[rings] = signedArea < 0;
+                rings++;
+            }
+        }
+        if (polygon && shellCount == 0 && numParts > 1) {
+            // 多个环却没有任何顺时针的外环，环方向很可能写反了
+            flags |= FLAG_WRONG_ORIENTATION;
+        }
+        if (flags != 0) {
+            return pack(SUSPECT, flags);
+        }
+        if (polygon && provable) {
+            ringStart[rings] = points;
+            provable = isSimple(coords, ringStart, rings) && isNestingValid(coords, ringStart, clockwise, rings);
+        }
+        return pack(provable ? CLEARED : NEEDS_VALIDATION, 0);
+    }
+
+    private static boolean hasDistinctPoints(ByteBuffer buf, int pointsStart, int from, int to) {
+        double x0 = buf.getDouble(pointsStart + from * 16);
+        double y0 = buf.getDouble(pointsStart + from * 16 + 8);
+        for (int p = from + 1; p < to; p++) {
+            if (buf.getDouble(pointsStart + p * 16) != x0 || buf.getDouble(pointsStart + p * 16 + 8) != y0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double signedArea(ByteBuffer buf, int pointsStart, int from, int to) {
+        double x0 = buf.getDouble(pointsStart + from * 16);
+        double y0 = buf.getDouble(pointsStart + from * 16 + 8);
+        double sum = 0.0;
+        for (int p = from + 1; p < to - 1; p++) {
+            double x1 = buf.getDouble(pointsStart + p * 16) - x0;
+            double y1 = buf.getDouble(pointsStart + p * 16 + 8) - y0;
+            double x2 = buf.getDouble(pointsStart + (p + 1) * 16) - x0;
+            double y2 = buf.getDouble(pointsStart + (p + 1) * 16 + 8) - y0;
+            sum += x1 * y2 - x2 * y1;
+        }
+        return sum / 2.0;
+    }
+
+    /**
+     * 保守的简单性判定：各环自身简单，且所有环之间互不相交、互不接触，只有在浮点误差范围之外能够确定时才返回true。
+     * coords 为交错存放的坐标，第 r 个环为点 ringStart[r] 到 ringStart[r+1]-1（已闭合、已去除相邻重复点）。
+     * 与JTS IsValidOp一致，每个环至少需要3个不同的顶点。
+     */
+    static boolean isSimple(double[] coords, int[] ringStart, int rings) {
+        int segmentCount = 0;
+        for (int r = 0; r < rings; r++) {
+            int segments = ringStart[r + 1] - ringStart[r] - 1;
+            if (segments < 3) {
+                return false;
+            }
+            // 相邻线段：不能共线回折，也不能在误差范围内共线（交给JTS判断）
+            int first = ringStart[r];
+            for (int i = 0; i < segments; i++) {
+                int a = first + i;
+                int c = first + (i + 1) % segments + 1;
+                if (orientation(coords[a * 2], coords[a * 2 + 1], coords[(a + 1) * 2], coords[(a + 1) * 2 + 1],
+                        coords[c * 2], coords[c * 2 + 1]) == 0) {
+                    return false;
+                }
+            }
+            segmentCount += segments;
+        }
+        // 线段以起点下标表示，按 minX 排序后扫描：只比较 x 范围重叠的线段对
+        int[] segments = new int[segmentCount];
+        int[] ringOf = new int[coords.length / 2];
+        double[] minX = new double[coords.length / 2];
+        int n = 0;
+        for (int r = 0; r < rings; r++) {
+            for (int p = ringStart[r]; p < ringStart[r + 1] - 1; p++) {
+                segments[n++] = p;
+                ringOf[p] = r;
+                minX[p] = Math.min(coords[p * 2], coords[(p + 1) * 2]);
+            }
+        }
+        sortByKey(segments, minX);
+        long budget = (long) SWEEP_BUDGET_PER_SEGMENT * segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            int s = segments[i];
+            double ax = coords[s * 2], ay = coords[s * 2 + 1], bx = coords[(s + 1) * 2], by = coords[(s + 1) * 2 + 1];
+            double maxX = Math.max(ax, bx);
+            double minY = Math.min(ay, by), maxY = Math.max(ay, by);
+            for (int j = i + 1; j < segmentCount && minX[segments[j]] <= maxX; j++) {
+                if (--budget < 0) {
+                    return false;
+                }
+                int t = segments[j];
+                if (ringOf[s] == ringOf[t] && isAdjacent(s, t, ringStart[ringOf[s]], ringStart[ringOf[s] + 1])) {
+                    continue;
+                }
+                double cx = coords[t * 2], cy = coords[t * 2 + 1], dx = coords[(t + 1) * 2], dy = coords[(t + 1) * 2 + 1];
+                if (Math.max(cy, dy) < minY || Math.min(cy, dy) > maxY) {
+                    continue;
+                }
+                int o1 = orientation(ax, ay, bx, by, cx, cy);
+                int o2 = orientation(ax, ay, bx, by, dx, dy);
+                int o3 = orientation(cx, cy, dx, dy, ax, ay);
+                int o4 = orientation(cx, cy, dx, dy, bx, by);
+                if (o1 == 0 || o2 == 0 || o3 == 0 || o4 == 0) {
+                    return false;
+                }
+                if (o1 != o2 && o3 != o4) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // 同一环中起点为 s、t 的两条线段是否相邻（含首尾线段），环的点下标为 [first, end)
+    private static boolean isAdjacent(int s, int t, int first, int end) {
+        int last = end - 2;
+        return Math.abs(s - t) == 1 || (Math.min(s, t) == first && Math.max(s, t) == last);
+    }
+
+    /**
+     * 环的嵌套关系能否组成有效的（多）多边形：各环互不相交时（见 {@link #isSimple}），每个环的深度
+     * （包含它的其他环数）必须与方向一致，顺时针外环为偶数、逆时针内环为奇数；这样每个内环恰好落在
+     * 一个外环内且不在其他内环中。只有一个环时不论方向都作为外环。
+     */
+    static boolean isNestingValid(double[] coords, int[] ringStart, boolean[] clockwise, int rings) {
+        if (rings == 1) {
+            return true;
+        }
+        double[] envelopes = new double[rings * 4];
+        double[] envelope = new double[4];
+        for (int r = 0; r < rings; r++) {
+            RingKernels.envelope(coords, ringStart[r], ringStart[r + 1] - ringStart[r], envelope);
+            System.arraycopy(envelope, 0, envelopes, r * 4, 4);
+        }
+        for (int r = 0; r < rings; r++) {
+            double x = coords[ringStart[r] * 2];
+            double y = coords[ringStart[r] * 2 + 1];
+            int depth = 0;
+            for (int o = 0; o < rings; o++) {
+                int e = o * 4;
+                if (o == r || x < envelopes[e] || x > envelopes[e + 1] || y < envelopes[e + 2] || y > envelopes[e + 3]) {
+                    continue;
+                }
+                if (RingKernels.containsPoint(coords, ringStart[o], ringStart[o + 1] - ringStart[o], x, y)) {
+                    depth++;
+                }
+            }
+            if ((depth % 2 == 0) != clockwise[r]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 按 key[index] 升序排列 index（自底向上归并排序，稳定）
+    private static void sortByKey(int[] index, double[] key) {
+        int n = index.length;
+        int[] from = index;
+        int[] to = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    to[k++] = key[from[j]] < key[from[i]] ? from[j++] : from[i++];
+                }
+                while (i < mid) {
+                    to[k++] = from[i++];
+                }
+                while (j < hi) {
+                    to[k++] = from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != index) {
+            System.arraycopy(from, 0, index, 0, n);
+        }
+    }
+
+    // 带误差过滤的方向判定：返回1/-1，结果不可靠（接近共线）时返回0
+    private static int orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        double detLeft = (bx - ax) * (cy - ay);
+        double detRight = (by - ay) * (cx - ax);
+        double det = detLeft - detRight;
+        double errorBound = 1e-12 * (Math.abs(detLeft) + Math.abs(detRight));
+        if (det > errorBound) {
+            return 1;
+        }
+        if (det < -errorBound) {
+            return -1;
+        }
+        return 0;
+    }
+
+    private static boolean isFinite(double x, double y) {
+        return !Double.isNaN(x) && !Double.isInfinite(x) && !Double.isNaN(y) && !Double.isInfinite(y);
+    }
+
+    private static int pack(byte verdict, int flags) {
+        return (verdict << 16) | flags;
+    }
+}
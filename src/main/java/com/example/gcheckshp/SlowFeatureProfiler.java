@@ -0,0 +1,105 @@
+package com.example.gcheckshp;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * 最慢的 shp1 要素排行：逐要素记录候选查询和叠加的耗时，用容量为N的最小堆只保留最慢的N个，
+ * 结束时按耗时降序输出排行及其占全部查询+叠加时间的比例，便于预先拆分或简化这些要素。
+ *
+ * 堆顶是已保留要素中最快的一个，新要素只有比它慢时才替换，每个要素的开销为 O(log N)。
+ * 由处理循环所在的单个线程调用。
+ */
+final class SlowFeatureProfiler {
+
+    static final class Entry {
+        final String featureId;
+        final long queryNanos;
+        final long overlayNanos;
+        final int candidates;
+        final int intersecting;
+        final int vertices;
+        final long candidateVertices;
+
+        Entry(String featureId, long queryNanos, long overlayNanos, int candidates, int intersecting, int vertices,
+                long candidateVertices) {
+            this.featureId = featureId;
+            this.queryNanos = queryNanos;
+            this.overlayNanos = overlayNanos;
+            this.candidates = candidates;
+            this.intersecting = intersecting;
+            this.vertices = vertices;
+            this.candidateVertices = candidateVertices;
+        }
+
+        long totalNanos() {
+            return queryNanos + overlayNanos;
+        }
+    }
+
+    private static final Comparator<Entry> BY_TOTAL = Comparator.comparingLong(Entry::totalNanos);
+
+    private final int limit;
+    private final PriorityQueue<Entry> heap;
+    private long features;
+    private long totalNanos;
+
+    SlowFeatureProfiler(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Profile size must be positive: " + limit);
+        }
+        this.limit = limit;
+        this.heap = new PriorityQueue<>(limit, BY_TOTAL);
+    }
+
+    /**
+     * 记录一个要素：查询和叠加耗时（纳秒）、候选数、实际相交数、要素顶点数和参与叠加的候选顶点数
+     */
+    void record(String featureId, long queryNanos, long overlayNanos, int candidates, int intersecting, int vertices,
+            long candidateVertices) {
+        long total = queryNanos + overlayNanos;
+        features++;
+        totalNanos += total;
+        if (heap.size() >= limit) {
+            if (total <= heap.peek().totalNanos()) {
+                return;
+            }
+            heap.poll();
+        }
+        heap.add(new Entry(featureId, queryNanos, overlayNanos, candidates, intersecting, vertices,
+                candidateVertices));
+    }
+
+    // 按耗时降序排列的保留要素
+    List<Entry> ranked() {
+        List<Entry> entries = new ArrayList<>(heap);
+        entries.sort(BY_TOTAL.reversed());
+        return entries;
+    }
+
+    void printReport(PrintStream out) {
+        if (features == 0) {
+            return;
+        }
+        List<Entry> entries = ranked();
+        long topNanos = 0;
+        for (Entry entry : entries) {
+            topNanos += entry.totalNanos();
+        }
+        out.println("--- Slowest shp1 features (query + overlay) ---");
+        out.println(String.format(Locale.ROOT, "%4s  %-20s %12s %12s %12s %10s %12s %10s %14s", "rank", "feature",
+                "total_ms", "query_ms", "overlay_ms", "candidates", "intersecting", "vertices", "cand_vertices"));
+        int rank = 1;
+        for (Entry entry : entries) {
+            out.println(String.format(Locale.ROOT, "%4d  %-20s %12.3f %12.3f %12.3f %10d %12d %10d %14d", rank++,
+                    entry.featureId, entry.totalNanos() / 1e6, entry.queryNanos / 1e6, entry.overlayNanos / 1e6,
+                    entry.candidates, entry.intersecting, entry.vertices, entry.candidateVertices));
+        }
+        out.println(String.format(Locale.ROOT, "Top %d of %d features: %.1f%% of %.3f s query + overlay time",
+                entries.size(), features, totalNanos > 0 ? 100.0 * topNanos / totalNanos : 0.0, totalNanos / 1e9));
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.gcheckshp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 并查集（按大小合并 + 路径压缩），用于把两两重叠关系归并为连通分组
+ */
+final class UnionFind {
+    private final int[] parent;
+    private final int[] size;
+
+    UnionFind(int n) {
+        parent = new int[n];
+        size = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+    }
+
+    int find(int x) {
+        int root = x;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // 路径压缩
+        while (parent[x] != root) {
+            int next = parent[x];
+            parent[x] = root;
+            x = next;
+        }
+        return root;
+    }
+
+    void union(int x, int y) {
+        int rootX = find(x);
+        int rootY = find(y);
+        if (rootX == rootY) {
+            return;
+        }
+        if (size[rootX] < size[rootY]) {
+            int tmp = rootX;
+            rootX = rootY;
+            rootY = tmp;
+        }
+        parent[rootY] = rootX;
+        size[rootX] += size[rootY];
+    }
+
+    /**
+     * 返回包含多个元素的分组，组内元素按升序排列，分组按首元素排序
+     */
+    List<List<Integer>> groups() {
+        Map<Integer, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < parent.length; i++) {
+            if (size[find(i)] > 1) {
+                groups.computeIfAbsent(find(i), k -> new ArrayList<>()).add(i);
+            }
+        }
+        List<List<Integer>> result = new ArrayList<>(groups.values());
+        result.sort((a, b) -> Integer.compare(a.get(0), b.get(0)));
+        return result;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.gcheckshp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 几何有效性旁车文件（.vld）：由 check 模式写出，记录每条记录是否已通过 IsValidOp 校验。
+ * 文件以 .shp 内容的 SHA-256 作为键，.shp 被修改后旁车文件自动失效。
+ *
+ * 文件格式：8字节魔数 + 32字节SHA-256 + 4字节记录数 + 有效性位图（每条记录1位）
+ */
+final class ValiditySidecar {
+    // 旁车文件扩展名
+    static final String EXTENSION = ".vld";
+
+    private static final byte[] MAGIC = { 'C', 'S', 'H', 'P', 'V', 'L', 'D', '1' };
+    private static final int HASH_LENGTH = 32;
+    private static final int HASH_BUFFER_SIZE = 1 << 20;
+
+    private final BitSet validRecords;
+    private final int recordCount;
+
+    private ValiditySidecar(BitSet validRecords, int recordCount) {
+        this.validRecords = validRecords;
+        this.recordCount = recordCount;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    int getKnownValidCount() {
+        return validRecords.cardinality();
+    }
+
+    // 判断记录（从0开始的记录序号）是否已知有效
+    boolean isKnownValid(int recordIndex) {
+        return recordIndex >= 0 && recordIndex < recordCount && validRecords.get(recordIndex);
+    }
+
+    // 根据要素ID判断是否已知有效（GeoTools shapefile 的要素ID格式为 typeName.记录号，记录号从1开始）
+    boolean isKnownValid(String featureId) {
+        return isKnownValid(recordIndexOf(featureId));
+    }
+
+    /**
+     * 从要素ID中解析记录序号（从0开始），无法解析时返回-1
+     */
+    static int recordIndexOf(String featureId) {
+        if (featureId == null) {
+            return -1;
+        }
+        int dot = featureId.lastIndexOf('.');
+        if (dot < 0 || dot == featureId.length() - 1) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(featureId.substring(dot + 1)) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static File sidecarFile(File shpFile) {
+        String path = shpFile.getAbsolutePath();
+        int dot = path.lastIndexOf('.');
+        String prefix = dot >= 0 ? path.substring(0, dot) : path;
+        return new File(prefix + EXTENSION);
+    }
+
+    /**
+     * 读取与shapefile匹配的旁车文件；文件不存在、格式不符或.shp内容已变化时返回null
+     */
+    static ValiditySidecar load(File shpFile) {
+        File file = sidecarFile(shpFile);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                return null;
+            }
+            byte[] storedHash = new byte[HASH_LENGTH];
+            in.readFully(storedHash);
+            int recordCount = in.readInt();
+            if (recordCount < 0) {
+                return null;
+            }
+            byte[] bitmap = new byte[(recordCount + 7) / 8];
+            in.readFully(bitmap);
+            // 最后才计算哈希：格式不符时无需读取整个.shp
+            if (!Arrays.equals(storedHash, hashShp(shpFile))) {
+                return null;
+            }
+            return new ValiditySidecar(BitSet.valueOf(bitmap), recordCount);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 写出旁车文件。必须在.shp写入完成（事务提交）之后调用，否则哈希与最终文件不一致。
+     */
+    static void write(File shpFile, BitSet validRecords, int recordCount) throws IOException {
+        byte[] hash = hashShp(shpFile);
+        byte[] bitmap = Arrays.copyOf(validRecords.toByteArray(), (recordCount + 7) / 8);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(sidecarFile(shpFile), false)))) {
+            out.write(MAGIC);
+            out.write(hash);
+            out.writeInt(recordCount);
+            out.write(bitmap);
+        }
+    }
+
+    // 删除过期的旁车文件（例如.shp已被重写而本次未能生成新的旁车文件）
+    static void delete(File shpFile) {
+        File file = sidecarFile(shpFile);
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    // 计算.shp内容的SHA-256
+    private static byte[] hashShp(File shpFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+        try (FileChannel channel = FileChannel.open(shpFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+}
@@ -9,9 +9,19 @@ import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.util.logging.Filter;
@@ -26,6 +36,9 @@ import org.geotools.api.feature.type.GeometryDescriptor;
 import org.geotools.data.DefaultTransaction;
 import org.geotools.data.shapefile.ShapefileDataStore;
 import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.data.shapefile.shp.ShapefileReader;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -45,12 +58,27 @@ import org.geotools.api.filter.FilterFactory;
 import org.geotools.filter.FilterFactoryImpl;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.util.LineStringExtracter;
+import org.locationtech.jts.geom.util.PointExtracter;
+import org.locationtech.jts.geom.util.PolygonExtracter;
 
 public class gcheckshp {
     // 是否提前合并shp2所有要素再参与交集计算，默认false（已移除静态变量，改为参数传递）
 
     // 推荐的STRtree节点容量（如100，经验值，适合大数据量）
     private static final int STRTREE_NODE_CAPACITY = 100;
+    // 重叠检查线程池的编号，用于线程名
+    private static final AtomicInteger OVERLAP_POOL_COUNTER = new AtomicInteger();
+    // Hilbert R树的节点容量：节点包络连续存放，较小的节点减少查询时比较的包络数
+    private static final int HILBERT_NODE_SIZE = 16;
+    // 按Hilbert顺序处理shp1时每块的要素数：块内排序后求交，再按记录顺序写出
+    private static final int HILBERT_BLOCK_SIZE = 20000;
     
     // CSV写入缓冲区大小（8KB）
     private static final int CSV_BUFFER_SIZE = 8192;
@@ -61,6 +89,12 @@ public class gcheckshp {
     // 面积格式化精度
     private static final String AREA_FORMAT = "%.6f";
 
+    // 检查模式下详细信息的最大条数（避免大文件占用过多内存）
+    private static final int MAX_DETAIL_ITEMS = 10000;
+
+    // 清理输出可能涉及的文件扩展名
+    private static final String[] CLEAN_OUTPUT_EXTENSIONS = { ".shp", ".shx", ".dbf", ".prj", ".cpg", ".fix", ".qix" };
+
     private static final Logger logger = Logger.getLogger(gcheckshp.class.getName());
 
     // 配置日志系统，抑制 GeoTools 文件操作相关的警告
@@ -170,15 +204,17 @@ public class gcheckshp {
     private static void printUsage() {
         System.out.println("Usage:");
         System.out.println(
-                "  Check mode: java -jar gcheckshp-core.jar <shpPath> <detail|summary> <true|false> [targetCRS]");
+                "  Check mode: java -jar gcheckshp-core.jar <shpPath> <detail|summary> <true|false|repair> [--threads <n|auto>] [--report <file.csv|file.ndjson>] [--overlaps] [--coverage]");
+        System.out.println(
+                "  Sample check: java -jar gcheckshp-core.jar <shpPath> <detail|summary> false --sample <n|fraction> [--seed <n>]");
         System.out.println(
-                "  Reproject mode: java -jar gcheckshp-core.jar <shpPath> <detail|summary> <true|false> <targetCRS>");
+                "  Reproject mode: java -jar gcheckshp-core.jar <shpPath> <detail|summary> <true|false> <targetCRS[,targetCRS...]> [--threads <n|auto>]");
         System.out.println(
                 "  targetCRS can be: EPSG:xxxx, numeric EPSG code, .tif/.tiff file, or .shp file");
         System.out.println(
-                "  Intersection stats: java -jar gcheckshp-core.jar <shp1> intersect <shp2> [--deduplicate-shp2] [--group-field <fieldName>]");
+                "  Intersection stats: java -jar gcheckshp-core.jar <shp1> intersect <shp2> <--projection <crs|auto-local>|--geodesic> [--deduplicate-shp2] [--group-field <fieldName>] [--diagnostics <file.ndjson|file.csv>] [--metrics <file.json>] [--progress] [--profile-features <n>] [--packed-shp2] [--hilbert-index] [--hilbert-order]");
         System.out.println(
-                "  Area calculation: java -jar gcheckshp-core.jar <shpPath> area [outputCSV]");
+                "  Area calculation: java -jar gcheckshp-core.jar <shpPath> area [outputCSV] <--projection <crs|auto-local>|--geodesic> [--threads <n|auto>] [--engine <fast|jts>] [--diagnostics <file.ndjson|file.csv>] [--metrics <file.json>] [--progress]");
     }
 
     // Determine if intersection mode
@@ -196,9 +232,62 @@ public class gcheckshp {
         String shpPath = args[0];
         String outputCSV = null;
         String projectionCRS = null;
+        AreaOptions options = new AreaOptions();
         
         // 解析参数
         for (int i = 1; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("--threads")) {
+                if (i + 1 < args.length) {
+                    try {
+                        options.threads = OrderedBatchPipeline.parseThreads(args[i + 1]);
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Error: --threads requires a non-negative number or 'auto': " + args[i + 1]);
+                        return;
+                    }
+                    i++; // 跳过下一个参数
+                } else {
+                    System.out.println("Error: --threads requires a thread count (number or 'auto')");
+                    return;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--geodesic")) {
+                options.geodesic = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--diagnostics")) {
+                if (i + 1 < args.length) {
+                    options.diagnosticsFile = new File(args[i + 1]);
+                    i++; // 跳过下一个参数
+                } else {
+                    System.out.println("Error: --diagnostics requires an output file (.ndjson or .csv)");
+                    return;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--metrics")) {
+                if (i + 1 < args.length) {
+                    options.metricsFile = new File(args[i + 1]);
+                    i++; // 跳过下一个参数
+                } else {
+                    System.out.println("Error: --metrics requires an output file (.json)");
+                    return;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--progress")) {
+                options.progress = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--engine")) {
+                if (i + 1 < args.length && ("jts".equalsIgnoreCase(args[i + 1]) || "fast".equalsIgnoreCase(args[i + 1]))) {
+                    options.jtsEngine = "jts".equalsIgnoreCase(args[++i]);
+                } else {
+                    System.out.println("Error: --engine requires 'fast' or 'jts'");
+                    return;
+                }
+                continue;
+            }
             if (args[i].equalsIgnoreCase("--projection")) {
                 if (i + 1 < args.length) {
                     projectionCRS = args[i + 1];
@@ -219,14 +308,15 @@ public class gcheckshp {
             }
         }
         
-        // 检查投影参数是否提供（必选项）
-        if (projectionCRS == null || projectionCRS.trim().isEmpty()) {
+        // 检查投影参数是否提供（未使用 --geodesic 时为必选项）
+        if (!options.geodesic && (projectionCRS == null || projectionCRS.trim().isEmpty())) {
             System.out.println("Error: --projection is required for area calculation.");
-            System.out.println("  Usage: --projection <EPSG_code|tif_file|shp_file>");
+            System.out.println("  Usage: --projection <EPSG_code|tif_file|shp_file|auto-local[:utm|:gk]> or --geodesic");
             System.out.println("  Examples:");
             System.out.println("    --projection EPSG:3857");
             System.out.println("    --projection reference.tif");
             System.out.println("    --projection reference.shp");
+            System.out.println("    --projection auto-local");
             return;
         }
         
@@ -239,7 +329,11 @@ public class gcheckshp {
             return;
         }
         
-        calculatePolygonAreas(shpPath, outputCSV, projectionCRS);
+        if (options.geodesic && projectionCRS != null) {
+            System.out.println("Warning: --projection is ignored when --geodesic is specified");
+        }
+        
+        calculatePolygonAreas(shpPath, outputCSV, projectionCRS, options);
     }
 
     // Handle intersection mode
@@ -261,6 +355,7 @@ public class gcheckshp {
         // clip功能现在默认启用，不再需要选项参数
         String groupField = null;
         String projectionCRS = null;
+        IntersectOptions options = new IntersectOptions();
         
         // 首先找到shp2路径（第一个.shp后缀的参数）
         for (int i = 2; i < args.length; i++) {
@@ -281,6 +376,59 @@ public class gcheckshp {
                 deduplicateOption = true;
                 continue;
             }
+            if (args[i].equalsIgnoreCase("--geodesic")) {
+                options.geodesic = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--diagnostics")) {
+                if (i + 1 < args.length) {
+                    options.diagnosticsFile = new File(args[i + 1]);
+                    i++; // 跳过下一个参数，因为它是文件路径
+                } else {
+                    System.out.println("Error: --diagnostics requires an output file (.ndjson or .csv)");
+                    return;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--metrics")) {
+                if (i + 1 < args.length) {
+                    options.metricsFile = new File(args[i + 1]);
+                    i++; // 跳过下一个参数，因为它是文件路径
+                } else {
+                    System.out.println("Error: --metrics requires an output file (.json)");
+                    return;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--progress")) {
+                options.progress = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--profile-features")) {
+                try {
+                    options.profileFeatures = i + 1 < args.length ? Integer.parseInt(args[i + 1]) : 0;
+                } catch (NumberFormatException e) {
+                    options.profileFeatures = 0;
+                }
+                if (options.profileFeatures <= 0) {
+                    System.out.println("Error: --profile-features requires a positive number of features");
+                    return;
+                }
+                i++; // 跳过下一个参数，因为它是要素数
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--packed-shp2")) {
+                options.packedShp2 = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--hilbert-index")) {
+                options.hilbertIndex = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--hilbert-order")) {
+                options.hilbertOrder = true;
+                continue;
+            }
             if (args[i].equalsIgnoreCase("--group-field")) {
                 if (i + 1 < args.length) {
                     groupField = args[i + 1];
@@ -302,14 +450,15 @@ public class gcheckshp {
             }
         }
         
-        // 检查投影参数是否提供（必选项）
-        if (projectionCRS == null || projectionCRS.trim().isEmpty()) {
+        // 检查投影参数是否提供（未使用 --geodesic 时为必选项）
+        if (!options.geodesic && (projectionCRS == null || projectionCRS.trim().isEmpty())) {
             System.out.println("Error: --projection is required for intersection calculation.");
-            System.out.println("  Usage: --projection <EPSG_code|tif_file|shp_file>");
+            System.out.println("  Usage: --projection <EPSG_code|tif_file|shp_file|auto-local[:utm|:gk]> or --geodesic");
             System.out.println("  Examples:");
             System.out.println("    --projection EPSG:3857");
             System.out.println("    --projection reference.tif");
             System.out.println("    --projection reference.shp");
+            System.out.println("    --projection auto-local");
             return;
         }
         
@@ -327,8 +476,12 @@ public class gcheckshp {
             return;
         }
         
+        if (options.geodesic && projectionCRS != null) {
+            System.out.println("Warning: --projection is ignored when --geodesic is specified");
+        }
+        
         // clip功能现在默认启用，不再需要选项参数
-        calculateIntersectionStats(shp1, shp2, groupField, deduplicateOption, true, projectionCRS);
+        calculateIntersectionStats(shp1, shp2, groupField, deduplicateOption, true, projectionCRS, options);
     }
 
     // Handle check or reproject mode
@@ -336,19 +489,143 @@ public class gcheckshp {
         String shpPath = args[0];
         String detailFlag = args[1];
         String deleteFlag = args[2];
-        String targetCRS = args.length > 3 ? args[3] : null;
-        mainCheckOrReproject(shpPath, detailFlag, deleteFlag, targetCRS);
+        String targetCRS = null;
+        CheckOptions options = new CheckOptions();
+        boolean threadsSpecified = false;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("--threads")) {
+                if (i + 1 < args.length) {
+                    try {
+                        options.threads = OrderedBatchPipeline.parseThreads(args[i + 1]);
+                        threadsSpecified = true;
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Error: --threads requires a non-negative number or 'auto': " + args[i + 1]);
+                        return;
+                    }
+                    i++; // 跳过下一个参数
+                } else {
+                    System.out.println("Error: --threads requires a thread count (number or 'auto')");
+                    return;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--sample")) {
+                if (i + 1 < args.length) {
+                    try {
+                        resolveSampleSize(args[i + 1], Integer.MAX_VALUE);
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Error: --sample requires a record count or a fraction in (0, 1]: "
+                                + args[i + 1]);
+                        return;
+                    }
+                    options.sampleSpec = args[i + 1];
+                    i++; // 跳过下一个参数
+                } else {
+                    System.out.println("Error: --sample requires a record count or a fraction in (0, 1]");
+                    return;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--seed")) {
+                if (i + 1 < args.length) {
+                    try {
+                        options.seed = Long.parseLong(args[i + 1].trim());
+                    } catch (NumberFormatException e) {
+                        System.out.println("Error: --seed requires an integer: " + args[i + 1]);
+                        return;
+                    }
+                    i++; // 跳过下一个参数
+                } else {
+                    System.out.println("Error: --seed requires an integer");
+                    return;
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--overlaps")) {
+                options.overlaps = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--coverage")) {
+                options.coverage = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("--report")) {
+                if (i + 1 < args.length) {
+                    options.reportFile = new File(args[i + 1]);
+                    i++; // 跳过下一个参数
+                } else {
+                    System.out.println("Error: --report requires an output file path (.csv or .ndjson)");
+                    return;
+                }
+                continue;
+            }
+            // 第一个非选项参数为目标坐标系
+            if (targetCRS == null && !args[i].startsWith("--")) {
+                targetCRS = args[i];
+            }
+        }
+        // 重投影未指定 --threads 时使用全部可用处理器
+        if (targetCRS != null && !threadsSpecified) {
+            options.threads = Runtime.getRuntime().availableProcessors();
+        }
+        mainCheckOrReproject(shpPath, detailFlag, deleteFlag, targetCRS, options);
+    }
+
+    // check 模式的可选参数
+    private static final class CheckOptions {
+        // 校验线程数，大于1时并行校验
+        int threads = 1;
+        // 逐条写出所有问题的报告文件（CSV或NDJSON），为null时不写出
+        File reportFile;
+        // 抽样快速检查的样本量（记录数或比例），为null时检查全部要素
+        String sampleSpec;
+        // 抽样随机种子，为null时随机生成
+        Long seed;
+        // 是否检查图层内部要素之间的重叠
+        boolean overlaps;
+        // 是否检查多边形覆盖的缝隙和重叠（结果写出到 <shp>_coverage.csv）
+        boolean coverage;
     }
 
     // Main logic for check/reproject
     public static void mainCheckOrReproject(String shpPath, String detailFlag, String deleteFlag, String targetCRS) {
+        mainCheckOrReproject(shpPath, detailFlag, deleteFlag, targetCRS, 1);
+    }
+
+    // threads > 1 时使用并行校验
+    public static void mainCheckOrReproject(String shpPath, String detailFlag, String deleteFlag, String targetCRS,
+            int threads) {
+        CheckOptions options = new CheckOptions();
+        options.threads = threads;
+        mainCheckOrReproject(shpPath, detailFlag, deleteFlag, targetCRS, options);
+    }
+
+    private static void mainCheckOrReproject(String shpPath, String detailFlag, String deleteFlag, String targetCRS,
+            CheckOptions options) {
         if (targetCRS != null && !targetCRS.isEmpty()) {
             try {
                 int lastDot = shpPath.lastIndexOf('.');
-                String outShp = lastDot > 0 ? shpPath.substring(0, lastDot) + "_reproj.shp" 
-                        : shpPath + "_reproj.shp";
-                reprojectShapefile(shpPath, outShp, targetCRS);
-                System.out.println("Reprojected shapefile saved to: " + outShp);
+                String outBase = lastDot > 0 ? shpPath.substring(0, lastDot) + "_reproj" : shpPath + "_reproj";
+                // 多个目标坐标系时输出 <名称>_reproj_<代码>.shp，源文件只读取一次
+                List<String> targets = splitTargetCRS(targetCRS);
+                List<String> outShps = new ArrayList<>();
+                Set<String> used = new HashSet<>();
+                for (String target : targets) {
+                    String outShp = outBase + ".shp";
+                    if (targets.size() > 1) {
+                        String suffix = reprojectSuffix(target);
+                        String candidate = suffix;
+                        for (int n = 2; !used.add(candidate.toLowerCase()); n++) {
+                            candidate = suffix + "_" + n;
+                        }
+                        outShp = outBase + "_" + candidate + ".shp";
+                    }
+                    outShps.add(outShp);
+                }
+                reprojectShapefile(shpPath, outShps, targets, options.threads);
+                for (String outShp : outShps) {
+                    System.out.println("Reprojected shapefile saved to: " + outShp);
+                }
                 return;
             } catch (Exception ex) {
                 System.out.println("Failed to reproject shapefile: " + ex.getMessage());
@@ -378,22 +655,446 @@ public class gcheckshp {
         if (!checkCompanionFiles(shpFile)) {
             return;
         }
-        boolean doDelete = "true".equalsIgnoreCase(deleteFlag);
-        File workingShpFile = shpFile;
+        if (options.sampleSpec != null) {
+            if (!"false".equalsIgnoreCase(deleteFlag)) {
+                System.out.println("Note: sample check does not modify files; the clean/repair option is ignored.");
+            }
+            runSampleCheck(shpFile, detailFlag, options);
+            return;
+        }
+        // true：删除问题要素；repair：写入可修复要素的修复结果，删除其余问题要素
+        boolean repair = "repair".equalsIgnoreCase(deleteFlag);
+        boolean doDelete = repair || "true".equalsIgnoreCase(deleteFlag);
+        File cleanFile = null;
         if (doDelete) {
-            workingShpFile = createWorkingCopy(shpFile);
-            if (workingShpFile == null) {
-                System.out.println("Unable to prepare a safe working copy; aborting delete operation.");
+            cleanFile = prepareCleanFile(shpFile);
+            if (cleanFile == null) {
+                System.out.println("Unable to prepare the clean output; aborting " + (repair ? "repair" : "delete")
+                        + " operation.");
                 return;
             }
-            System.out.println("Working copy for delete operation: " + workingShpFile.getAbsolutePath());
+            System.out.println("Clean output for " + (repair ? "repair" : "delete") + " operation: "
+                    + cleanFile.getAbsolutePath());
+        }
+        processShapefile(shpFile, detailFlag, cleanFile, repair, options);
+    }
+
+    // 校验所有要素：threads > 1 时并行校验，统计、详细信息和有效记录位图与串行处理的结果完全一致
+    // report不为null时逐条写出所有问题；downstream不为null时按记录顺序接收每个要素的校验结果（在调用线程中执行）
+    private static void validateFeatures(SimpleFeatureCollection collection, boolean showDetail,
+            int threads, ShpRecordScanner.Result prescreen, List<String> issueDetails, GeometryStats stats,
+            int[] detailCount, BitSet validRecords, CheckReportWriter report,
+            OrderedBatchPipeline.Sink<SimpleFeature, FeatureCheck> downstream) throws Exception {
+        boolean reportReasons = report != null;
+        OrderedBatchPipeline.Sink<SimpleFeature, FeatureCheck> sink = (feature, check) -> {
+            boolean removeFeature = applyFeatureCheck(check, showDetail, issueDetails, stats, detailCount);
+            int recordIndex = ValiditySidecar.recordIndexOf(feature.getID());
+            if (!removeFeature && recordIndex >= 0) {
+                validRecords.set(recordIndex);
+            }
+            if (removeFeature && report != null) {
+                report.write(recordIndex + 1, check.featureId, check.issue.name().toLowerCase(), check.message(),
+                        check.location != null ? check.location.x : Double.NaN,
+                        check.location != null ? check.location.y : Double.NaN, check.fixable);
+            }
+            if (downstream != null) {
+                downstream.accept(feature, check);
+            }
+        };
+        try (SimpleFeatureIterator iterator = collection.features()) {
+            if (threads > 1) {
+                // 读取线程解码要素，工作线程池分批校验，结果按记录顺序汇总
+                OrderedBatchPipeline<SimpleFeature, FeatureCheck> pipeline =
+                        new OrderedBatchPipeline<>(threads, OrderedBatchPipeline.DEFAULT_BATCH_SIZE);
+                pipeline.run(
+                        () -> iterator.hasNext() ? iterator.next() : null,
+                        feature -> checkFeature(feature, showDetail || reportReasons, prescreen),
+                        sink);
+            } else {
+                while (iterator.hasNext()) {
+                    SimpleFeature feature = iterator.next();
+                    boolean needReason = (showDetail && detailCount[0] < MAX_DETAIL_ITEMS) || reportReasons;
+                    sink.accept(feature, checkFeature(feature, needReason, prescreen));
+                }
+            }
+        }
+    }
+
+    // 解析抽样参数：整数表示抽样记录数，小数（0 < f <= 1）表示抽样比例
+    private static int resolveSampleSize(String spec, int recordCount) {
+        String value = spec.trim();
+        if (value.contains(".") || value.toLowerCase().contains("e")) {
+            double fraction = Double.parseDouble(value);
+            if (!(fraction > 0.0 && fraction <= 1.0)) {
+                throw new IllegalArgumentException("Sample fraction must be in (0, 1]: " + spec);
+            }
+            return (int) Math.min(recordCount, Math.max(1L, (long) Math.ceil(fraction * recordCount)));
+        }
+        int count = Integer.parseInt(value);
+        if (count <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive: " + spec);
+        }
+        return Math.min(count, recordCount);
+    }
+
+    // 从 [0, recordCount) 中不放回地抽取sampleSize个记录序号（Floyd算法），按升序返回以便顺序读取
+    private static int[] sampleRecordIndexes(int recordCount, int sampleSize, Random random) {
+        if (sampleSize >= recordCount) {
+            int[] all = new int[recordCount];
+            for (int i = 0; i < recordCount; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        BitSet chosen = new BitSet(recordCount);
+        for (int j = recordCount - sampleSize; j < recordCount; j++) {
+            int t = random.nextInt(j + 1);
+            chosen.set(chosen.get(t) ? j : t);
+        }
+        // 位图按升序遍历即为有序结果
+        int[] indexes = new int[sampleSize];
+        for (int i = 0, index = chosen.nextSetBit(0); index >= 0; index = chosen.nextSetBit(index + 1)) {
+            indexes[i++] = index;
+        }
+        return indexes;
+    }
+
+    /**
+     * 95% Wilson置信区间；中心不变，半宽乘以有限总体校正系数 sqrt((N-n)/(N-1))，全量抽样时区间退化为点估计。
+     * 区间不超出样本已确定的范围：总体中至少有 successes 个、至多有 N-(n-successes) 个。
+     * 返回 {下限, 上限}
+     */
+    private static double[] wilsonInterval(int successes, int sampleSize, int populationSize) {
+        if (sampleSize <= 0) {
+            return new double[] { 0.0, 1.0 };
+        }
+        double z = 1.959963984540054;
+        double n = sampleSize;
+        double p = successes / n;
+        double z2 = z * z;
+        double denominator = 1.0 + z2 / n;
+        double center = (p + z2 / (2.0 * n)) / denominator;
+        double halfWidth = z * Math.sqrt(p * (1.0 - p) / n + z2 / (4.0 * n * n)) / denominator;
+        if (sampleSize >= populationSize) {
+            return new double[] { p, p };
+        }
+        if (populationSize > 1) {
+            halfWidth *= Math.sqrt((double) (populationSize - sampleSize) / (populationSize - 1));
+        }
+        double lowest = (double) successes / populationSize;
+        double highest = 1.0 - (double) (sampleSize - successes) / populationSize;
+        return new double[] { Math.max(lowest, center - halfWidth), Math.min(highest, center + halfWidth) };
+    }
+
+    private static void printRateEstimate(String label, int count, int sampleSize, int recordCount) {
+        double[] interval = wilsonInterval(count, sampleSize, recordCount);
+        double rate = sampleSize > 0 ? (double) count / sampleSize : 0.0;
+        System.out.println(String.format("%s: %d of %d sampled (rate %.4f%%, 95%% CI %.4f%% - %.4f%%; ~%d - %d features in file)",
+                label, count, sampleSize, rate * 100.0, interval[0] * 100.0, interval[1] * 100.0,
+                Math.max(count, (long) Math.floor(interval[0] * recordCount)),
+                Math.min(recordCount - (sampleSize - count), (long) Math.ceil(interval[1] * recordCount))));
+    }
+
+    // 抽样读取的记录
+    private static final class SampledRecord {
+        final int record;
+        final String featureId;
+        final Object shape;
+
+        SampledRecord(int record, String featureId, Object shape) {
+            this.record = record;
+            this.featureId = featureId;
+            this.shape = shape;
+        }
+    }
+
+    /**
+     * 抽样快速检查：通过.shx偏移随机读取部分记录，只对这些记录执行校验，
+     * 估计空几何、空要素和无效几何的比例及其95%置信区间。不读取属性表，不修改任何文件。
+     * 指定 --report 时把抽样中发现的问题逐条写入报告。
+     */
+    private static void runSampleCheck(File shpFile, String detailFlag, CheckOptions options) {
+        long startTime = System.nanoTime();
+        boolean showDetail = "detail".equalsIgnoreCase(detailFlag);
+        String name = shpFile.getName();
+        int dot = name.lastIndexOf('.');
+        String typeName = dot > 0 ? name.substring(0, dot) : name;
+        long seed = options.seed != null ? options.seed : System.nanoTime();
+
+        ShpFiles shpFiles = null;
+        try {
+            shpFiles = new ShpFiles(shpFile);
+            try (IndexFile index = new IndexFile(shpFiles, false);
+                    ShapefileReader reader = new ShapefileReader(shpFiles, false, false, new GeometryFactory());
+                    CheckReportWriter report = options.reportFile != null
+                            ? CheckReportWriter.open(options.reportFile) : null) {
+                int recordCount = index.getRecordCount();
+                int sampleSize = resolveSampleSize(options.sampleSpec, recordCount);
+                int[] records = sampleRecordIndexes(recordCount, sampleSize, new Random(seed));
+
+                GeometryStats stats = new GeometryStats();
+                List<String> issueDetails = new ArrayList<>();
+                int[] detailCount = {0};
+                int[] unreadable = {0};
+                int[] cursor = {0};
+                // 读取线程按记录顺序定位并解码，工作线程校验
+                OrderedBatchPipeline.Source<SampledRecord> source = () -> {
+                    while (cursor[0] < records.length) {
+                        int record = records[cursor[0]++];
+                        String featureId = typeName + "." + (record + 1);
+                        try {
+                            reader.goTo(index.getOffsetInBytes(record));
+                            return new SampledRecord(record, featureId, reader.nextRecord().shape());
+                        } catch (Exception e) {
+                            unreadable[0]++;
+                            logger.warning("Failed to read sampled record " + featureId + ": " + e.getMessage());
+                        }
+                    }
+                    return null;
+                };
+                boolean needReason = showDetail || report != null;
+                OrderedBatchPipeline.Worker<SampledRecord, FeatureCheck> worker =
+                        record -> checkGeometry(record.featureId, record.shape, needReason, null);
+                OrderedBatchPipeline.Sink<SampledRecord, FeatureCheck> sink = (record, check) -> {
+                    boolean issue = applyFeatureCheck(check, showDetail, issueDetails, stats, detailCount);
+                    if (issue && report != null) {
+                        report.write(record.record + 1, check.featureId, check.issue.name().toLowerCase(),
+                                check.message(), check.location != null ? check.location.x : Double.NaN,
+                                check.location != null ? check.location.y : Double.NaN, check.fixable);
+                    }
+                };
+                if (options.threads > 1) {
+                    new OrderedBatchPipeline<SampledRecord, FeatureCheck>(options.threads,
+                            OrderedBatchPipeline.DEFAULT_BATCH_SIZE).run(source, worker, sink);
+                } else {
+                    SampledRecord record;
+                    while ((record = source.next()) != null) {
+                        sink.accept(record, worker.apply(record));
+                    }
+                }
+
+                int checked = stats.total;
+                System.out.println("=== Sample Check ===");
+                System.out.println("Shapefile path: " + shpFile.getAbsolutePath());
+                System.out.println("Records in file: " + recordCount);
+                System.out.println("Sampled records: " + checked + " (seed: " + seed + ")");
+                if (unreadable[0] > 0) {
+                    System.out.println("Unreadable sampled records: " + unreadable[0]);
+                }
+                printRateEstimate("Null geometries", stats.nullGeometry, checked, recordCount);
+                printRateEstimate("Empty geometries", stats.emptyGeometry, checked, recordCount);
+                printRateEstimate("Invalid geometries", stats.invalidGeometry, checked, recordCount);
+                printRateEstimate("Invalid but auto-fixable geometries", stats.fixableGeometry, checked, recordCount);
+                printRateEstimate("Features with any issue",
+                        stats.nullGeometry + stats.emptyGeometry + stats.invalidGeometry, checked, recordCount);
+
+                if (showDetail && !issueDetails.isEmpty()) {
+                    System.out.println("--- Sampled Issues ---");
+                    for (String line : issueDetails) {
+                        System.out.println(line);
+                    }
+                }
+                if (report != null) {
+                    System.out.println("Issue report (" + report.getIssueCount() + " sampled issues) saved to: "
+                            + options.reportFile.getAbsolutePath());
+                }
+                System.out.println(String.format("Sample check completed in %.2f s",
+                        (System.nanoTime() - startTime) / 1e9));
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Failed to sample shapefile: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (shpFiles != null) {
+                shpFiles.dispose();
+            }
+        }
+    }
+
+    // 图层内部两个要素的重叠（first/second为参与检查的要素列表中的位置，first < second）
+    private static final class OverlapPair {
+        final int first;
+        final int second;
+        final double area;
+        final Coordinate location;
+
+        OverlapPair(int first, int second, double area, Coordinate location) {
+            this.first = first;
+            this.second = second;
+            this.area = area;
+            this.location = location;
+        }
+    }
+
+    /**
+     * 检测图层内部的重叠要素对（重叠面积大于0，仅边界接触不计入）。
+     * 所有要素建立一个共享的STRtree；按包络中心排序后切分为若干连续的空间分区，
+     * 各分区并行查询候选要素，每对要素只由序号较小的一方检查一次。结果按要素顺序返回。
+     */
+    private static List<OverlapPair> findSelfOverlaps(List<Geometry> geometries, List<String> featureIds,
+            int threads) throws Exception {
+        int n = geometries.size();
+        if (n < 2) {
+            return new ArrayList<>();
+        }
+        org.locationtech.jts.index.strtree.STRtree index =
+                new org.locationtech.jts.index.strtree.STRtree(STRTREE_NODE_CAPACITY);
+        for (int i = 0; i < n; i++) {
+            index.insert(geometries.get(i).getEnvelopeInternal(), i);
+        }
+        index.build();
+
+        // 按包络中心排序，使同一分区内的要素在空间上相邻（查询命中的树节点相近）
+        Integer[] order = new Integer[n];
+        double[] centerX = new double[n];
+        double[] centerY = new double[n];
+        for (int i = 0; i < n; i++) {
+            Envelope env = geometries.get(i).getEnvelopeInternal();
+            order[i] = i;
+            centerX[i] = (env.getMinX() + env.getMaxX()) / 2.0;
+            centerY[i] = (env.getMinY() + env.getMaxY()) / 2.0;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int cmp = Double.compare(centerX[a], centerX[b]);
+            return cmp != 0 ? cmp : Double.compare(centerY[a], centerY[b]);
+        });
+
+        int partitions = threads > 1 ? Math.min(n, threads * 4) : 1;
+        int poolId = OVERLAP_POOL_COUNTER.incrementAndGet();
+        AtomicInteger workerCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread t = new Thread(runnable, "checkshp-overlap-" + poolId + "-" + workerCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<List<OverlapPair>>> futures = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                int start = (int) ((long) n * p / partitions);
+                int end = (int) ((long) n * (p + 1) / partitions);
+                futures.add(pool.submit(() -> {
+                    List<OverlapPair> pairs = new ArrayList<>();
+                    for (int k = start; k < end; k++) {
+                        int i = order[k];
+                        Geometry geom1 = geometries.get(i);
+                        Envelope env1 = geom1.getEnvelopeInternal();
+                        for (Object obj : index.query(env1)) {
+                            int j = (Integer) obj;
+                            if (j <= i) { // 只检查j > i的情况，避免重复检查
+                                continue;
+                            }
+                            Geometry geom2 = geometries.get(j);
+                            // 先检查envelope是否相交（快速过滤）
+                            if (!env1.intersects(geom2.getEnvelopeInternal())) {
+                                continue;
+                            }
+                            try {
+                                if (geom1.intersects(geom2)) {
+                                    Geometry intersection = geom1.intersection(geom2);
+                                    double area = intersection != null ? intersection.getArea() : 0.0;
+                                    if (area > 0.0) {
+                                        pairs.add(new OverlapPair(i, j, area,
+                                                intersection.getInteriorPoint().getCoordinate()));
+                                    }
+                                }
+                            } catch (Exception e) {
+                                logger.warning("Failed to check overlap between " + featureIds.get(i) + " and "
+                                        + featureIds.get(j) + ": " + e.getMessage());
+                            }
+                        }
+                    }
+                    return pairs;
+                }));
+            }
+            List<OverlapPair> result = new ArrayList<>();
+            for (Future<List<OverlapPair>> future : futures) {
+                try {
+                    result.addAll(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+            result.sort((a, b) -> a.first != b.first ? Integer.compare(a.first, b.first)
+                    : Integer.compare(a.second, b.second));
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // 输出图层内部重叠检查结果，并把每对重叠写入问题报告
+    private static void reportSelfOverlaps(List<OverlapPair> pairs, List<Geometry> geometries,
+            List<String> featureIds, boolean showDetail, CheckReportWriter report) throws IOException {
+        double totalArea = 0.0;
+        UnionFind uf = new UnionFind(geometries.size());
+        for (OverlapPair pair : pairs) {
+            totalArea += pair.area;
+            uf.union(pair.first, pair.second);
+        }
+        List<List<Integer>> groups = uf.groups();
+        int involved = 0;
+        int largest = 0;
+        for (List<Integer> group : groups) {
+            involved += group.size();
+            largest = Math.max(largest, group.size());
+        }
+
+        System.out.println("--- Self-overlap Check ---");
+        System.out.println("Polygon features checked: " + geometries.size());
+        System.out.println("Overlapping pairs: " + pairs.size());
+        System.out.println("Total overlap area: " + String.format(AREA_FORMAT, totalArea));
+        System.out.println("Features involved in overlaps: " + involved);
+        System.out.println("Connected overlap groups: " + groups.size()
+                + (groups.isEmpty() ? "" : " (largest: " + largest + " features)"));
+
+        if (showDetail && !pairs.isEmpty()) {
+            int shown = 0;
+            for (OverlapPair pair : pairs) {
+                if (shown >= MAX_DETAIL_ITEMS) {
+                    System.out.println("... " + (pairs.size() - shown) + " more overlapping pairs not shown");
+                    break;
+                }
+                System.out.println(featureIds.get(pair.first) + " overlaps " + featureIds.get(pair.second)
+                        + ": area " + String.format(AREA_FORMAT, pair.area)
+                        + " @ " + pair.location.x + "," + pair.location.y);
+                shown++;
+            }
+            shown = 0;
+            for (List<Integer> group : groups) {
+                if (shown >= MAX_DETAIL_ITEMS) {
+                    break;
+                }
+                StringBuilder line = new StringBuilder("Overlap group " + (shown + 1) + " (" + group.size()
+                        + " features):");
+                for (int member : group) {
+                    line.append(' ').append(featureIds.get(member));
+                }
+                System.out.println(line);
+                shown++;
+            }
+        }
+
+        if (report != null) {
+            for (OverlapPair pair : pairs) {
+                String firstId = featureIds.get(pair.first);
+                report.write(ValiditySidecar.recordIndexOf(firstId) + 1, firstId, "overlap",
+                        "overlaps " + featureIds.get(pair.second) + " (area " + String.format(AREA_FORMAT, pair.area)
+                                + ")",
+                        pair.location.x, pair.location.y, false);
+            }
         }
-        processShapefile(workingShpFile, detailFlag, doDelete);
     }
 
-    // Process shapefile for check/delete
-    private static void processShapefile(File shpFile, String detailFlag, boolean doDelete) {
+    // Process shapefile for check/clean
+    // cleanFile不为null时，只读取源文件一次，把保留（或修复后）的要素流式写入cleanFile
+    private static void processShapefile(File shpFile, String detailFlag, File cleanFile, boolean repair,
+            CheckOptions options) {
         ShapefileDataStore store = null;
+        CleanOutput cleanOutput = null;
+        CheckReportWriter report = null;
         try {
             Map<String, Object> params = new HashMap<>();
             params.put("url", shpFile.toURI().toURL());
@@ -413,54 +1114,62 @@ public class gcheckshp {
             ReferencedEnvelope bounds = collection.getBounds();
 
             GeometryStats stats = new GeometryStats();
-            int deletedGeometries = 0;
             List<String> issueDetails = new ArrayList<>();
             
-            // 对于大文件，限制详细信息的数量以避免内存问题
-            final int MAX_DETAIL_ITEMS = 10000;
+            // 对于大文件，限制详细信息的数量（MAX_DETAIL_ITEMS）以避免内存问题
             final int[] detailCount = {0}; // 使用数组以便在lambda中修改
+            // 记录通过校验的记录序号，用于写出有效性旁车文件
+            BitSet validRecords = new BitSet();
 
-            if (doDelete) {
-                Transaction deleteTransaction = new DefaultTransaction("delete-invalid");
-                try (FeatureWriter<SimpleFeatureType, SimpleFeature> writer = 
-                        store.getFeatureWriter(store.getTypeNames()[0], deleteTransaction)) {
-                    int processedCount = 0;
-                    while (writer.hasNext()) {
-                        SimpleFeature feature = writer.next();
-                        boolean removeFeature = shouldRemoveFeature(feature, showDetail && detailCount[0] < MAX_DETAIL_ITEMS, 
-                                issueDetails, stats, detailCount);
-                        if (removeFeature) {
-                            writer.remove();
-                            deletedGeometries++;
-                        } else {
-                            writer.write();
-                        }
-                        processedCount++;
-                        // 每处理1000个要素后提示垃圾回收
-                        if (processedCount % 1000 == 0) {
-                            System.gc();
-                        }
+            // 二进制预扫描：廉价检查能够证明有效的记录不再执行 IsValidOp
+            ShpRecordScanner.Result prescreen = null;
+            try {
+                prescreen = ShpRecordScanner.scan(shpFile);
+            } catch (IOException e) {
+                logger.warning("Binary pre-screen skipped: " + e.getMessage());
+            }
+
+            if (cleanFile != null) {
+                cleanOutput = new CleanOutput(cleanFile, store.getSchema(), repair);
+            }
+            // 重叠检查和覆盖检查需要的多边形要素（无效几何使用修复结果，无法修复的跳过）
+            boolean collectPolygons = options.overlaps || options.coverage;
+            List<Geometry> overlapGeometries = collectPolygons ? new ArrayList<>() : null;
+            List<String> overlapFeatureIds = collectPolygons ? new ArrayList<>() : null;
+            final CleanOutput cleanSink = cleanOutput;
+            OrderedBatchPipeline.Sink<SimpleFeature, FeatureCheck> downstream = null;
+            if (cleanSink != null || overlapGeometries != null) {
+                downstream = (feature, check) -> {
+                    if (cleanSink != null) {
+                        cleanSink.accept(feature, check);
                     }
-                    deleteTransaction.commit();
-                } catch (Exception e) {
-                    deleteTransaction.rollback();
-                    throw e;
-                } finally {
-                    deleteTransaction.close();
-                }
-            } else {
-                try (SimpleFeatureIterator iterator = collection.features()) {
-                    int processedCount = 0;
-                    while (iterator.hasNext()) {
-                        SimpleFeature feature = iterator.next();
-                        shouldRemoveFeature(feature, showDetail && detailCount[0] < MAX_DETAIL_ITEMS, issueDetails, stats, detailCount);
-                        processedCount++;
-                        // 每处理1000个要素后提示垃圾回收
-                        if (processedCount % 1000 == 0) {
-                            System.gc();
+                    if (overlapGeometries != null) {
+                        Object geometry = check.issue == null ? feature.getDefaultGeometry() : check.repaired;
+                        if ((geometry instanceof Polygon || geometry instanceof MultiPolygon)
+                                && !((Geometry) geometry).isEmpty()) {
+                            overlapGeometries.add((Geometry) geometry);
+                            overlapFeatureIds.add(feature.getID());
                         }
                     }
-                }
+                };
+            }
+            if (options.reportFile != null) {
+                report = CheckReportWriter.open(options.reportFile);
+            }
+            validateFeatures(collection, showDetail, options.threads, prescreen, issueDetails, stats, detailCount,
+                    validRecords, report, downstream);
+            List<OverlapPair> overlapPairs = null;
+            if (options.overlaps) {
+                overlapPairs = findSelfOverlaps(overlapGeometries, overlapFeatureIds, options.threads);
+            }
+            File coverageFile = null;
+            CoverageCheck.Summary coverage = null;
+            if (options.coverage) {
+                coverageFile = companion(shpFile, "_coverage.csv");
+                coverage = CoverageCheck.run(overlapGeometries, overlapFeatureIds, options.threads, coverageFile);
+            }
+            if (cleanOutput != null) {
+                cleanOutput.commit(shpFile);
             }
 
             System.out.println("Shapefile path: " + shpFile.getAbsolutePath());
@@ -477,34 +1186,255 @@ public class gcheckshp {
                 System.out.println("Extent: [" + env.getMinX() + ", " + env.getMinY() + "] -> [" + env.getMaxX() + ", "
                         + env.getMaxY() + "]");
             } else {
-                System.out.println("Extent: unavailable (empty bounds)");
+                System.out.println("Extent: unavailable (empty bounds)");
+            }
+
+            if (showDetail && prescreen != null) {
+                printPrescreenSummary(prescreen);
+            }
+
+            if (showDetail && !issueDetails.isEmpty()) {
+                System.out.println("--- Detailed Issues ---");
+                for (String line : issueDetails) {
+                    System.out.println(line);
+                }
+            }
+
+            if (overlapPairs != null) {
+                reportSelfOverlaps(overlapPairs, overlapGeometries, overlapFeatureIds, showDetail, report);
+            }
+
+            if (coverage != null) {
+                System.out.println("--- Coverage Check ---");
+                System.out.println("Polygon features checked: " + overlapGeometries.size());
+                System.out.println("Tiles: " + coverage.tiles
+                        + (coverage.failedTiles > 0 ? " (" + coverage.failedTiles + " with errors)" : ""));
+                System.out.println("Gaps: " + coverage.gaps + " (slivers: " + coverage.gapSlivers + "), total area: "
+                        + String.format(AREA_FORMAT, coverage.gapArea));
+                System.out.println("Overlaps: " + coverage.overlaps + " (slivers: " + coverage.overlapSlivers
+                        + "), total area: " + String.format(AREA_FORMAT, coverage.overlapArea));
+                System.out.println("Gap and overlap polygons saved to: " + coverageFile.getAbsolutePath());
+            }
+
+            if (report != null) {
+                // 置空后 finally 不再重复关闭
+                CheckReportWriter finished = report;
+                report = null;
+                finished.close();
+                System.out.println("Issue report (" + finished.getIssueCount() + " issues) saved to: "
+                        + options.reportFile.getAbsolutePath());
+            }
+
+            // 写出有效性旁车文件，供 area/intersect 模式跳过已知有效记录的 IsValidOp
+            writeValiditySidecar(shpFile, validRecords, stats.total);
+            if (cleanOutput != null) {
+                // 清理输出中的要素全部有效（修复结果也已通过校验），按新文件的记录数写全1位图
+                BitSet allValid = new BitSet(cleanOutput.written);
+                allValid.set(0, cleanOutput.written);
+                writeValiditySidecar(cleanFile, allValid, cleanOutput.written);
+
+                if (repair) {
+                    System.out.println("Features repaired via repair option: " + cleanOutput.repaired);
+                }
+                System.out.println("Features removed via " + (repair ? "repair" : "delete") + " option: "
+                        + cleanOutput.removed);
+                if (cleanOutput.removed == 0 && cleanOutput.repaired == 0) {
+                    System.out.println("No features met the delete criteria; all features were copied unchanged.");
+                } else {
+                    System.out.println("Invalid features " + (repair ? "repaired or removed" : "removed")
+                            + (cleanOutput.attributesPreserved
+                                    ? "; original attribute fields and encoding preserved."
+                                    : "; attribute table rewritten by GeoTools as UTF-8 (field widths may differ)."));
+                }
+                System.out.println("Clean shapefile saved to: " + cleanFile.getAbsolutePath());
+            }
+
+        } catch (Exception e) {
+            System.out.println("Failed to inspect shapefile: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (report != null) {
+                try {
+                    report.close();
+                } catch (IOException e) {
+                    // 忽略关闭异常
+                }
+            }
+            if (cleanOutput != null) {
+                cleanOutput.close();
+            }
+            if (store != null) {
+                store.dispose();
+            }
+        }
+    }
+
+    private static void writeValiditySidecar(File shpFile, BitSet validRecords, int recordCount) {
+        try {
+            ValiditySidecar.write(shpFile, validRecords, recordCount);
+        } catch (IOException e) {
+            ValiditySidecar.delete(shpFile);
+            logger.warning("Failed to write validity sidecar: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 清理输出：按记录顺序把保留的要素追加写入新的shapefile。
+     * 修复模式下，可自动修复的要素写入 GeometryFixer 的结果（转换为图层的几何类型），其余问题要素被删除。
+     * 提交后从源文件原样复制 .prj 和 .cpg；未提交即关闭时删除不完整的输出文件。
+     */
+    private static final class CleanOutput {
+        private final File target;
+        private final boolean repair;
+        private final Class<?> geometryBinding;
+        private final ShapefileDataStore outStore;
+        private final Transaction transaction = new DefaultTransaction("clean");
+        private final FeatureWriter<SimpleFeatureType, SimpleFeature> writer;
+        // 保留的源记录序号（从0开始），用于原样复制源 .dbf 中的属性记录
+        private final BitSet keptRecords = new BitSet();
+        private boolean recordIndexesKnown = true;
+        private boolean committed;
+        // 输出的 .dbf 是否为源 .dbf 记录的原样复制（否则为 GeoTools 按 UTF-8 重新生成）
+        boolean attributesPreserved;
+        int written;
+        int repaired;
+        int removed;
+
+        CleanOutput(File target, SimpleFeatureType schema, boolean repair) throws IOException {
+            this.target = target;
+            this.repair = repair;
+            GeometryDescriptor descriptor = schema.getGeometryDescriptor();
+            this.geometryBinding = descriptor != null ? descriptor.getType().getBinding() : Geometry.class;
+            Map<String, Object> params = new HashMap<>();
+            params.put("url", target.toURI().toURL());
+            outStore = (ShapefileDataStore) new ShapefileDataStoreFactory().createDataStore(params);
+            outStore.setCharset(Charset.forName("UTF-8"));
+            outStore.createSchema(schema);
+            writer = outStore.getFeatureWriterAppend(transaction);
+        }
+
+        void accept(SimpleFeature feature, FeatureCheck check) throws IOException {
+            Geometry replacement = null;
+            if (check.issue != null) {
+                if (repair && check.issue == FeatureIssue.INVALID_GEOMETRY && check.repaired != null) {
+                    replacement = coerceToBinding(check.repaired, geometryBinding);
+                }
+                if (replacement == null) {
+                    removed++;
+                    return;
+                }
+                repaired++;
+            }
+            SimpleFeature newFeature = writer.next();
+            for (int i = 0; i < feature.getAttributeCount(); i++) {
+                Object attr = feature.getAttribute(i);
+                if (replacement != null && attr instanceof Geometry) {
+                    newFeature.setAttribute(i, replacement);
+                } else {
+                    newFeature.setAttribute(i, attr);
+                }
+            }
+            writer.write();
+            written++;
+            int record = ValiditySidecar.recordIndexOf(feature.getID());
+            if (record >= 0) {
+                keptRecords.set(record);
+            } else {
+                recordIndexesKnown = false;
             }
+        }
 
-            if (showDetail && !issueDetails.isEmpty()) {
-                System.out.println("--- Detailed Issues ---");
-                for (String line : issueDetails) {
-                    System.out.println(line);
+        void commit(File sourceShp) throws IOException {
+            writer.close();
+            transaction.commit();
+            committed = true;
+            // GeoTools 按输出 schema 重新生成字段定义并以UTF-8编码写出 .dbf；属性未改动，
+            // 因此用源 .dbf 中保留记录的原始字节替换，字段宽度、小数位和编码与源文件一致
+            File sourceDbf = companion(sourceShp, ".dbf");
+            if (recordIndexesKnown && keptRecords.cardinality() == written && sourceDbf.exists()) {
+                File targetDbf = companion(target, ".dbf");
+                File temp = new File(targetDbf.getPath() + ".tmp");
+                try {
+                    MappedDbfReader.copyRecords(sourceDbf, temp, keptRecords);
+                    Files.move(temp.toPath(), targetDbf.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    attributesPreserved = true;
+                } catch (IOException e) {
+                    deleteIfExists(temp);
+                    logger.warning("Could not copy the original attribute records: " + e.getMessage());
+                }
+            }
+            // 原样保留源文件的坐标系定义和编码声明
+            for (String ext : new String[] { ".prj", ".cpg" }) {
+                File sourceCompanion = companion(sourceShp, ext);
+                if (sourceCompanion.exists()) {
+                    Files.copy(sourceCompanion.toPath(), companion(target, ext).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
                 }
             }
+        }
 
-            if (doDelete) {
-                System.out.println("Features removed via delete option: " + deletedGeometries);
-                if (deletedGeometries == 0) {
-                    System.out.println("No features met the delete criteria; no changes were written.");
-                } else {
-                    System.out.println("Invalid features removed in place; original schema and encoding preserved.");
-                    System.out.println("Clean shapefile saved to: " + shpFile.getAbsolutePath());
+        void close() {
+            try {
+                if (!committed) {
+                    writer.close();
+                    transaction.rollback();
+                }
+                transaction.close();
+            } catch (IOException e) {
+                // 忽略关闭异常
+            }
+            outStore.dispose();
+            if (!committed) {
+                for (String ext : CLEAN_OUTPUT_EXTENSIONS) {
+                    deleteIfExists(companion(target, ext));
                 }
             }
+        }
+    }
 
-        } catch (Exception e) {
-            System.out.println("Failed to inspect shapefile: " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            if (store != null) {
-                store.dispose();
+    // 把修复后的几何转换为图层的几何类型（如Polygon -> MultiPolygon），无法转换时返回null
+    private static Geometry coerceToBinding(Geometry geometry, Class<?> binding) {
+        if (geometry == null || geometry.isEmpty()) {
+            return null;
+        }
+        if (binding.isInstance(geometry)) {
+            return geometry;
+        }
+        GeometryFactory factory = geometry.getFactory();
+        if (MultiPolygon.class.equals(binding) || Polygon.class.equals(binding)) {
+            @SuppressWarnings("unchecked")
+            List<Polygon> polygons = PolygonExtracter.getPolygons(geometry);
+            if (polygons.isEmpty()) {
+                return null;
+            }
+            if (Polygon.class.equals(binding)) {
+                return polygons.size() == 1 ? polygons.get(0) : null;
+            }
+            return factory.createMultiPolygon(polygons.toArray(new Polygon[0]));
+        }
+        if (MultiLineString.class.equals(binding) || LineString.class.equals(binding)) {
+            @SuppressWarnings("unchecked")
+            List<LineString> lines = LineStringExtracter.getLines(geometry);
+            if (lines.isEmpty()) {
+                return null;
+            }
+            if (LineString.class.equals(binding)) {
+                return lines.size() == 1 ? lines.get(0) : null;
+            }
+            return factory.createMultiLineString(lines.toArray(new LineString[0]));
+        }
+        if (MultiPoint.class.equals(binding) || Point.class.equals(binding)) {
+            @SuppressWarnings("unchecked")
+            List<Point> points = PointExtracter.getPoints(geometry);
+            if (points.isEmpty()) {
+                return null;
             }
+            if (Point.class.equals(binding)) {
+                return points.size() == 1 ? points.get(0) : null;
+            }
+            return factory.createMultiPoint(points.toArray(new Point[0]));
         }
+        return null;
     }
 
     // Intersection statistics (refactored)
@@ -512,9 +1442,56 @@ public class gcheckshp {
 
     public static void calculateIntersectionStats(String shp1, String shp2, String groupField,
             boolean deduplicateShp2, boolean clipShp2ToShp1Bounds, String projectionCRS) {
+        calculateIntersectionStats(shp1, shp2, groupField, deduplicateShp2, clipShp2ToShp1Bounds, projectionCRS, false);
+    }
+
+    // geodesic为true时在shp1的地理坐标系中求交，并按椭球计算面积
+    public static void calculateIntersectionStats(String shp1, String shp2, String groupField,
+            boolean deduplicateShp2, boolean clipShp2ToShp1Bounds, String projectionCRS, boolean geodesic) {
+        IntersectOptions options = new IntersectOptions();
+        options.geodesic = geodesic;
+        calculateIntersectionStats(shp1, shp2, groupField, deduplicateShp2, clipShp2ToShp1Bounds, projectionCRS,
+                options);
+    }
+
+    // 交叠模式的可选参数
+    private static final class IntersectOptions {
+        // 为true时在shp1的地理坐标系中求交，并按椭球计算面积
+        boolean geodesic;
+        // 逐条写出诊断事件的文件（NDJSON或CSV），为null时只输出汇总
+        File diagnosticsFile;
+        // 分阶段指标的JSON报告文件，为null时不写出
+        File metricsFile;
+        // 为true时向stderr输出进度和预计剩余时间
+        boolean progress;
+        // 大于0时输出查询+叠加耗时最长的N个shp1要素
+        int profileFeatures;
+        // 为true时shp2坐标存放在堆外的紧凑缓冲区，STRtree中只存要素下标（不去重时有效）
+        boolean packedShp2;
+        // 为true时shp2使用紧凑的Hilbert R树代替STRtree
+        boolean hilbertIndex;
+        // 为true时shp1按块以Hilbert顺序求交，结果仍按记录顺序写出
+        boolean hilbertOrder;
+    }
+
+    private static void calculateIntersectionStats(String shp1, String shp2, String groupField,
+            boolean deduplicateShp2, boolean clipShp2ToShp1Bounds, String projectionCRS, IntersectOptions options) {
+        boolean geodesic = options.geodesic;
         ShapefileDataStore store1 = null;
         ShapefileDataStore store2 = null;
+        Diagnostics diagnostics = null;
+        RunMetrics metrics = new RunMetrics("intersect", options.progress);
+        metrics.input("shp1", shp1);
+        metrics.input("shp2", shp2);
+        metrics.input("projection", geodesic ? "geodesic" : projectionCRS);
+        metrics.input("deduplicate_shp2", deduplicateShp2);
+        metrics.input("group_field", groupField);
+        metrics.input("packed_shp2", options.packedShp2 && !deduplicateShp2);
+        metrics.input("hilbert_index", options.hilbertIndex);
+        metrics.input("hilbert_order", options.hilbertOrder);
         try {
+            // 转换、修复、叠加失败等只计数，结束时输出汇总
+            diagnostics = Diagnostics.open(options.diagnosticsFile);
             File file1 = new File(shp1);
             // 文件存在性检查已在handleIntersectionMode中完成，此处跳过
             Map<String, Object> params1 = new HashMap<>();
@@ -535,6 +1512,11 @@ public class gcheckshp {
             SimpleFeatureSource featureSource2 = store2.getFeatureSource();
             SimpleFeatureCollection collection2 = featureSource2.getFeatures();
             CoordinateReferenceSystem crs2 = store2.getSchema().getCoordinateReferenceSystem();
+            Envelope shp2ClipEnvelope = null; // clip边界在shp2坐标系中的包络（用于内存映射读取时的初步筛选）
+
+            // 读取 checkshp 生成的有效性旁车文件，已知有效的记录跳过 IsValidOp
+            ValiditySidecar validity1 = loadValiditySidecar(file1);
+            ValiditySidecar validity2 = loadValiditySidecar(file2);
 
             // 计算 bounds1
             ReferencedEnvelope bounds1 = collection1.getBounds();
@@ -545,6 +1527,7 @@ public class gcheckshp {
             // 3. 最后将两个shp都转换到用户指定的目标坐标系
             // 这样可以确保clip在相同的坐标系中进行，更准确，并且先clip再转换可以减少数据量，避免NaN坐标问题
             
+            RunMetrics.Span crsSpan = metrics.begin("crs_resolution");
             // 确定用于面积计算的坐标系（使用用户指定的投影）
             CoordinateReferenceSystem areaCalculationCRS = null;
             MathTransform transform1 = null;
@@ -552,16 +1535,31 @@ public class gcheckshp {
             MathTransform shp2ToShp1Transform = null; // shp2到shp1的转换（用于clip）
             Geometry clipBoundaryInShp1CRS = null; // 在shp1坐标系中的clip边界
             String areaUnit = "unknown";
+            GeodesicArea geodesicArea = null; // 椭球面积计算器（--geodesic）
+            LocalZoneProjection localProjection = null; // 逐要素局部投影（--projection auto-local）
+            // 各转换的适用范围预筛选及结果计数
+            DomainOfValidityFilter shp2ToShp1Domain = null;
+            DomainOfValidityFilter shp1Domain = null;
+            DomainOfValidityFilter shp2Domain = null;
             
             // 解析用户指定的投影
             try {
-                if (projectionCRS == null || projectionCRS.trim().isEmpty()) {
+                if (geodesic) {
+                    // 不投影：shp2转换到shp1的地理坐标系后直接求交，面积按椭球计算
+                    // shp1 缺少坐标系时 forCrs 抛出异常，不默认 WGS84
+                    geodesicArea = GeodesicArea.forCrs(crs1);
+                    areaCalculationCRS = crs1;
+                } else if (projectionCRS == null || projectionCRS.trim().isEmpty()) {
                     throw new IllegalArgumentException("Projection CRS is required. Please specify a projection using --projection option.");
+                } else if (LocalZoneProjection.isAutoLocal(projectionCRS)) {
+                    // 在shp1的坐标系中求交，每个shp1要素及其交集转换到该要素所在的投影带计算面积
+                    localProjection = LocalZoneProjection.create(projectionCRS, crs1);
+                    areaCalculationCRS = crs1;
+                } else {
+                    // 使用用户指定的投影（EPSG、TIF、SHP）
+                    areaCalculationCRS = resolveTargetCRS(projectionCRS);
                 }
                 
-                // 使用用户指定的投影（EPSG、TIF、SHP）
-                areaCalculationCRS = resolveTargetCRS(projectionCRS);
-                
                 // 步骤1：如果shp2和shp1的坐标系不同，创建shp2到shp1的转换（用于clip）
                 boolean needShp2ToShp1Transform = false;
                 if (crs1 != null && crs2 != null && !CRS.equalsIgnoreMetadata(crs1, crs2)) {
@@ -593,6 +1591,7 @@ public class gcheckshp {
                                     filterFactory.literal(clipBoundaryInShp2CRS)
                                 );
                                 collection2 = featureSource2.getFeatures(clipFilter);
+                                shp2ClipEnvelope = clipBoundaryInShp2CRS.getEnvelopeInternal();
                             } else {
                                 // 坐标系相同，直接使用shp1的边界进行clip
                                 FilterFactory filterFactory = new FilterFactoryImpl();
@@ -601,10 +1600,8 @@ public class gcheckshp {
                                     filterFactory.literal(clipBoundaryInShp1CRS)
                                 );
                                 collection2 = featureSource2.getFeatures(clipFilter);
+                                shp2ClipEnvelope = clipBoundaryInShp1CRS.getEnvelopeInternal();
                             }
-                            
-                            // 统计clip后的要素数量
-                            int clippedCount = collection2.size();
                         } catch (Exception e) {
                             System.out.println("Warning: Failed to create clip filter, processing all shp2 features: " + e.getMessage());
                             e.printStackTrace();
@@ -623,11 +1620,11 @@ public class gcheckshp {
                     }
                 }
                 
-                // shp2: 如果需要在shp1坐标系中clip，则从crs1转换到目标坐标系
+                // shp2: 坐标系与shp1不同时，读取时先转换到shp1坐标系（无论是否clip），再从crs1转换到目标坐标系
                 // 否则从crs2转换到目标坐标系
                 // 注意：如果原始shapefile的CRS与目标CRS相同，则跳过转换
-                if (clipShp2ToShp1Bounds && needShp2ToShp1Transform) {
-                    // shp2会先转换到shp1坐标系（在clip时），然后从shp1坐标系转换到目标坐标系
+                if (needShp2ToShp1Transform) {
+                    // shp2会先转换到shp1坐标系，然后从shp1坐标系转换到目标坐标系
                     // 所以transform2应该是从crs1到目标坐标系
                     if (crs1 != null) {
                         if (CRS.equalsIgnoreMetadata(crs1, areaCalculationCRS)) {
@@ -648,6 +1645,17 @@ public class gcheckshp {
                     }
                 }
                 
+                // 转换前按目标坐标系的适用范围筛选：范围外的要素跳过，跨越边界的先裁剪
+                if (shp2ToShp1Transform != null) {
+                    shp2ToShp1Domain = DomainOfValidityFilter.create("shp2 -> shp1 CRS", crs2, crs1);
+                }
+                if (transform1 != null) {
+                    shp1Domain = DomainOfValidityFilter.create("shp1 -> target CRS", crs1, areaCalculationCRS);
+                }
+                if (transform2 != null) {
+                    shp2Domain = DomainOfValidityFilter.create("shp2 -> target CRS",
+                            needShp2ToShp1Transform ? crs1 : crs2, areaCalculationCRS);
+                }
                 
                 // 确定面积单位
                 try {
@@ -675,6 +1683,9 @@ public class gcheckshp {
                 } catch (Exception e) {
                     areaUnit = "square units";
                 }
+                if (geodesicArea != null || localProjection != null) {
+                    areaUnit = "square meters";
+                }
             } catch (IllegalArgumentException e) {
                 // 投影解析失败，直接输出错误信息并退出
                 System.err.println("ERROR: " + e.getMessage());
@@ -683,6 +1694,7 @@ public class gcheckshp {
                 System.err.println("ERROR: Failed to resolve projection: " + e.getMessage());
                 throw new RuntimeException("Failed to resolve projection: " + e.getMessage(), e);
             }
+            crsSpan.end();
 
             // Validate groupField existence
             if (groupField != null && !validateGroupField(store2, groupField)) {
@@ -696,8 +1708,8 @@ public class gcheckshp {
             // 如果不需要合并，使用流式索引（只存储envelope和feature引用）
             // 如果需要合并，使用分批合并策略
             
-            // 首先统计 shp2 的要素数量
-            int shp2GeomCount = collection2.size();
+            // 首先统计 shp2 的要素数量（读取文件头中的记录数，不遍历要素）
+            int shp2GeomCount = featureSource2.getCount(org.geotools.api.data.Query.ALL);
             int shp2PolygonCount = 0;
             if (shp2GeomCount == 0) {
                 logger.severe("shp2 has no valid geometries.");
@@ -705,43 +1717,49 @@ public class gcheckshp {
             }
             
             // 根据是否需要去重选择不同的处理策略
-            org.locationtech.jts.index.strtree.STRtree strTree = null;
+            Shp2Index shp2Index = null;
             Map<String, List<Geometry>> groupGeoms = null;
             Map<Geometry, String> geomToGroup = null;
             List<String> uniqueGroupValues = groupField != null ? new ArrayList<>() : null;
+            // 紧凑存储：去重合并需要所有几何对象同时在堆上，只用于不去重的流式读取
+            PackedGeometryStore packedShp2 = null;
+            if (options.packedShp2) {
+                if (deduplicateShp2) {
+                    System.out.println("Note: --packed-shp2 is ignored with --deduplicate-shp2 (merging needs all shp2 geometries on the heap)");
+                } else {
+                    packedShp2 = new PackedGeometryStore();
+                }
+            }
+            
+            // shp2读取阶段（含转换、修复和去重合并），转换和修复另外单独计时
+            RunMetrics.Span shp2Span = metrics.begin("shp2_load");
+            RunMetrics.Phase shp2TransformPhase = metrics.phase("shp2_transform_fix");
+            RunMetrics.Progress shp2Progress = metrics.progress("shp2", shp2GeomCount);
+            long shp2Vertices = 0;
             
             // 不再需要全局merge，只使用去重功能（在构建索引时处理）
             // 使用流式索引策略，只存储envelope和feature引用
             // 如果启用去重，需要先收集所有几何对象，检测重叠并分组merge
             if (deduplicateShp2) {
                     List<Geometry> allGeometries = new ArrayList<>();
-                    List<SimpleFeature> allFeatures = new ArrayList<>(); // 保存feature引用用于分组信息
+                    // 要素ID和分组值在读取时取出：迭代器关闭后映射的属性表即被释放，不能再从记录读取
+                    List<String> allFeatureIds = new ArrayList<>();
+                    List<String> allGroupKeys = new ArrayList<>();
                     
                     // 第一步：收集所有几何对象
-                    try (SimpleFeatureIterator iterator2 = collection2.features()) {
+                    try (SourceRecordIterator iterator2 = openSourceRecords(file2, collection2, shp2ClipEnvelope)) {
                         while (iterator2.hasNext()) {
-                            SimpleFeature feature = iterator2.next();
+                            SourceRecord feature = iterator2.next();
+                            shp2Progress.step();
                             Object geomObj = feature.getDefaultGeometry();
                             if (geomObj instanceof Geometry) {
                                 Geometry geom = (Geometry) geomObj;
-                                if (!geom.isEmpty() && geom.isValid()) {
+                                if (!geom.isEmpty() && isSourceGeometryValid(geom, feature.getID(), validity2)) {
                                     // 步骤1：如果shp2和shp1坐标系不同，先转换到shp1坐标系
                                     if (shp2ToShp1Transform != null) {
-                                        try {
-                                            geom = org.geotools.geometry.jts.JTS.transform(geom, shp2ToShp1Transform);
-                                            if (!geom.isValid()) {
-                                                try {
-                                                    Geometry fixed = GeometryFixer.fix(geom);
-                                                    if (fixed.isValid()) {
-                                                        geom = fixed;
-                                                    } else {
-                                                        continue;
-                                                    }
-                                                } catch (Exception fixEx) {
-                                                    continue;
-                                                }
-                                            }
-                                        } catch (Exception e) {
+                                        geom = transformGeometry(geom, shp2ToShp1Transform, shp2ToShp1Domain, diagnostics, feature.getID(),
+                                                shp2TransformPhase);
+                                        if (geom == null) {
                                             continue;
                                         }
                                     }
@@ -753,48 +1771,34 @@ public class gcheckshp {
                                                 continue;
                                             }
                                         } catch (Exception e) {
+                                            diagnostics.record(Diagnostics.Category.CLIP_FAILED, feature.getID(), e);
                                             continue;
                                         }
                                     }
                                     
                                     // 步骤3：转换到目标坐标系
                                     if (transform2 != null) {
-                                        try {
-                                            geom = org.geotools.geometry.jts.JTS.transform(geom, transform2);
-                                            if (!geom.isValid()) {
-                                                try {
-                                                    Geometry fixed = GeometryFixer.fix(geom);
-                                                    if (fixed.isValid()) {
-                                                        geom = fixed;
-                                                    } else {
-                                                        continue;
-                                                    }
-                                                } catch (Exception fixEx) {
-                                                    continue;
-                                                }
-                                            }
-                                        } catch (Exception e) {
+                                        geom = transformGeometry(geom, transform2, shp2Domain, diagnostics, feature.getID(),
+                                                shp2TransformPhase);
+                                        if (geom == null) {
                                             continue;
                                         }
                                     } else {
-                                        if (!geom.isValid()) {
-                                            try {
-                                                Geometry fixed = GeometryFixer.fix(geom);
-                                                if (fixed.isValid()) {
-                                                    geom = fixed;
-                                                } else {
-                                                    continue;
-                                                }
-                                            } catch (Exception fixEx) {
-                                                continue;
-                                            }
+                                        geom = repairGeometry(geom, diagnostics, feature.getID());
+                                        if (geom == null) {
+                                            continue;
                                         }
                                     }
                                     
                                     String geomType = geom.getGeometryType();
                                     if ("Polygon".equalsIgnoreCase(geomType) || "MultiPolygon".equalsIgnoreCase(geomType)) {
                                         allGeometries.add(geom);
-                                        allFeatures.add(feature);
+                                        shp2Vertices += geom.getNumPoints();
+                                        allFeatureIds.add(feature.getID());
+                                        if (groupField != null) {
+                                            Object attr = feature.getAttribute(groupField);
+                                            allGroupKeys.add((attr != null) ? attr.toString() : "<null>");
+                                        }
                                     }
                                 }
                             }
@@ -807,10 +1811,12 @@ public class gcheckshp {
                     }
                     
                     // 第二步：检测重叠并分组（使用并查集）
+                    RunMetrics.Span mergeSpan = metrics.begin("shp2_deduplicate");
                     List<List<Integer>> overlapGroups = findOverlapGroups(allGeometries);
                     
                     // 第三步：对每组进行merge，并构建最终索引
-                    strTree = new org.locationtech.jts.index.strtree.STRtree(STRTREE_NODE_CAPACITY);
+                    shp2Index = new Shp2Index(options.hilbertIndex,
+                            options.hilbertIndex ? HILBERT_NODE_SIZE : STRTREE_NODE_CAPACITY, packedShp2);
                     int mergedGroupCount = 0;
                     int nonOverlappingCount = 0;
                     
@@ -822,7 +1828,9 @@ public class gcheckshp {
                     // 标记哪些几何对象已经被分组
                     boolean[] inGroup = new boolean[allGeometries.size()];
                     
+                    RunMetrics.Progress mergeProgress = metrics.progress("overlap groups", overlapGroups.size());
                     for (List<Integer> group : overlapGroups) {
+                        mergeProgress.step();
                         if (group.size() > 1) {
                             // 多个几何对象重叠，需要merge
                             List<Geometry> groupGeomList = new ArrayList<>();
@@ -832,17 +1840,15 @@ public class gcheckshp {
                             }
                             
                             try {
-                                Geometry merged = mergeGeometriesRobustly(groupGeomList, null, 0, 0);
+                                Geometry merged = mergeGeometriesRobustly(groupGeomList, null);
                                 if (merged != null && !merged.isEmpty() && merged.isValid()) {
-                                    strTree.insert(merged.getEnvelopeInternal(), merged);
+                                    shp2Index.insert(merged, null);
                                     shp2PolygonCount++;
                                     mergedGroupCount++;
                                     
                                     // 记录分组信息（使用第一个feature的分组信息）
-                                    if (groupField != null && allFeatures.size() > group.get(0)) {
-                                        SimpleFeature firstFeature = allFeatures.get(group.get(0));
-                                        Object attr = firstFeature.getAttribute(groupField);
-                                        String key = (attr != null) ? attr.toString() : "<null>";
+                                    if (groupField != null && allGroupKeys.size() > group.get(0)) {
+                                        String key = allGroupKeys.get(group.get(0));
                                         if (groupGeoms == null) {
                                             groupGeoms = new HashMap<>();
                                             geomToGroup = new HashMap<>();
@@ -868,30 +1874,30 @@ public class gcheckshp {
                                     }
                                 }
                             } catch (Exception e) {
-                                logger.warning("Failed to merge overlapping group: " + e.getMessage());
+                                diagnostics.record(Diagnostics.Category.MERGE_FAILED,
+                                        allFeatureIds.get(group.get(0)), e);
                                 // merge失败，保留原始几何对象
                                 for (int idx : group) {
                                     Geometry geom = allGeometries.get(idx);
-                                    strTree.insert(geom.getEnvelopeInternal(), geom);
+                                    shp2Index.insert(geom, null);
                                     shp2PolygonCount++;
                                 }
                             }
                         }
                     }
+                    mergeProgress.finish();
                     
                     // 添加不重叠的几何对象
                     for (int i = 0; i < allGeometries.size(); i++) {
                         if (!inGroup[i]) {
                             Geometry geom = allGeometries.get(i);
-                            strTree.insert(geom.getEnvelopeInternal(), geom);
+                            shp2Index.insert(geom, null);
                             shp2PolygonCount++;
                             nonOverlappingCount++;
                             
                             // 记录分组信息
-                            if (groupField != null && allFeatures.size() > i) {
-                                SimpleFeature feature = allFeatures.get(i);
-                                Object attr = feature.getAttribute(groupField);
-                                String key = (attr != null) ? attr.toString() : "<null>";
+                            if (groupField != null && allGroupKeys.size() > i) {
+                                String key = allGroupKeys.get(i);
                                 if (groupGeoms == null) {
                                     groupGeoms = new HashMap<>();
                                     geomToGroup = new HashMap<>();
@@ -909,47 +1915,33 @@ public class gcheckshp {
                             }
                         }
                     }
-                    
+                    mergeSpan.end(allGeometries.size(), shp2Vertices);
                     
                 } else {
                     // 不使用去重：使用原来的流式处理
-                    strTree = new org.locationtech.jts.index.strtree.STRtree(STRTREE_NODE_CAPACITY);
+                    shp2Index = new Shp2Index(options.hilbertIndex,
+                            options.hilbertIndex ? HILBERT_NODE_SIZE : STRTREE_NODE_CAPACITY, packedShp2);
                     List<Geometry> tempGeoms = new ArrayList<>();
                     final int INDEX_BATCH_SIZE = 5000;
                     
-                    if (groupField != null) {
+                    if (groupField != null && packedShp2 == null) {
                         groupGeoms = new HashMap<>();
                         geomToGroup = new HashMap<>();
                     }
                 
-                try (SimpleFeatureIterator iterator2 = collection2.features()) {
+                try (SourceRecordIterator iterator2 = openSourceRecords(file2, collection2, shp2ClipEnvelope)) {
                     while (iterator2.hasNext()) {
-                        SimpleFeature feature = iterator2.next();
+                        SourceRecord feature = iterator2.next();
+                        shp2Progress.step();
                         Object geomObj = feature.getDefaultGeometry();
                         if (geomObj instanceof Geometry) {
                             Geometry geom = (Geometry) geomObj;
-                            if (!geom.isEmpty() && geom.isValid()) {
+                            if (!geom.isEmpty() && isSourceGeometryValid(geom, feature.getID(), validity2)) {
                                 // 步骤1：如果shp2和shp1坐标系不同，先转换到shp1坐标系
                                 if (shp2ToShp1Transform != null) {
-                                    try {
-                                        geom = org.geotools.geometry.jts.JTS.transform(geom, shp2ToShp1Transform);
-                                        // 只检查几何对象的有效性，不需要检查坐标
-                                        if (!geom.isValid()) {
-                                            try {
-                                                Geometry fixed = GeometryFixer.fix(geom);
-                                                if (fixed.isValid()) {
-                                                    geom = fixed;
-                                                } else {
-                                                    logger.warning("Skipping invalid geometry from shp2 after conversion to shp1 CRS (cannot be fixed)");
-                                                    continue;
-                                                }
-                                            } catch (Exception fixEx) {
-                                                logger.warning("Skipping invalid geometry from shp2 after conversion to shp1 CRS (fix failed)");
-                                                continue;
-                                            }
-                                        }
-                                    } catch (Exception e) {
-                                        logger.warning("Failed to transform geometry from shp2 to shp1 CRS: " + e.getMessage());
+                                    geom = transformGeometry(geom, shp2ToShp1Transform, shp2ToShp1Domain, diagnostics, feature.getID(),
+                                                shp2TransformPhase);
+                                    if (geom == null) {
                                         continue;
                                     }
                                 }
@@ -962,80 +1954,44 @@ public class gcheckshp {
                                             continue;
                                         }
                                     } catch (Exception e) {
-                                        logger.warning("Failed to clip geometry: " + e.getMessage());
+                                        diagnostics.record(Diagnostics.Category.CLIP_FAILED, feature.getID(), e);
                                         continue;
                                     }
                                 }
                                 
-                                // 步骤3：转换到目标坐标系
+                                // 步骤3：转换到目标坐标系（转换前按目标坐标系的适用范围筛选，范围外的要素不再转换）
                                 if (transform2 != null) {
-                                    try {
-                                        // 转换前检查几何对象的范围
-                                        Envelope envBefore = geom.getEnvelopeInternal();
-                                        if (envBefore != null) {
-                                            double width = envBefore.getWidth();
-                                            double height = envBefore.getHeight();
-                                            // 如果几何对象范围过大，可能转换时会产生NaN
-                                            if (width > 1000000 || height > 1000000) {
-                                                logger.warning("Large geometry detected before transformation (width: " + width + ", height: " + height + "). This may cause NaN coordinates.");
-                                            }
-                                        }
-                                        
-                                        geom = org.geotools.geometry.jts.JTS.transform(geom, transform2);
-                                        
-                                        // 只检查几何对象的有效性，不需要检查坐标
-                                        if (!geom.isValid()) {
-                                            try {
-                                                Geometry fixed = GeometryFixer.fix(geom);
-                                                if (fixed.isValid()) {
-                                                    geom = fixed;
-                                                    logger.warning("Fixed invalid geometry after transformation from shp2 to target CRS");
-                                                } else {
-                                                    Envelope envAfter = geom.getEnvelopeInternal();
-                                                    logger.warning("Skipping invalid geometry from shp2 after transformation to target CRS (cannot be fixed). " +
-                                                                  "Before: " + envBefore + ", After: " + envAfter + 
-                                                                  ". This may be caused by large data range or inappropriate projection.");
-                                                    continue;
-                                                }
-                                            } catch (Exception fixEx) {
-                                                Envelope envAfter = geom.getEnvelopeInternal();
-                                                logger.warning("Skipping invalid geometry from shp2 after transformation to target CRS (fix failed). " +
-                                                              "Before: " + envBefore + ", After: " + envAfter);
-                                                continue;
-                                            }
-                                        }
-                                    } catch (Exception e) {
-                                        // 检查是否是转换相关的异常
-                                        if (e.getMessage() != null && (e.getMessage().contains("Transform") || e.getMessage().contains("transform"))) {
-                                            logger.warning("Transform error when transforming geometry from shp2 to target CRS: " + e.getMessage() + 
-                                                          ". This may indicate the projection is not suitable for this data range.");
-                                        } else {
-                                            logger.warning("Failed to transform geometry from shp2 to target CRS: " + e.getMessage());
-                                        }
+                                    geom = transformGeometry(geom, transform2, shp2Domain, diagnostics, feature.getID(),
+                                                shp2TransformPhase);
+                                    if (geom == null) {
                                         continue;
                                     }
                                 } else {
                                     // 即使没有转换，也验证几何对象的有效性
-                                    if (!geom.isValid()) {
-                                        try {
-                                            Geometry fixed = GeometryFixer.fix(geom);
-                                            if (fixed.isValid()) {
-                                                geom = fixed;
-                                            } else {
-                                                logger.warning("Skipping invalid geometry from shp2 (cannot be fixed)");
-                                                continue;
-                                            }
-                                        } catch (Exception fixEx) {
-                                            logger.warning("Skipping invalid geometry from shp2 (fix failed)");
-                                            continue;
-                                        }
+                                    geom = repairGeometry(geom, diagnostics, feature.getID());
+                                    if (geom == null) {
+                                        continue;
                                     }
                                 }
                                 String geomType = geom.getGeometryType();
                                 if ("Polygon".equalsIgnoreCase(geomType) || "MultiPolygon".equalsIgnoreCase(geomType)) {
-                                    strTree.insert(geom.getEnvelopeInternal(), geom);
-                                    tempGeoms.add(geom);
+                                    shp2Vertices += geom.getNumPoints();
                                     shp2PolygonCount++;
+                                    if (packedShp2 != null) {
+                                        // 坐标写入紧凑存储，索引中只保留包络和要素下标，几何对象随即可回收
+                                        String key = null;
+                                        if (groupField != null) {
+                                            Object attr = feature.getAttribute(groupField);
+                                            key = (attr != null) ? attr.toString() : "<null>";
+                                            if (!uniqueGroupValues.contains(key)) {
+                                                uniqueGroupValues.add(key);
+                                            }
+                                        }
+                                        shp2Index.insert(geom, key);
+                                        continue;
+                                    }
+                                    shp2Index.insert(geom, null);
+                                    tempGeoms.add(geom);
                                     
                                     // 记录分组信息
                                     if (groupField != null && groupGeoms != null && geomToGroup != null && uniqueGroupValues != null) {
@@ -1070,6 +2026,21 @@ public class gcheckshp {
                 tempGeoms.clear();
                 System.gc(); // 最终清理
             }
+            shp2Progress.finish();
+            shp2Span.end(shp2PolygonCount, shp2Vertices);
+            if (packedShp2 != null) {
+                System.out.println(String.format(
+                        "Packed shp2 store: %d polygons, %d vertices, %.1f MB off-heap (%.1f MB allocated), "
+                                + "%.1f MB on-heap",
+                        packedShp2.size(), shp2Vertices, packedShp2.getOffHeapBytes() / 1048576.0,
+                        packedShp2.getOffHeapCapacityBytes() / 1048576.0, packedShp2.getHeapBytes() / 1048576.0));
+            }
+            
+            // 显式构建空间索引（否则在第一次查询时构建，计入查询时间）
+            RunMetrics.Span indexSpan = metrics.begin("index_build");
+            shp2Index.setGroups(groupField != null ? geomToGroup : null);
+            shp2Index.build();
+            indexSpan.end(shp2PolygonCount, 0);
 
             // 获取shp1所有非几何字段名
             SimpleFeatureType featureType1 = store1.getSchema();
@@ -1104,16 +2075,39 @@ public class gcheckshp {
 
             // Compute intersections and write to CSV in streaming mode (避免内存占用过大)
             double totalIntersectionArea;
+            SlowFeatureProfiler profiler = options.profileFeatures > 0
+                    ? new SlowFeatureProfiler(options.profileFeatures) : null;
             // 只使用索引模式（去重功能在构建索引时已处理）
-            totalIntersectionArea = computeIntersectionsWithAttributesAndWrite(collection1, transform1, 
-                    shp1FieldNames, strTree, csvFile, groupField, 
-                    groupField != null ? geomToGroup : null,
-                    uniqueGroupValues);
+            totalIntersectionArea = computeIntersectionsWithAttributesAndWrite(collection1, transform1, shp1Domain,
+                    validity1, shp1FieldNames, shp2Index, csvFile, groupField, uniqueGroupValues, geodesicArea,
+                    localProjection, diagnostics, metrics, featureSource1.getCount(org.geotools.api.data.Query.ALL),
+                    profiler, options.hilbertOrder);
 
             // 输出统计结果到控制台
+            for (DomainOfValidityFilter domain : new DomainOfValidityFilter[] { shp2ToShp1Domain, shp2Domain, shp1Domain }) {
+                String summary = domain != null ? domain.summary() : null;
+                if (summary != null) {
+                    System.out.println(summary);
+                }
+            }
+            diagnostics.printSummary(System.out);
+            if (options.diagnosticsFile != null) {
+                System.out.println("Diagnostics written to: " + options.diagnosticsFile.getAbsolutePath());
+            }
+            writeMetrics(metrics, options.metricsFile, diagnostics);
+            if (profiler != null) {
+                profiler.printReport(System.out);
+            }
             System.out.println("--- Area Calculation Settings ---");
             System.out.println("Coordinate System (CRS): "
                     + (areaCalculationCRS != null ? areaCalculationCRS.getName().toString() : "unknown"));
+            if (geodesicArea != null) {
+                System.out.println("Geodesic area on ellipsoid: " + geodesicArea.getEllipsoidName());
+            }
+            if (localProjection != null) {
+                System.out.println("Local projection: " + localProjection.describe() + ", zones used: "
+                        + localProjection.getZoneCount());
+            }
             System.out.println("Area Unit: " + areaUnit);
             System.out.println("Total intersection area: " + String.format("%.6f", totalIntersectionArea) + " " + areaUnit);
             System.out.println("CSV file saved to: " + csvFile.getAbsolutePath());
@@ -1131,6 +2125,30 @@ public class gcheckshp {
                 store1.dispose();
             if (store2 != null)
                 store2.dispose();
+            closeDiagnostics(diagnostics);
+        }
+    }
+
+    private static void closeDiagnostics(Diagnostics diagnostics) {
+        if (diagnostics != null) {
+            try {
+                diagnostics.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close diagnostics file: " + e.getMessage());
+            }
+        }
+    }
+
+    // 指定了 --metrics 时写出分阶段指标报告；写出失败不影响计算结果
+    private static void writeMetrics(RunMetrics metrics, File metricsFile, Diagnostics diagnostics) {
+        if (metricsFile == null) {
+            return;
+        }
+        try {
+            metrics.writeJson(metricsFile, diagnostics);
+            System.out.println("Metrics written to: " + metricsFile.getAbsolutePath());
+        } catch (IOException e) {
+            logger.warning("Failed to write metrics file: " + e.getMessage());
         }
     }
 
@@ -1156,11 +2174,12 @@ public class gcheckshp {
     
     // 分批合并几何对象，减少内存峰值
     private static Geometry mergeGeometriesInBatches(List<Geometry> geometries, int batchSize) {
-        return mergeGeometriesInBatches(geometries, batchSize, null, 0);
+        return mergeGeometriesInBatches(geometries, batchSize, null);
     }
     
-    // 带进度显示的分批合并
-    private static Geometry mergeGeometriesInBatches(List<Geometry> geometries, int batchSize, String progressPrefix, int totalBatches) {
+    // 带进度显示的分批合并：progress 可为null，每合并一批前进一步
+    private static Geometry mergeGeometriesInBatches(List<Geometry> geometries, int batchSize,
+            RunMetrics.Progress progress) {
         if (geometries == null || geometries.isEmpty()) {
             return null;
         }
@@ -1195,22 +2214,19 @@ public class gcheckshp {
         
         // 如果几何对象数量较少，使用逐个合并策略，跳过有问题的几何对象
         if (validGeometries.size() <= batchSize) {
-            return mergeGeometriesRobustly(validGeometries, progressPrefix, 0, 0);
+            return mergeGeometriesRobustly(validGeometries, progress);
         }
         
         // 分批合并，每批使用健壮的合并策略
         List<Geometry> mergedBatches = new ArrayList<>();
-        int actualTotalBatches = (validGeometries.size() + batchSize - 1) / batchSize;
-        if (totalBatches == 0) totalBatches = actualTotalBatches;
         
         for (int i = 0; i < validGeometries.size(); i += batchSize) {
             int end = Math.min(i + batchSize, validGeometries.size());
             List<Geometry> batch = new ArrayList<>(validGeometries.subList(i, end));
-            int batchNum = i / batchSize + 1;
-            if (progressPrefix != null) {
-                showProgress(batchNum, totalBatches, progressPrefix);
+            if (progress != null) {
+                progress.step();
             }
-            Geometry batchMerged = mergeGeometriesRobustly(batch, null, 0, 0);
+            Geometry batchMerged = mergeGeometriesRobustly(batch, null);
             // 在每个批次合并后立即验证（只检查几何有效性）
             if (batchMerged != null && !batchMerged.isEmpty()) {
                 if (batchMerged.isValid()) {
@@ -1246,7 +2262,7 @@ public class gcheckshp {
         }
         
         // 递归合并合并后的批次
-        return mergeGeometriesInBatches(mergedBatches, batchSize, progressPrefix, 0);
+        return mergeGeometriesInBatches(mergedBatches, batchSize, progress);
     }
 
     private static boolean validateGroupField(ShapefileDataStore store, String groupField) {
@@ -1260,44 +2276,109 @@ public class gcheckshp {
     }
 
     // 交叠统计，流式写入CSV，输出shp1所有字段+feature_area+intersection_area+intersecting_shp2_count
+    // hilbertOrder为true时按块读取shp1，块内按要素包络中心的Hilbert值顺序求交，再按记录顺序写出
     private static double computeIntersectionsWithAttributesAndWrite(SimpleFeatureCollection collection1,
-            MathTransform transform1, List<String> shp1FieldNames,
-            org.locationtech.jts.index.strtree.STRtree strTree, File csvFile, 
-            String groupField, Map<Geometry, String> geomToGroup, List<String> uniqueGroupValues) {
+            MathTransform transform1, DomainOfValidityFilter domain1, ValiditySidecar validity1, List<String> shp1FieldNames,
+            Shp2Index shp2Index, File csvFile, String groupField, List<String> uniqueGroupValues,
+            GeodesicArea geodesic, LocalZoneProjection local, Diagnostics diagnostics, RunMetrics metrics,
+            long shp1Total, SlowFeatureProfiler profiler, boolean hilbertOrder) {
         double totalIntersectionArea = 0.0;
+        // shp1逐要素处理：整体计时，另外分别累计转换、要素面积、候选查询、叠加和写CSV的时间
+        RunMetrics.Span shp1Span = metrics.begin("shp1_intersect");
+        RunMetrics.Phase transformPhase = metrics.phase("shp1_transform_fix");
+        RunMetrics.Phase areaPhase = metrics.phase("feature_area");
+        RunMetrics.Phase queryPhase = metrics.phase("candidate_query");
+        RunMetrics.Phase overlayPhase = metrics.phase("overlay");
+        RunMetrics.Phase writePhase = metrics.phase("csv_write");
+        RunMetrics.Progress progress = metrics.progress("shp1", shp1Total);
+        long shp1Vertices = 0;
+        int processedCount = 0;
+        // 待求交的要素：不按Hilbert顺序时每块只有一个要素，读取后立即求交并写出
+        int blockSize = hilbertOrder ? HILBERT_BLOCK_SIZE : 1;
+        List<PendingRow> block = new ArrayList<>();
+        Envelope shp2Bounds = hilbertOrder ? shp2Index.getBounds() : null;
         try (PrintWriter writer = new PrintWriter(
                 new java.io.BufferedWriter(new FileWriter(csvFile, false), CSV_BUFFER_SIZE));
                 SimpleFeatureIterator iterator1 = collection1.features()) {
             // 写入表头
             writeCsvHeader(writer, shp1FieldNames, groupField, uniqueGroupValues);
             
-            int processedCount = 0;
             int skippedCount = 0;
             int writtenCount = 0;
             
-            while (iterator1.hasNext()) {
+            while (true) {
+                boolean more = iterator1.hasNext();
+                if (!block.isEmpty() && (block.size() >= blockSize || !more)) {
+                    if (hilbertOrder) {
+                        // 相邻要素的查询落在相同的树节点上
+                        block.sort(Comparator.comparingLong(row -> row.hilbert));
+                    }
+                    for (PendingRow row : block) {
+                        row.result = calculateIntersections(row.geom, row.geom.getEnvelopeInternal(), shp2Index,
+                                row.feature.getID(), groupField, geodesic, row.zoneTransform, diagnostics,
+                                queryPhase, overlayPhase);
+                        metrics.candidates(row.result.candidates);
+                        if (profiler != null) {
+                            profiler.record(row.feature.getID(), row.result.queryNanos, row.result.overlayNanos,
+                                    row.result.candidates, row.result.count, row.geom.getNumPoints(),
+                                    row.result.candidateVertices);
+                        }
+                    }
+                    if (hilbertOrder) {
+                        block.sort(Comparator.comparingInt(row -> row.record));
+                    }
+                    for (PendingRow row : block) {
+                        totalIntersectionArea += row.result.area;
+                        long writeStart = System.nanoTime();
+                        writeCsvRow(writer, row.feature, shp1FieldNames, row.featureArea, row.result.area, 
+                                row.result.count, groupField, row.result.groupStats, uniqueGroupValues);
+                        writer.flush(); // 确保数据立即写入
+                        writePhase.add(System.nanoTime() - writeStart, 1, 0);
+                        writtenCount++;
+                    }
+                    block.clear();
+                }
+                if (!more) {
+                    break;
+                }
                 SimpleFeature feature = iterator1.next();
+                progress.step();
                 Object geomObj = feature.getDefaultGeometry();
                 if (geomObj instanceof Geometry) {
                     Geometry geom = (Geometry) geomObj;
-                    if (!geom.isEmpty() && geom.isValid()) {
-                        geom = transformGeometry(geom, transform1, feature.getID());
+                    if (!geom.isEmpty() && isSourceGeometryValid(geom, feature.getID(), validity1)) {
+                        geom = transformGeometry(geom, transform1, domain1, diagnostics, feature.getID(), transformPhase);
                         if (geom == null) {
                             skippedCount++;
                             continue;
                         }
                         
+                        // auto-local：要素及其所有交集使用同一个投影带
+                        MathTransform zoneTransform = null;
+                        double featureArea;
+                        long areaStart = System.nanoTime();
+                        try {
+                            if (local != null) {
+                                zoneTransform = local.transformFor(geom);
+                            }
+                            featureArea = areaOf(geom, geodesic, zoneTransform);
+                            areaPhase.add(System.nanoTime() - areaStart, 1, 0);
+                        } catch (Exception e) {
+                            diagnostics.record(Diagnostics.Category.AREA_FAILED, feature.getID(), e);
+                            skippedCount++;
+                            continue;
+                        }
+
                         processedCount++;
-                        double featureArea = geom.getArea();
-                        Envelope geomEnv = geom.getEnvelopeInternal();
-                        IntersectionResult result = calculateIntersections(geom, geomEnv, strTree, 
-                                feature.getID(), groupField, geomToGroup);
-                        
-                        totalIntersectionArea += result.area;
-                        writeCsvRow(writer, feature, shp1FieldNames, featureArea, result.area, 
-                                result.count, groupField, result.groupStats, uniqueGroupValues);
-                        writer.flush(); // 确保数据立即写入
-                        writtenCount++;
+                        shp1Vertices += geom.getNumPoints();
+                        PendingRow row = new PendingRow(processedCount, feature, geom, zoneTransform, featureArea);
+                        if (hilbertOrder) {
+                            Envelope env = geom.getEnvelopeInternal();
+                            row.hilbert = PackedHilbertRTree.hilbert((env.getMinX() + env.getMaxX()) / 2,
+                                    (env.getMinY() + env.getMaxY()) / 2, shp2Bounds.getMinX(), shp2Bounds.getMinY(),
+                                    shp2Bounds.getWidth(), shp2Bounds.getHeight());
+                        }
+                        block.add(row);
                     } else {
                         skippedCount++;
                     }
@@ -1310,35 +2391,85 @@ public class gcheckshp {
             logger.warning("Failed to write CSV file: " + csvFile.getAbsolutePath() + " - " + e.getMessage());
             e.printStackTrace();
         }
+        progress.finish();
+        shp1Span.end(processedCount, shp1Vertices);
         return totalIntersectionArea;
     }
     
-    // 计算与STRtree中几何的交集
-    private static IntersectionResult calculateIntersections(Geometry geom, Envelope geomEnv,
-            org.locationtech.jts.index.strtree.STRtree strTree, String featureId,
-            String groupField, Map<Geometry, String> geomToGroup) {
+    // 已转换、已计算面积、等待求交和写出的shp1要素；record为读取顺序，hilbert为排序键
+    private static final class PendingRow {
+        final int record;
+        final SimpleFeature feature;
+        final Geometry geom;
+        final MathTransform zoneTransform;
+        final double featureArea;
+        long hilbert;
+        IntersectionResult result;
+        
+        PendingRow(int record, SimpleFeature feature, Geometry geom, MathTransform zoneTransform, double featureArea) {
+            this.record = record;
+            this.feature = feature;
+            this.geom = geom;
+            this.zoneTransform = zoneTransform;
+            this.featureArea = featureArea;
+        }
+    }
+    
+    // 计算与shp2索引中几何的交集
+    static IntersectionResult calculateIntersections(Geometry geom, Envelope geomEnv, Shp2Index shp2Index,
+            String featureId, String groupField, GeodesicArea geodesic,
+            MathTransform zoneTransform, Diagnostics diagnostics, RunMetrics.Phase queryPhase,
+            RunMetrics.Phase overlayPhase) {
         double intersectionArea = 0.0;
         int intersectingShp2Count = 0;
         Map<String, GroupStats> groupStats = groupField != null ? new HashMap<>() : null;
-        List<?> possibleGeoms = strTree.query(geomEnv);
+        long candidateVertices = 0;
+        long queryStart = System.nanoTime();
+        GeometryEvents.IndexQueryEvent queryEvent = new GeometryEvents.IndexQueryEvent();
+        queryEvent.begin();
+        int candidates = shp2Index.query(geomEnv);
+        queryEvent.end();
+        if (queryEvent.shouldCommit()) {
+            queryEvent.featureId = featureId;
+            queryEvent.candidates = candidates;
+            queryEvent.indexKind = shp2Index.kind();
+            queryEvent.commit();
+        }
+        long queryNanos = System.nanoTime() - queryStart;
+        queryPhase.add(queryNanos, 1, 0);
+        long overlayStart = System.nanoTime();
+        // 候选的首个顶点落在要素内时必然相交，省去 intersects 的完整拓扑判断
+        PolygonVertexFilter vertexFilter = candidates == 0 ? null : PolygonVertexFilter.of(geom);
         
-        for (Object obj : possibleGeoms) {
-            Geometry shp2Geom = (Geometry) obj;
+        for (int c = 0; c < candidates; c++) {
+            // 索引只返回包络相交的项，紧凑存储中的候选此时才构造几何
+            Geometry shp2Geom = shp2Index.candidate(c);
             Envelope shp2Env = shp2Geom.getEnvelopeInternal();
             // 先检查envelope是否相交，避免不必要的几何计算
             if (shp2Env.intersects(geomEnv)) {
                 // 进一步检查几何是否真正相交
-                if (shp2Geom.intersects(geom)) {
+                if ((vertexFilter != null && vertexFilter.containsVertexOf(shp2Geom)) || shp2Geom.intersects(geom)) {
                     try {
+                        candidateVertices += shp2Geom.getNumPoints();
+                        GeometryEvents.OverlayEvent overlayEvent = new GeometryEvents.OverlayEvent();
+                        overlayEvent.begin();
                         Geometry intersection = geom.intersection(shp2Geom);
+                        overlayEvent.end();
+                        if (overlayEvent.shouldCommit()) {
+                            overlayEvent.featureId = featureId;
+                            overlayEvent.vertices = geom.getNumPoints();
+                            overlayEvent.candidateVertices = shp2Geom.getNumPoints();
+                            overlayEvent.resultVertices = intersection != null ? intersection.getNumPoints() : 0;
+                            overlayEvent.commit();
+                        }
                         if (intersection != null && !intersection.isEmpty()) {
-                            double interArea = intersection.getArea();
+                            double interArea = areaOf(intersection, geodesic, zoneTransform);
                             intersectionArea += interArea;
                             intersectingShp2Count++;
                             
                             // 如果启用了分组统计，记录分组信息
-                            if (groupField != null && geomToGroup != null && groupStats != null) {
-                                String groupKey = geomToGroup.get(shp2Geom);
+                            if (groupField != null && groupStats != null) {
+                                String groupKey = shp2Index.group(c, shp2Geom);
                                 if (groupKey != null) {
                                     groupStats.computeIfAbsent(groupKey, k -> new GroupStats())
                                             .addArea(interArea);
@@ -1347,87 +2478,350 @@ public class gcheckshp {
                             }
                         }
                     } catch (Exception e) {
-                        logger.warning("Failed to calculate intersection for feature " + featureId
-                                + ": " + e.getMessage());
+                        diagnostics.record(Diagnostics.Category.OVERLAY_FAILED, featureId, e);
                     }
                 }
             }
         }
-        return new IntersectionResult(intersectionArea, intersectingShp2Count, groupStats);
+        long overlayNanos = System.nanoTime() - overlayStart;
+        overlayPhase.add(overlayNanos, 1, geom.getNumPoints());
+        return new IntersectionResult(intersectionArea, intersectingShp2Count, groupStats, candidates,
+                queryNanos, overlayNanos, candidateVertices);
+    }
+    
+    // 几何面积：指定椭球时按经纬度计算椭球面积，指定投影带转换时在该带内计算，否则为平面面积
+    static double areaOf(Geometry geom, GeodesicArea geodesic, MathTransform zoneTransform) throws Exception {
+        if (geodesic != null) {
+            return geodesic.area(geom);
+        }
+        if (zoneTransform != null) {
+            return org.geotools.geometry.jts.JTS.transform(geom, zoneTransform).getArea();
+        }
+        return geom.getArea();
+    }
+    
+    // 交集结果封装类
+    static class IntersectionResult {
+        final double area;
+        final int count;
+        final Map<String, GroupStats> groupStats;
+        // STRtree 返回的候选数
+        final int candidates;
+        // 候选查询和叠加耗时（纳秒），参与叠加的候选顶点数
+        final long queryNanos;
+        final long overlayNanos;
+        final long candidateVertices;
+        
+        IntersectionResult(double area, int count, Map<String, GroupStats> groupStats, int candidates,
+                long queryNanos, long overlayNanos, long candidateVertices) {
+            this.area = area;
+            this.count = count;
+            this.groupStats = groupStats;
+            this.candidates = candidates;
+            this.queryNanos = queryNanos;
+            this.overlayNanos = overlayNanos;
+            this.candidateVertices = candidateVertices;
+        }
+    }
+    
+    // 分组统计信息
+    static class GroupStats {
+        double area = 0.0;
+        int count = 0;
+        
+        void addArea(double area) {
+            this.area += area;
+        }
+        
+        void incrementCount() {
+            this.count++;
+        }
+    }
+    
+    // 转换几何坐标系：先按目标坐标系的适用范围筛选或裁剪（domain可为null），转换后无效的几何尝试修复；
+    // 失败和修复记入 diagnostics，不逐要素写日志。返回null表示跳过该要素
+    static Geometry transformGeometry(Geometry geom, MathTransform transform, DomainOfValidityFilter domain,
+            Diagnostics diagnostics, String featureId, RunMetrics.Phase phase) {
+        if (transform == null) {
+            return geom;
+        }
+        if (phase == null) {
+            return transformAndRepair(geom, transform, domain, diagnostics, featureId);
+        }
+        long start = System.nanoTime();
+        Geometry result = transformAndRepair(geom, transform, domain, diagnostics, featureId);
+        phase.add(System.nanoTime() - start, 1, geom.getNumPoints());
+        return result;
+    }
+
+    private static Geometry transformAndRepair(Geometry geom, MathTransform transform, DomainOfValidityFilter domain,
+            Diagnostics diagnostics, String featureId) {
+        if (domain != null) {
+            geom = domain.apply(geom);
+            if (geom == null) {
+                return null;
+            }
+        }
+        Geometry transformed;
+        GeometryEvents.TransformEvent event = new GeometryEvents.TransformEvent();
+        event.begin();
+        try {
+            transformed = org.geotools.geometry.jts.JTS.transform(geom, transform);
+        } catch (Exception e) {
+            diagnostics.record(Diagnostics.Category.TRANSFORM_FAILED, featureId, e);
+            return null;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.featureId = featureId;
+            event.vertices = geom.getNumPoints();
+            event.commit();
+        }
+        // 只检查几何对象的有效性，不需要检查坐标
+        if (GeometryEvents.isValid(transformed, featureId)) {
+            return transformed;
+        }
+        // 尝试修复几何对象
+        try {
+            Geometry fixed = GeometryEvents.fix(transformed, featureId);
+            if (fixed.isValid()) {
+                diagnostics.record(Diagnostics.Category.TRANSFORM_REPAIRED, featureId);
+                return fixed;
+            }
+            diagnostics.record(Diagnostics.Category.TRANSFORM_INVALID, featureId);
+        } catch (Exception e) {
+            diagnostics.record(Diagnostics.Category.TRANSFORM_INVALID, featureId, e);
+        }
+        return null;
+    }
+    
+    // 未转换的几何无效时尝试修复；无法修复时返回null
+    private static Geometry repairGeometry(Geometry geom, Diagnostics diagnostics, String featureId) {
+        if (GeometryEvents.isValid(geom, featureId)) {
+            return geom;
+        }
+        try {
+            Geometry fixed = GeometryEvents.fix(geom, featureId);
+            if (fixed.isValid()) {
+                diagnostics.record(Diagnostics.Category.SOURCE_REPAIRED, featureId);
+                return fixed;
+            }
+            diagnostics.record(Diagnostics.Category.SOURCE_INVALID, featureId);
+        } catch (Exception e) {
+            diagnostics.record(Diagnostics.Category.SOURCE_INVALID, featureId, e);
+        }
+        return null;
+    }
+    
+    // 写入面积CSV的一行：所有属性字段 + 面积
+    private static void writeAreaRow(PrintWriter writer, SourceRecord feature, List<String> fieldNames, double area) {
+        StringBuilder line = new StringBuilder();
+        for (String fieldName : fieldNames) {
+            Object val = feature.getAttribute(fieldName);
+            line.append(escapeCsv(val != null ? val.toString() : "")).append(CSV_SEPARATOR);
+        }
+        line.append(String.format(AREA_FORMAT, area));
+        writer.println(line.toString());
+    }
+
+    // 创建面积引擎；使用 GeoTools 读取器、指定 --engine jts 或缺少CRS信息时返回null
+    private static ShoelaceAreaEngine createAreaEngine(MappedShapefileReader reader, ValiditySidecar validity,
+            MathTransform transform, GeodesicArea geodesic, LocalZoneProjection local, CoordinateReferenceSystem crs,
+            AreaOptions options) {
+        if (reader == null || options.jtsEngine || (transform == null && crs == null)) {
+            return null;
+        }
+        return new ShoelaceAreaEngine(reader, validity, transform, geodesic, local, options.threads);
+    }
+
+    // 读取有效性旁车文件（.vld），不存在或与.shp内容不匹配时返回null
+    private static ValiditySidecar loadValiditySidecar(File shpFile) {
+        ValiditySidecar validity = ValiditySidecar.load(shpFile);
+        if (validity != null) {
+            System.out.println("Validity sidecar found for " + shpFile.getName() + ": "
+                    + validity.getKnownValidCount() + " of " + validity.getRecordCount()
+                    + " records already validated");
+        }
+        return validity;
+    }
+
+    // 判断源几何对象是否有效：旁车文件中已记录为有效的记录直接跳过 IsValidOp
+    // 注意：仅适用于从shapefile读出的原始几何，转换或合并后的几何仍需重新校验
+    private static boolean isSourceGeometryValid(Geometry geom, String featureId, ValiditySidecar validity) {
+        if (validity != null && validity.isKnownValid(featureId)) {
+            return true;
+        }
+        return GeometryEvents.isValid(geom, featureId);
+    }
+
+    // 源记录：几何对象与属性都按需读取，接口与 SimpleFeature 中用到的部分保持一致
+    private static final class SourceRecord {
+        private final String id;
+        private final SimpleFeature feature;
+        private final MappedShapefileReader reader;
+        private final MappedDbfReader dbf;
+        private final Map<String, Integer> fieldIndexes;
+        private final int record;
+        private Object geometry;
+        private boolean decoded;
+
+        SourceRecord(SimpleFeature feature) {
+            this.id = feature.getID();
+            this.feature = feature;
+            this.reader = null;
+            this.dbf = null;
+            this.fieldIndexes = null;
+            this.record = -1;
+            this.geometry = feature.getDefaultGeometry();
+            this.decoded = true;
+        }
+
+        SourceRecord(MappedShapefileReader reader, MappedDbfReader dbf, Map<String, Integer> fieldIndexes, int record) {
+            this.id = reader.featureId(record);
+            this.feature = null;
+            this.reader = reader;
+            this.dbf = dbf;
+            this.fieldIndexes = fieldIndexes;
+            this.record = record;
+        }
+
+        String getID() {
+            return id;
+        }
+
+        // 从0开始的记录序号；来自 GeoTools 迭代器时为-1
+        int getRecordIndex() {
+            return record;
+        }
+
+        Object getDefaultGeometry() {
+            if (!decoded) {
+                try {
+                    geometry = reader.readGeometry(record, MappedShapefileReader.PACKED_FACTORY);
+                } catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+                decoded = true;
+            }
+            return geometry;
+        }
+
+        Object getAttribute(String name) {
+            if (feature != null) {
+                return feature.getAttribute(name);
+            }
+            Integer index = fieldIndexes.computeIfAbsent(name, dbf::indexOf);
+            return index >= 0 ? dbf.getValue(record, index) : null;
+        }
     }
-    
-    // 交集结果封装类
-    private static class IntersectionResult {
-        final double area;
-        final int count;
-        final Map<String, GroupStats> groupStats;
-        
-        IntersectionResult(double area, int count, Map<String, GroupStats> groupStats) {
-            this.area = area;
-            this.count = count;
-            this.groupStats = groupStats;
+
+    // 源记录迭代器：优先使用内存映射读取器，无法映射时退回 GeoTools 迭代器
+    private static final class SourceRecordIterator implements AutoCloseable {
+        private final MappedShapefileReader reader;
+        private final MappedDbfReader dbf;
+        private final Envelope filter;
+        private final Map<String, Integer> fieldIndexes = new HashMap<>();
+        private final SimpleFeatureIterator features;
+        private int nextRecord;
+        private SourceRecord pending;
+
+        private SourceRecordIterator(MappedShapefileReader reader, MappedDbfReader dbf, Envelope filter) {
+            this.reader = reader;
+            this.dbf = dbf;
+            this.filter = filter;
+            this.features = null;
         }
-    }
-    
-    // 分组统计信息
-    private static class GroupStats {
-        double area = 0.0;
-        int count = 0;
-        
-        void addArea(double area) {
-            this.area += area;
+
+        private SourceRecordIterator(SimpleFeatureIterator features) {
+            this.reader = null;
+            this.dbf = null;
+            this.filter = null;
+            this.features = features;
         }
-        
-        void incrementCount() {
-            this.count++;
+
+        // 内存映射读取器，使用 GeoTools 迭代器时为null
+        MappedShapefileReader getReader() {
+            return reader;
         }
-    }
-    
-    // 显示进度条
-    private static void showProgress(int current, int total, String prefix) {
-        // 禁用进度条显示，保持控制台输出简洁
-        return;
-    }
-    
-    // 转换几何坐标系
-    private static Geometry transformGeometry(Geometry geom, MathTransform transform, String featureId) {
-        if (transform != null) {
-            try {
-                Geometry transformed = org.geotools.geometry.jts.JTS.transform(geom, transform);
-                // 只检查几何对象的有效性，不需要检查坐标
-                if (!transformed.isValid()) {
-                    // 尝试修复几何对象
-                    try {
-                        Geometry fixed = GeometryFixer.fix(transformed);
-                        if (fixed.isValid()) {
-                            logger.warning("Fixed invalid geometry after transformation (feature " + featureId + ")");
-                            return fixed;
-                        } else {
-                            logger.warning("Skipping invalid geometry after transformation (feature " + featureId + ", cannot be fixed)");
-                            return null;
-                        }
-                    } catch (Exception fixEx) {
-                        logger.warning("Skipping invalid geometry after transformation (feature " + featureId + ", fix failed)");
-                        return null;
+
+        boolean hasNext() throws IOException {
+            if (features != null) {
+                return features.hasNext();
+            }
+            while (pending == null && nextRecord < reader.getRecordCount()) {
+                int record = nextRecord++;
+                if (dbf.isDeleted(record)) {
+                    continue;
+                }
+                // 用记录头中的包络筛选，落在范围外的记录不解码坐标；空几何不满足相交条件
+                if (filter != null) {
+                    Envelope env = reader.readEnvelope(record);
+                    if (env == null || !env.intersects(filter)) {
+                        continue;
                     }
                 }
-                return transformed;
-            } catch (Exception e) {
-                logger.warning("Failed to transform geometry from shp1 (feature " + featureId + "): " + e.getMessage());
-                return null;
+                pending = new SourceRecord(reader, dbf, fieldIndexes, record);
+            }
+            return pending != null;
+        }
+
+        SourceRecord next() throws IOException {
+            if (features != null) {
+                return new SourceRecord(features.next());
+            }
+            if (!hasNext()) {
+                throw new java.util.NoSuchElementException();
+            }
+            SourceRecord record = pending;
+            pending = null;
+            return record;
+        }
+
+        // 关闭后通过本迭代器读取的记录不能再读取几何或属性；已解码的几何对象不受影响
+        @Override
+        public void close() {
+            if (features != null) {
+                features.close();
+            } else {
+                reader.close();
+                dbf.close();
             }
         }
-        return geom;
     }
-    
+
+    /**
+     * 打开shapefile的源记录迭代器。filter不为null时只返回包络与其相交的记录（已过滤的GeoTools集合无需再传filter）。
+     * .shp/.shx/.dbf 无法映射（如缺少.shx或文件超过2GB）时使用 GeoTools 迭代 fallback 集合。
+     */
+    private static SourceRecordIterator openSourceRecords(File shpFile, SimpleFeatureCollection fallback, Envelope filter) {
+        MappedShapefileReader reader = null;
+        try {
+            reader = MappedShapefileReader.open(shpFile);
+            MappedDbfReader dbf = MappedDbfReader.open(shpFile, Charset.forName("UTF-8"));
+            if (dbf.getRecordCount() >= reader.getRecordCount()) {
+                return new SourceRecordIterator(reader, dbf, filter);
+            }
+            dbf.close();
+            reader.close();
+            logger.warning("Record count mismatch between .shp and .dbf of " + shpFile.getName()
+                    + ", using GeoTools reader");
+        } catch (IOException e) {
+            if (reader != null) {
+                reader.close();
+            }
+            logger.fine("Memory-mapped reader unavailable for " + shpFile.getName() + ": " + e.getMessage());
+        }
+        return new SourceRecordIterator(fallback.features());
+    }
+
     // 健壮的合并策略：逐个合并几何对象，跳过有问题的几何对象
     // 使用空间排序和UnaryUnionOp优化性能
-    private static Geometry mergeGeometriesRobustly(List<Geometry> geometries) {
-        return mergeGeometriesRobustly(geometries, null, 0, 0);
+    static Geometry mergeGeometriesRobustly(List<Geometry> geometries) {
+        return mergeGeometriesRobustly(geometries, null);
     }
     
-    // 带进度显示的合并方法
-    private static Geometry mergeGeometriesRobustly(List<Geometry> geometries, String progressPrefix, int currentBatch, int totalBatches) {
+    // 带进度显示的合并方法：progress 可为null，几何对象较多时每合并一个中等批次前进一步
+    private static Geometry mergeGeometriesRobustly(List<Geometry> geometries, RunMetrics.Progress progress) {
         if (geometries == null || geometries.isEmpty()) {
             return null;
         }
@@ -1435,11 +2829,6 @@ public class gcheckshp {
             return geometries.get(0);
         }
         
-        // 显示进度
-        if (progressPrefix != null && totalBatches > 0) {
-            showProgress(currentBatch, totalBatches, progressPrefix);
-        }
-        
         // 对于大量几何对象，先进行空间排序，然后使用空间聚类策略
         final int LARGE_BATCH_SIZE = 100; // 超过100个几何对象时使用空间聚类
         if (geometries.size() > LARGE_BATCH_SIZE) {
@@ -1460,13 +2849,13 @@ public class gcheckshp {
             // 使用中等批次大小进行分批合并
             final int MEDIUM_BATCH_SIZE = 50;
             List<Geometry> mergedBatches = new ArrayList<>();
-            int numBatches = (geometries.size() + MEDIUM_BATCH_SIZE - 1) / MEDIUM_BATCH_SIZE;
             for (int i = 0; i < geometries.size(); i += MEDIUM_BATCH_SIZE) {
                 int end = Math.min(i + MEDIUM_BATCH_SIZE, geometries.size());
                 List<Geometry> batch = new ArrayList<>(geometries.subList(i, end));
-                int batchNum = i / MEDIUM_BATCH_SIZE + 1;
-                String batchPrefix = progressPrefix != null ? progressPrefix + " (batch " + batchNum + "/" + numBatches + ")" : null;
-                Geometry batchResult = mergeGeometriesRobustly(batch, batchPrefix, batchNum, numBatches);
+                if (progress != null) {
+                    progress.step();
+                }
+                Geometry batchResult = mergeGeometriesRobustly(batch, null);
                 // 在每个批次合并后立即验证（只检查几何有效性）
                 if (batchResult != null && !batchResult.isEmpty() && batchResult.isValid()) {
                     mergedBatches.add(batchResult);
@@ -1479,7 +2868,7 @@ public class gcheckshp {
                 return mergedBatches.get(0);
             }
             // 递归合并批次
-            return mergeGeometriesRobustly(mergedBatches, progressPrefix, 0, 0);
+            return mergeGeometriesRobustly(mergedBatches, progress);
         }
         
         // 在合并前，先修复所有几何对象（只检查几何有效性）
@@ -1519,7 +2908,20 @@ public class gcheckshp {
         try {
             org.locationtech.jts.operation.union.UnaryUnionOp unaryUnion = 
                 new org.locationtech.jts.operation.union.UnaryUnionOp(fixedGeometries);
+            GeometryEvents.UnionBatchEvent event = new GeometryEvents.UnionBatchEvent();
+            event.begin();
             result = unaryUnion.union();
+            event.end();
+            if (event.shouldCommit()) {
+                int vertices = 0;
+                for (Geometry geom : fixedGeometries) {
+                    vertices += geom.getNumPoints();
+                }
+                event.geometries = fixedGeometries.size();
+                event.vertices = vertices;
+                event.resultVertices = result != null ? result.getNumPoints() : 0;
+                event.commit();
+            }
             
             // 验证合并结果
             if (result == null || result.isEmpty() || !result.isValid()) {
@@ -1605,7 +3007,7 @@ public class gcheckshp {
                     result = mergedBatches.get(0);
                 } else {
                     // 递归合并批次
-                    result = mergeGeometriesRobustly(mergedBatches, progressPrefix, 0, 0);
+                    result = mergeGeometriesRobustly(mergedBatches, progress);
                 }
             }
         }
@@ -1783,7 +3185,7 @@ public class gcheckshp {
     }
     
     // 写入CSV行
-    private static void writeCsvRow(PrintWriter writer, SimpleFeature feature, List<String> shp1FieldNames,
+    static void writeCsvRow(PrintWriter writer, SimpleFeature feature, List<String> shp1FieldNames,
             double featureArea, double intersectionArea, int intersectingShp2Count,
             String groupField, Map<String, GroupStats> groupStats, List<String> uniqueGroupValues) {
         StringBuilder line = new StringBuilder(shp1FieldNames.size() * 15 + 50); // 预分配容量
@@ -1810,12 +3212,12 @@ public class gcheckshp {
     // 既 merge 又 group：按分组合并后交叠统计，流式写入CSV
     private static double computeIntersectionsWithMergedGroupsAndWrite(SimpleFeatureCollection collection1,
             MathTransform transform1, List<String> shp1FieldNames, Geometry mergedShp2, 
-            Map<String, Geometry> mergedGroupGeoms, File csvFile, String groupField, List<String> uniqueGroupValues) {
+            Map<String, Geometry> mergedGroupGeoms, File csvFile, String groupField, List<String> uniqueGroupValues,
+            RunMetrics metrics) {
         double totalIntersectionArea = 0.0;
         Envelope mergedEnv = mergedShp2.getEnvelopeInternal();
         
-        int totalFeatures = collection1.size();
-        int currentFeature = 0;
+        RunMetrics.Progress progress = metrics.progress("shp1", collection1.size());
         
         try (PrintWriter writer = new PrintWriter(
                 new java.io.BufferedWriter(new FileWriter(csvFile, false), CSV_BUFFER_SIZE));
@@ -1825,16 +3227,12 @@ public class gcheckshp {
             
             while (iterator1.hasNext()) {
                 SimpleFeature feature = iterator1.next();
-                currentFeature++;
-                // 每处理5%或每100个要素显示一次进度
-                if (currentFeature % Math.max(1, totalFeatures / 20) == 0 || currentFeature == totalFeatures) {
-                    showProgress(currentFeature, totalFeatures, "  Computing intersections");
-                }
+                progress.step();
                 Object geomObj = feature.getDefaultGeometry();
                 if (geomObj instanceof Geometry) {
                     Geometry geom = (Geometry) geomObj;
                     if (!geom.isEmpty() && geom.isValid()) {
-                        geom = transformGeometry(geom, transform1, feature.getID());
+                        geom = transformGeometry(geom, transform1, null, Diagnostics.create(), feature.getID(), null);
                         if (geom == null) {
                             continue;
                         }
@@ -1892,41 +3290,18 @@ public class gcheckshp {
         } catch (IOException e) {
             logger.warning("Failed to write CSV file: " + e.getMessage());
         }
+        progress.finish();
         return totalIntersectionArea;
     }
 
     // 检测重叠的几何对象并分组（使用并查集算法）
-    private static List<List<Integer>> findOverlapGroups(List<Geometry> geometries) {
+    static List<List<Integer>> findOverlapGroups(List<Geometry> geometries) {
         int n = geometries.size();
         if (n == 0) {
             return new ArrayList<>();
         }
         
-        // 并查集：parent[i] = i 表示i是根节点
-        final int[] parent = new int[n];
-        for (int i = 0; i < n; i++) {
-            parent[i] = i;
-        }
-        
-        // 查找根节点（带路径压缩）
-        class UnionFind {
-            int find(int x) {
-                if (parent[x] != x) {
-                    parent[x] = find(parent[x]);
-                }
-                return parent[x];
-            }
-            
-            void union(int x, int y) {
-                int rootX = find(x);
-                int rootY = find(y);
-                if (rootX != rootY) {
-                    parent[rootX] = rootY;
-                }
-            }
-        }
-        
-        UnionFind uf = new UnionFind();
+        UnionFind uf = new UnionFind(n);
         
         // 构建空间索引以加速重叠检测
         org.locationtech.jts.index.strtree.STRtree index = new org.locationtech.jts.index.strtree.STRtree(STRTREE_NODE_CAPACITY);
@@ -1939,15 +3314,12 @@ public class gcheckshp {
         index.build();
         
         // 检测重叠并合并
-        int checkedCount = 0;
         for (int i = 0; i < n; i++) {
             Geometry geom1 = geometries.get(i);
             if (geom1 == null || geom1.isEmpty()) {
                 continue;
             }
             
-            checkedCount++;
-            
             Envelope env1 = geom1.getEnvelopeInternal();
             List<?> candidates = index.query(env1);
             
@@ -1976,30 +3348,18 @@ public class gcheckshp {
                 }
             }
         }
-        if (checkedCount > 0) {
-            System.out.println(); // 换行
-        }
-        
-        // 将并查集结果转换为分组列表
-        Map<Integer, List<Integer>> groups = new HashMap<>();
-        for (int i = 0; i < n; i++) {
-            int root = uf.find(i);
-            groups.computeIfAbsent(root, k -> new ArrayList<>()).add(i);
-        }
         
         // 只返回包含多个元素的组（单个元素不需要merge）
-        List<List<Integer>> result = new ArrayList<>();
-        for (List<Integer> group : groups.values()) {
-            if (group.size() > 1) {
-                result.add(group);
-            }
-        }
-        
-        return result;
+        return uf.groups();
     }
     
     // 将大的几何对象按空间网格分块，提高intersection计算效率
-    private static List<Geometry> splitGeometryIntoTiles(Geometry geom, int gridSize) {
+    static List<Geometry> splitGeometryIntoTiles(Geometry geom, int gridSize) {
+        return splitGeometryIntoTiles(geom, gridSize, null);
+    }
+
+    // progress 可为null，每个网格块前进一步
+    private static List<Geometry> splitGeometryIntoTiles(Geometry geom, int gridSize, RunMetrics.Progress progress) {
         List<Geometry> tiles = new ArrayList<>();
         Envelope geomEnv = geom.getEnvelopeInternal();
         double width = geomEnv.getWidth();
@@ -2008,15 +3368,11 @@ public class gcheckshp {
         double tileHeight = height / gridSize;
         
         GeometryFactory geomFactory = geom.getFactory();
-        int totalTiles = gridSize * gridSize;
-        int processedTiles = 0;
         
         for (int i = 0; i < gridSize; i++) {
             for (int j = 0; j < gridSize; j++) {
-                processedTiles++;
-                // 每处理10%显示一次进度
-                if (processedTiles % Math.max(1, totalTiles / 10) == 0 || processedTiles == totalTiles) {
-                    showProgress(processedTiles, totalTiles, "  Creating tiles");
+                if (progress != null) {
+                    progress.step();
                 }
                 
                 double minX = geomEnv.getMinX() + i * tileWidth;
@@ -2054,6 +3410,9 @@ public class gcheckshp {
                 }
             }
         }
+        if (progress != null) {
+            progress.finish();
+        }
         
         return tiles;
     }
@@ -2061,7 +3420,8 @@ public class gcheckshp {
     // 合并shp2后交叠统计，流式写入CSV（仅 merge 不 group 的情况）
     private static double computeIntersectionsWithMergedShp2AndWrite(SimpleFeatureCollection collection1,
             MathTransform transform1, List<String> shp1FieldNames, Geometry mergedShp2, File csvFile,
-            String groupField, Map<String, List<Geometry>> groupGeoms, List<String> uniqueGroupValues) {
+            String groupField, Map<String, List<Geometry>> groupGeoms, List<String> uniqueGroupValues,
+            RunMetrics metrics) {
         double totalIntersectionArea = 0.0;
         Envelope mergedEnv = mergedShp2.getEnvelopeInternal();
         
@@ -2113,7 +3473,7 @@ public class gcheckshp {
         List<Geometry> tiles = null;
         if (useTiling) {
             System.out.println("  Creating tiles...");
-            tiles = splitGeometryIntoTiles(mergedShp2, gridSize);
+            tiles = splitGeometryIntoTiles(mergedShp2, gridSize, metrics.progress("tiles", gridSize * gridSize));
             tileIndex = new org.locationtech.jts.index.strtree.STRtree(STRTREE_NODE_CAPACITY);
             for (Geometry tile : tiles) {
                 tileIndex.insert(tile.getEnvelopeInternal(), tile);
@@ -2122,8 +3482,7 @@ public class gcheckshp {
             System.out.println("  Created " + tiles.size() + " tiles. Using tiled intersection calculation.");
         }
         
-        int totalFeatures = collection1.size();
-        int currentFeature = 0;
+        RunMetrics.Progress progress = metrics.progress("shp1", collection1.size());
         
         try (PrintWriter writer = new PrintWriter(
                 new java.io.BufferedWriter(new FileWriter(csvFile, false), CSV_BUFFER_SIZE));
@@ -2133,16 +3492,12 @@ public class gcheckshp {
             
             while (iterator1.hasNext()) {
                 SimpleFeature feature = iterator1.next();
-                currentFeature++;
-                // 每处理5%或每100个要素显示一次进度
-                if (currentFeature % Math.max(1, totalFeatures / 20) == 0 || currentFeature == totalFeatures) {
-                    showProgress(currentFeature, totalFeatures, "  Computing intersections");
-                }
+                progress.step();
                 Object geomObj = feature.getDefaultGeometry();
                 if (geomObj instanceof Geometry) {
                     Geometry geom = (Geometry) geomObj;
                     if (!geom.isEmpty() && geom.isValid()) {
-                        geom = transformGeometry(geom, transform1, feature.getID());
+                        geom = transformGeometry(geom, transform1, null, Diagnostics.create(), feature.getID(), null);
                         if (geom == null) {
                             continue;
                         }
@@ -2233,6 +3588,7 @@ public class gcheckshp {
         } catch (IOException e) {
             logger.warning("Failed to write CSV file: " + e.getMessage());
         }
+        progress.finish();
         
         // 清理分块数据
         if (tiles != null) {
@@ -2251,20 +3607,28 @@ public class gcheckshp {
      * @param targetCRS EPSG:xxxx、纯数字EPSG、.tif/.tiff文件路径或.shp文件路径
      */
     public static void reprojectShapefile(String srcShp, String outShp, String targetCRS) throws Exception {
-        CoordinateReferenceSystem targetCRSObj = resolveTargetCRS(targetCRS);
+        reprojectShapefile(srcShp, Arrays.asList(outShp), Arrays.asList(targetCRS),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    // 一次读取源文件，同时写出多个目标坐标系的结果（outShps与targetCRSs一一对应）
+    // threads > 1 时读取线程解码要素、工作线程池分批转换几何、调用线程按记录顺序写出
+    private static void reprojectShapefile(String srcShp, List<String> outShps, List<String> targetCRSs,
+            int threads) throws Exception {
+        int targets = targetCRSs.size();
+        CoordinateReferenceSystem[] targetCRSObjs = new CoordinateReferenceSystem[targets];
+        for (int t = 0; t < targets; t++) {
+            targetCRSObjs[t] = resolveTargetCRS(targetCRSs.get(t));
+        }
         File srcFile = new File(srcShp);
         Map<String, Object> params = new HashMap<>();
         params.put("url", srcFile.toURI().toURL());
         ShapefileDataStoreFactory factory = new ShapefileDataStoreFactory();
-        Map<String, Object> outParams = new HashMap<>();
-        outParams.put("url", new File(outShp).toURI().toURL());
         ShapefileDataStore srcStore = null;
-        ShapefileDataStore outStore = null;
+        ShapefileDataStore[] outStores = new ShapefileDataStore[targets];
         try {
             srcStore = (ShapefileDataStore) factory.createDataStore(params);
-            outStore = (ShapefileDataStore) factory.createDataStore(outParams);
             srcStore.setCharset(Charset.forName("UTF-8"));
-            outStore.setCharset(Charset.forName("UTF-8"));
             SimpleFeatureSource srcFeatureSource = srcStore.getFeatureSource();
             SimpleFeatureCollection srcCollection = srcFeatureSource.getFeatures();
             SimpleFeatureType srcSchema = srcCollection.getSchema();
@@ -2272,47 +3636,134 @@ public class gcheckshp {
             if (sourceCRS == null) {
                 throw new Exception("Source shapefile missing CRS definition (no .prj file?)");
             }
-            MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRSObj, true);
-            SimpleFeatureType targetSchema = DataUtilities.createSubType(srcSchema, null, targetCRSObj);
-            outStore.createSchema(targetSchema);
-            Transaction transaction = new DefaultTransaction("reproject");
-            try (FeatureWriter<SimpleFeatureType, SimpleFeature> writer = 
-                    outStore.getFeatureWriterAppend(transaction);
-                    SimpleFeatureIterator it = srcCollection.features()) {
-                int processedCount = 0;
-                while (it.hasNext()) {
-                    SimpleFeature srcFeature = it.next();
-                    SimpleFeature newFeature = writer.next();
-                    for (int i = 0; i < srcFeature.getAttributeCount(); i++) {
-                        Object attr = srcFeature.getAttribute(i);
-                        if (attr instanceof Geometry) {
-                            Geometry geom = (Geometry) attr;
-                            Geometry newGeom = org.geotools.geometry.jts.JTS.transform(geom, transform);
-                            newFeature.setAttribute(i, newGeom);
-                        } else {
-                            newFeature.setAttribute(i, attr);
+            MathTransform[] transforms = new MathTransform[targets];
+            File[] outFiles = new File[targets];
+            for (int t = 0; t < targets; t++) {
+                transforms[t] = CRS.findMathTransform(sourceCRS, targetCRSObjs[t], true);
+                outFiles[t] = new File(outShps.get(t));
+            }
+            // 快速路径：.dbf 原样复制，只改写 .shp 坐标并重建 .shx；不支持时改用 GeoTools 逐要素写出
+            try {
+                BinaryReprojector.NullShapes[] nullShapes =
+                        BinaryReprojector.reproject(srcFile, outFiles, targetCRSObjs, transforms, threads);
+                for (int t = 0; t < targets; t++) {
+                    if (nullShapes[t].count > 0) {
+                        System.out.println("Note: " + nullShapes[t].count + " record(s) could not be read or "
+                                + "transformed to " + targetCRSs.get(t) + " and were written with null geometry (first: record "
+                                + (nullShapes[t].firstRecord + 1) + ").");
+                    }
+                }
+                return;
+            } catch (IOException e) {
+                System.out.println("Note: binary reprojection not possible (" + e.getMessage()
+                        + "), writing features through GeoTools instead.");
+                // 删除快速路径写出的部分结果及复制的属性表和坐标系文件，GeoTools 从头写出
+                deleteOutputs(outFiles);
+            } catch (Exception e) {
+                // 其他失败不改用 GeoTools，但同样不留下部分结果
+                deleteOutputs(outFiles);
+                throw e;
+            }
+            @SuppressWarnings("unchecked")
+            FeatureWriter<SimpleFeatureType, SimpleFeature>[] writers = new FeatureWriter[targets];
+            Transaction[] transactions = new Transaction[targets];
+            try (SimpleFeatureIterator it = srcCollection.features()) {
+                for (int t = 0; t < targets; t++) {
+                    Map<String, Object> outParams = new HashMap<>();
+                    outParams.put("url", outFiles[t].toURI().toURL());
+                    outStores[t] = (ShapefileDataStore) factory.createDataStore(outParams);
+                    outStores[t].setCharset(Charset.forName("UTF-8"));
+                    outStores[t].createSchema(DataUtilities.createSubType(srcSchema, null, targetCRSObjs[t]));
+                    transactions[t] = new DefaultTransaction("reproject");
+                    writers[t] = outStores[t].getFeatureWriterAppend(transactions[t]);
+                }
+                // 属性整体复制，只替换几何
+                OrderedBatchPipeline.Sink<SimpleFeature, Geometry[]> sink = (srcFeature, newGeoms) -> {
+                    for (int t = 0; t < targets; t++) {
+                        SimpleFeature newFeature = writers[t].next();
+                        newFeature.setAttributes(srcFeature.getAttributes());
+                        newFeature.setDefaultGeometry(newGeoms[t]);
+                        writers[t].write();
+                    }
+                };
+                OrderedBatchPipeline.Worker<SimpleFeature, Geometry[]> worker = srcFeature -> {
+                    Object geom = srcFeature.getDefaultGeometry();
+                    Geometry[] newGeoms = new Geometry[targets];
+                    if (geom instanceof Geometry) {
+                        for (int t = 0; t < targets; t++) {
+                            newGeoms[t] = org.geotools.geometry.jts.JTS.transform((Geometry) geom, transforms[t]);
                         }
                     }
-                    writer.write();
-                    processedCount++;
-                    // 每处理1000个要素后提示垃圾回收
-                    if (processedCount % 1000 == 0) {
-                        System.gc();
+                    return newGeoms;
+                };
+                if (threads > 1) {
+                    new OrderedBatchPipeline<SimpleFeature, Geometry[]>(threads, OrderedBatchPipeline.DEFAULT_BATCH_SIZE)
+                            .run(() -> it.hasNext() ? it.next() : null, worker, sink);
+                } else {
+                    while (it.hasNext()) {
+                        SimpleFeature srcFeature = it.next();
+                        sink.accept(srcFeature, worker.apply(srcFeature));
                     }
                 }
-                transaction.commit();
+                for (int t = 0; t < targets; t++) {
+                    writers[t].close();
+                    writers[t] = null;
+                    transactions[t].commit();
+                }
             } catch (Exception e) {
-                transaction.rollback();
+                // 与单目标时一致：先关闭写出器再回滚
+                for (int t = 0; t < targets; t++) {
+                    if (writers[t] != null) {
+                        writers[t].close();
+                        writers[t] = null;
+                    }
+                    if (transactions[t] != null) {
+                        transactions[t].rollback();
+                    }
+                }
                 throw e;
             } finally {
-                transaction.close();
+                for (int t = 0; t < targets; t++) {
+                    if (writers[t] != null) {
+                        writers[t].close();
+                    }
+                    if (transactions[t] != null) {
+                        transactions[t].close();
+                    }
+                }
             }
         } finally {
             if (srcStore != null)
                 srcStore.dispose();
-            if (outStore != null)
-                outStore.dispose();
+            for (ShapefileDataStore outStore : outStores) {
+                if (outStore != null)
+                    outStore.dispose();
+            }
+        }
+    }
+
+    // 目标坐标系参数拆分为列表：逗号或分号分隔
+    private static List<String> splitTargetCRS(String targetCRS) {
+        List<String> targets = new ArrayList<>();
+        for (String part : targetCRS.split("[,;]")) {
+            if (!part.trim().isEmpty()) {
+                targets.add(part.trim());
+            }
+        }
+        return targets;
+    }
+
+    // 多目标输出文件名后缀：EPSG代码取数字，参考文件取文件名，其余字符替换为下划线
+    private static String reprojectSuffix(String targetCRS) {
+        String value = targetCRS.trim();
+        if (value.toUpperCase().startsWith("EPSG:")) {
+            value = value.substring(5);
+        } else {
+            String name = new File(value).getName();
+            int dot = name.lastIndexOf('.');
+            value = dot > 0 ? name.substring(0, dot) : name;
         }
+        return value.replaceAll("[^A-Za-z0-9_-]", "_");
     }
 
     private static boolean checkCompanionFiles(File shpFile) {
@@ -2343,7 +3794,8 @@ public class gcheckshp {
         return ok;
     }
 
-    private static File createWorkingCopy(File original) {
+    // 确定清理输出文件；输出已存在时提示用户并返回null，不覆盖已有文件
+    private static File prepareCleanFile(File original) {
         File cleanFile = buildCleanFile(original);
         if (cleanFile == null) {
             return null;
@@ -2354,8 +3806,7 @@ public class gcheckshp {
             System.out.println("Warning: Clean file already exists: " + cleanFile.getAbsolutePath());
             System.out.println("The existing clean file may cause conflicts. Please delete it first or use a different output name.");
             System.out.println("Required files to delete:");
-            String[] extensions = { ".shp", ".shx", ".dbf", ".prj", ".cpg", ".fix", ".qix" };
-            for (String ext : extensions) {
+            for (String ext : CLEAN_OUTPUT_EXTENSIONS) {
                 File companionFile = companion(cleanFile, ext);
                 if (companionFile.exists()) {
                     System.out.println("  - " + companionFile.getName());
@@ -2363,10 +3814,6 @@ public class gcheckshp {
             }
             return null;
         }
-        
-        if (!copyShapefileFiles(original, cleanFile)) {
-            return null;
-        }
         return cleanFile;
     }
 
@@ -2378,32 +3825,6 @@ public class gcheckshp {
         return new File(parent, prefix + "_clean.shp");
     }
 
-    private static boolean copyShapefileFiles(File sourceShp, File targetShp) {
-        String[] extensions = { ".shp", ".shx", ".dbf", ".prj", ".cpg" };
-        for (String ext : extensions) {
-            File source = companion(sourceShp, ext);
-            File target = companion(targetShp, ext);
-            if (!source.exists()) {
-                if (".shp".equals(ext) || ".shx".equals(ext) || ".dbf".equals(ext)) {
-                    System.out.println("Missing companion file during copy: " + source.getName());
-                    return false;
-                }
-                deleteIfExists(target);
-                continue;
-            }
-            deleteIfExists(target);
-            try {
-                Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            } catch (Exception e) {
-                System.out.println(
-                        "Failed to copy file: " + source.getAbsolutePath() + " -> " + target.getAbsolutePath());
-                e.printStackTrace();
-                return false;
-            }
-        }
-        return true;
-    }
-
     private static File companion(File shpFile, String extension) {
         // File automatically handles / and \ as path separators on all platforms
         String path = shpFile.getAbsolutePath();
@@ -2418,59 +3839,160 @@ public class gcheckshp {
         }
     }
 
-    private static boolean shouldRemoveFeature(SimpleFeature feature, boolean showDetail,
-            List<String> issueDetails, GeometryStats stats, int[] detailCount) {
-        stats.total++;
-        Object geometryObject = feature.getDefaultGeometry();
+    // 删除各输出shapefile及其附属文件
+    private static void deleteOutputs(File[] outFiles) {
+        for (File outFile : outFiles) {
+            for (String extension : CLEAN_OUTPUT_EXTENSIONS) {
+                deleteIfExists(companion(outFile, extension));
+            }
+        }
+    }
 
-        if (!(geometryObject instanceof Geometry)) {
-            stats.nullGeometry++;
-            if (showDetail && detailCount[0] < 10000) {
-                issueDetails.add(feature.getID() + ": geometry attribute is missing or not recognized");
-                detailCount[0]++;
+    // 输出二进制预扫描结果
+    private static void printPrescreenSummary(ShpRecordScanner.Result prescreen) {
+        System.out.println("--- Binary Pre-screen ---");
+        System.out.println("Records scanned: " + prescreen.getRecordCount());
+        if (!prescreen.sequential) {
+            System.out.println(".shx offsets do not match the .shp record sequence; all records were validated with JTS");
+        } else {
+            System.out.println("Records cleared without JTS validation: " + prescreen.cleared);
+        }
+        System.out.println("Suspect records: " + prescreen.suspect);
+        for (int i = 0; i < ShpRecordScanner.FLAG_NAMES.length; i++) {
+            if (prescreen.flagCounts[i] > 0) {
+                System.out.println("  " + ShpRecordScanner.FLAG_NAMES[i] + ": " + prescreen.flagCounts[i]);
             }
-            return true;
+        }
+    }
+
+    // 校验单个要素，不修改任何共享状态，可在工作线程中并行执行
+    // needReason为false时不计算详细的校验错误信息；prescreen中已证明有效的记录跳过 IsValidOp
+    private static FeatureCheck checkFeature(SimpleFeature feature, boolean needReason,
+            ShpRecordScanner.Result prescreen) {
+        return checkGeometry(feature.getID(), feature.getDefaultGeometry(), needReason, prescreen);
+    }
+
+    private static FeatureCheck checkGeometry(String featureId, Object geometryObject, boolean needReason,
+            ShpRecordScanner.Result prescreen) {
+        if (!(geometryObject instanceof Geometry)) {
+            return new FeatureCheck(featureId, FeatureIssue.NULL_GEOMETRY, null, null, false, null);
         }
 
         Geometry geometry = (Geometry) geometryObject;
         if (geometry.isEmpty()) {
-            stats.emptyGeometry++;
-            if (showDetail && detailCount[0] < 10000) {
-                issueDetails.add(feature.getID() + ": geometry is empty");
-                detailCount[0]++;
-            }
-            return true;
+            return new FeatureCheck(featureId, FeatureIssue.EMPTY_GEOMETRY, null, null, false, null);
         }
 
-        if (!geometry.isValid()) {
-            stats.invalidGeometry++;
-            IsValidOp validator = new IsValidOp(geometry);
-            TopologyValidationError error = validator.getValidationError();
-            String reason = error != null ? error.getMessage() : "Unknown validation error";
+        if (prescreen != null && prescreen.isCleared(ValiditySidecar.recordIndexOf(featureId))) {
+            return FeatureCheck.VALID;
+        }
 
-            Geometry repaired = GeometryFixer.fix(geometry);
-            if (repaired != null && !repaired.isEmpty() && repaired.isValid()) {
-                stats.fixableGeometry++;
+        if (!GeometryEvents.isValid(geometry, featureId)) {
+            String reason = null;
+            Coordinate location = null;
+            if (needReason) {
+                IsValidOp validator = new IsValidOp(geometry);
+                TopologyValidationError error = validator.getValidationError();
+                reason = error != null ? error.getMessage() : "Unknown validation error";
+                location = error != null ? error.getCoordinate() : null;
             }
 
-            if (showDetail && detailCount[0] < 10000) {
-                StringBuilder detail = new StringBuilder();
-                detail.append(feature.getID())
-                        .append(": invalid geometry - ")
-                        .append(reason);
-                if (error != null && error.getCoordinate() != null) {
-                    detail.append(" @ ")
-                            .append(error.getCoordinate().x)
-                            .append(",")
-                            .append(error.getCoordinate().y);
+            Geometry repaired = GeometryEvents.fix(geometry, featureId);
+            boolean fixable = repaired != null && !repaired.isEmpty() && repaired.isValid();
+            return new FeatureCheck(featureId, FeatureIssue.INVALID_GEOMETRY, reason, location, fixable,
+                    fixable ? repaired : null);
+        }
+
+        return FeatureCheck.VALID;
+    }
+
+    // 按记录顺序汇总校验结果：更新统计并生成详细信息，返回是否应删除该要素
+    private static boolean applyFeatureCheck(FeatureCheck check, boolean showDetail,
+            List<String> issueDetails, GeometryStats stats, int[] detailCount) {
+        stats.total++;
+        if (check.issue == null) {
+            return false;
+        }
+
+        boolean addDetail = showDetail && detailCount[0] < MAX_DETAIL_ITEMS;
+        switch (check.issue) {
+            case NULL_GEOMETRY:
+                stats.nullGeometry++;
+                if (addDetail) {
+                    issueDetails.add(check.featureId + ": " + check.message());
+                    detailCount[0]++;
                 }
-                issueDetails.add(detail.toString());
-                detailCount[0]++;
-            }
-            return true;
+                break;
+            case EMPTY_GEOMETRY:
+                stats.emptyGeometry++;
+                if (addDetail) {
+                    issueDetails.add(check.featureId + ": " + check.message());
+                    detailCount[0]++;
+                }
+                break;
+            default:
+                stats.invalidGeometry++;
+                if (check.fixable) {
+                    stats.fixableGeometry++;
+                }
+                if (addDetail) {
+                    StringBuilder detail = new StringBuilder();
+                    detail.append(check.featureId)
+                            .append(": invalid geometry - ")
+                            .append(check.message());
+                    if (check.location != null) {
+                        detail.append(" @ ")
+                                .append(check.location.x)
+                                .append(",")
+                                .append(check.location.y);
+                    }
+                    issueDetails.add(detail.toString());
+                    detailCount[0]++;
+                }
+                break;
+        }
+        return true;
+    }
+
+    // 要素问题类型
+    private enum FeatureIssue {
+        NULL_GEOMETRY,
+        EMPTY_GEOMETRY,
+        INVALID_GEOMETRY
+    }
+
+    // 单个要素的校验结果，issue为null表示有效
+    private static final class FeatureCheck {
+        static final FeatureCheck VALID = new FeatureCheck(null, null, null, null, false, null);
+
+        final String featureId;
+        final FeatureIssue issue;
+        final String reason;
+        final Coordinate location;
+        final boolean fixable;
+        // GeometryFixer的修复结果（仅在可修复时保留）
+        final Geometry repaired;
+
+        FeatureCheck(String featureId, FeatureIssue issue, String reason, Coordinate location, boolean fixable,
+                Geometry repaired) {
+            this.featureId = featureId;
+            this.issue = issue;
+            this.reason = reason;
+            this.location = location;
+            this.fixable = fixable;
+            this.repaired = repaired;
         }
 
-        return false;
+        // 问题描述文本（用于控制台详细信息和问题报告）
+        String message() {
+            if (issue == FeatureIssue.NULL_GEOMETRY) {
+                return "geometry attribute is missing or not recognized";
+            }
+            if (issue == FeatureIssue.EMPTY_GEOMETRY) {
+                return "geometry is empty";
+            }
+            return reason != null ? reason : "Unknown validation error";
+        }
     }
 
     private static final class GeometryStats {
@@ -2585,7 +4107,7 @@ public class gcheckshp {
     /**
      * Escape special characters in CSV fields
      */
-    private static String escapeCsv(String value) {
+    static String escapeCsv(String value) {
         if (value == null) {
             return "";
         }
@@ -2613,7 +4135,34 @@ public class gcheckshp {
      * @param outputCSV 输出CSV文件路径（可选，如果为null则自动生成）
      */
     public static void calculatePolygonAreas(String shpPath, String outputCSV, String projectionCRS) {
+        calculatePolygonAreas(shpPath, outputCSV, projectionCRS, new AreaOptions());
+    }
+
+    // 面积模式的可选参数
+    private static final class AreaOptions {
+        // 面积引擎线程数
+        int threads = Runtime.getRuntime().availableProcessors();
+        // 为true时所有记录都走 JTS 路径
+        boolean jtsEngine;
+        // 为true时直接由经纬度计算椭球面积，不使用投影
+        boolean geodesic;
+        // 逐条写出诊断事件的文件（NDJSON或CSV），为null时只输出汇总
+        File diagnosticsFile;
+        // 分阶段指标的JSON报告文件，为null时不写出
+        File metricsFile;
+        // 为true时向stderr输出进度和预计剩余时间
+        boolean progress;
+    }
+
+    private static void calculatePolygonAreas(String shpPath, String outputCSV, String projectionCRS,
+            AreaOptions options) {
         ShapefileDataStore store = null;
+        Diagnostics diagnostics = null;
+        RunMetrics metrics = new RunMetrics("area", options.progress);
+        metrics.input("shp", shpPath);
+        metrics.input("projection", options.geodesic ? "geodesic" : projectionCRS);
+        metrics.input("engine", options.jtsEngine ? "jts" : "fast");
+        metrics.input("threads", options.threads);
         try {
             File shpFile = new File(shpPath);
             if (!shpFile.exists()) {
@@ -2635,11 +4184,13 @@ public class gcheckshp {
             SimpleFeatureType schema = collection.getSchema();
             CoordinateReferenceSystem crs = schema.getCoordinateReferenceSystem();
 
+            RunMetrics.Span crsSpan = metrics.begin("crs_resolution");
             // 确定用于面积计算的坐标系 - 必须使用投影坐标系以确保面积计算准确
             CoordinateReferenceSystem areaCalculationCRS = null;
             MathTransform transform = null;
             String areaUnit = "unknown";
             ReferencedEnvelope bounds = collection.getBounds();
+            ValiditySidecar validity = loadValiditySidecar(shpFile);
 
             if (crs == null) {
                 // 如果没有CRS信息，根据坐标范围推断是否为地理坐标系
@@ -2673,60 +4224,85 @@ public class gcheckshp {
                 }
             }
 
-            // 解析用户指定的投影，直接使用用户指定的坐标系进行转换
-            try {
-                if (projectionCRS == null || projectionCRS.trim().isEmpty()) {
-                    throw new IllegalArgumentException("Projection CRS is required. Please specify a projection using --projection option.");
+            // --geodesic：直接由经纬度计算椭球面积，不解析投影、不做坐标转换
+            GeodesicArea geodesic = null;
+            LocalZoneProjection local = null;
+            if (options.geodesic) {
+                try {
+                    geodesic = GeodesicArea.forCrs(crs);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Error: " + e.getMessage());
+                    return;
+                }
+                areaCalculationCRS = crs;
+                areaUnit = "square meters";
+            } else if (LocalZoneProjection.isAutoLocal(projectionCRS)) {
+                // auto-local：每个要素按包络中心选择 UTM / 高斯-克吕格投影带，在该带内计算面积
+                try {
+                    local = LocalZoneProjection.create(projectionCRS, crs);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Error: " + e.getMessage());
+                    return;
                 }
+                areaCalculationCRS = crs;
+                areaUnit = "square meters";
+            } else {
+                // 解析用户指定的投影，直接使用用户指定的坐标系进行转换
+                try {
+                    if (projectionCRS == null || projectionCRS.trim().isEmpty()) {
+                        throw new IllegalArgumentException("Projection CRS is required. Please specify a projection using --projection option.");
+                    }
                 
-                // 使用用户指定的投影（EPSG、TIF、SHP）
-                areaCalculationCRS = resolveTargetCRS(projectionCRS);
+                    // 使用用户指定的投影（EPSG、TIF、SHP）
+                    areaCalculationCRS = resolveTargetCRS(projectionCRS);
                 
-                // 创建转换：直接将shapefile转化为用户指定的坐标系
-                // 注意：如果原始shapefile的CRS与目标CRS相同，则跳过转换
-                // 这避免了不必要的identity transform，提高性能
-                if (crs != null) {
-                    if (CRS.equalsIgnoreMetadata(crs, areaCalculationCRS)) {
-                        transform = null; // CRS相同，跳过转换
-                    } else {
-                        transform = CRS.findMathTransform(crs, areaCalculationCRS, true);
+                    // 创建转换：直接将shapefile转化为用户指定的坐标系
+                    // 注意：如果原始shapefile的CRS与目标CRS相同，则跳过转换
+                    // 这避免了不必要的identity transform，提高性能
+                    if (crs != null) {
+                        if (CRS.equalsIgnoreMetadata(crs, areaCalculationCRS)) {
+                            transform = null; // CRS相同，跳过转换
+                        } else {
+                            transform = CRS.findMathTransform(crs, areaCalculationCRS, true);
+                        }
                     }
-                }
                 
-                // 确定面积单位
-                try {
-                    CoordinateSystem cs = areaCalculationCRS.getCoordinateSystem();
-                    if (cs != null && cs.getDimension() > 0) {
-                        CoordinateSystemAxis axis = cs.getAxis(0);
-                        if (axis != null) {
-                            String unit = axis.getUnit().toString();
-                            String unitLower = unit.toLowerCase();
-                            if (unitLower.contains("metre") || unitLower.contains("meter") || unitLower.equals("m")) {
-                                areaUnit = "square meters";
-                            } else if (unitLower.equals("ft") || unitLower.contains("foot") || unitLower.contains("feet")) {
-                                areaUnit = "square feet";
-                            } else if (unitLower.equals("km") || unitLower.contains("kilometre") || unitLower.contains("kilometer")) {
-                                areaUnit = "square kilometers";
-                            } else {
-                                // 使用ASCII兼容格式，避免Unicode字符显示问题
-                                areaUnit = "square " + unit;
+                    // 确定面积单位
+                    try {
+                        CoordinateSystem cs = areaCalculationCRS.getCoordinateSystem();
+                        if (cs != null && cs.getDimension() > 0) {
+                            CoordinateSystemAxis axis = cs.getAxis(0);
+                            if (axis != null) {
+                                String unit = axis.getUnit().toString();
+                                String unitLower = unit.toLowerCase();
+                                if (unitLower.contains("metre") || unitLower.contains("meter") || unitLower.equals("m")) {
+                                    areaUnit = "square meters";
+                                } else if (unitLower.equals("ft") || unitLower.contains("foot") || unitLower.contains("feet")) {
+                                    areaUnit = "square feet";
+                                } else if (unitLower.equals("km") || unitLower.contains("kilometre") || unitLower.contains("kilometer")) {
+                                    areaUnit = "square kilometers";
+                                } else {
+                                    // 使用ASCII兼容格式，避免Unicode字符显示问题
+                                    areaUnit = "square " + unit;
+                                }
                             }
                         }
-                    }
-                    if ("unknown".equals(areaUnit)) {
+                        if ("unknown".equals(areaUnit)) {
+                            areaUnit = "square units";
+                        }
+                    } catch (Exception e) {
                         areaUnit = "square units";
                     }
+                } catch (IllegalArgumentException e) {
+                    // 投影解析失败，直接输出错误信息并退出
+                    System.err.println("ERROR: " + e.getMessage());
+                    throw new RuntimeException("Failed to resolve projection: " + e.getMessage(), e);
                 } catch (Exception e) {
-                    areaUnit = "square units";
+                    System.err.println("ERROR: Failed to resolve projection: " + e.getMessage());
+                    throw new RuntimeException("Failed to resolve projection: " + e.getMessage(), e);
                 }
-            } catch (IllegalArgumentException e) {
-                // 投影解析失败，直接输出错误信息并退出
-                System.err.println("ERROR: " + e.getMessage());
-                throw new RuntimeException("Failed to resolve projection: " + e.getMessage(), e);
-            } catch (Exception e) {
-                System.err.println("ERROR: Failed to resolve projection: " + e.getMessage());
-                throw new RuntimeException("Failed to resolve projection: " + e.getMessage(), e);
             }
+            crsSpan.end();
 
             // 获取所有非几何字段名
             List<String> fieldNames = new ArrayList<>();
@@ -2752,10 +4328,21 @@ public class gcheckshp {
             double totalArea = 0.0;
             int featureCount = 0;
             int polygonCount = 0;
+            int fastCount = 0;
+            boolean fastEngine = false;
 
+            diagnostics = Diagnostics.open(options.diagnosticsFile);
+            // 读取、转换、计算面积和写CSV作为一个整段阶段计时
+            RunMetrics.Span areaSpan = metrics.begin("areas");
+            RunMetrics.Progress progress = metrics.progress("features",
+                    featureSource.getCount(org.geotools.api.data.Query.ALL));
+            long vertexCount = 0;
             try (PrintWriter writer = new PrintWriter(
                     new java.io.BufferedWriter(new FileWriter(csvFile, false), CSV_BUFFER_SIZE));
-                    SimpleFeatureIterator iterator = collection.features()) {
+                    SourceRecordIterator iterator = openSourceRecords(shpFile, collection, null);
+                    ShoelaceAreaEngine engine = createAreaEngine(iterator.getReader(), validity, transform, geodesic, local,
+                            crs, options)) {
+                fastEngine = engine != null;
                 
                 // 写入表头
                 StringBuilder header = new StringBuilder();
@@ -2767,71 +4354,103 @@ public class gcheckshp {
 
                 // 处理每个要素
                 while (iterator.hasNext()) {
-                    SimpleFeature feature = iterator.next();
+                    SourceRecord feature = iterator.next();
                     featureCount++;
+                    progress.step();
+                    // 已知有效的面记录直接由坐标缓冲区算出面积，其余记录走 JTS 路径
+                    if (engine != null) {
+                        double fastArea = engine.area(feature.getRecordIndex());
+                        if (fastArea == ShoelaceAreaEngine.SKIPPED) {
+                            continue;
+                        }
+                        if (!Double.isNaN(fastArea)) {
+                            totalArea += fastArea;
+                            polygonCount++;
+                            fastCount++;
+                            writeAreaRow(writer, feature, fieldNames, fastArea);
+                            continue;
+                        }
+                    }
                     Object geomObj = feature.getDefaultGeometry();
                     
                     if (geomObj instanceof Geometry) {
                         Geometry geom = (Geometry) geomObj;
-                        if (!geom.isEmpty() && geom.isValid()) {
+                        if (!geom.isEmpty() && isSourceGeometryValid(geom, feature.getID(), validity)) {
                             // 转换坐标系：如果原始shapefile的CRS与目标CRS不同，则进行转换
                             // 如果transform为null，说明CRS相同或CRS信息缺失
-                            if (transform != null) {
+                            if (local != null) {
+                                try {
+                                    geom = org.geotools.geometry.jts.JTS.transform(geom, local.transformFor(geom));
+                                } catch (Exception e) {
+                                    diagnostics.record(Diagnostics.Category.TRANSFORM_FAILED, feature.getID(), e);
+                                    continue;
+                                }
+                            } else if (transform != null) {
                                 try {
                                     geom = org.geotools.geometry.jts.JTS.transform(geom, transform);
                                 } catch (Exception e) {
-                                    logger.warning("Failed to transform geometry for feature " + feature.getID()
-                                            + ": " + e.getMessage());
+                                    diagnostics.record(Diagnostics.Category.TRANSFORM_FAILED, feature.getID(), e);
                                     continue;
                                 }
                             }
                             // 如果transform为null且crs也为null，说明CRS信息缺失，跳过该要素
                             // 如果transform为null但crs不为null，说明CRS相同，直接使用原几何对象
                             if (transform == null && crs == null) {
-                                logger.warning("Skipping feature " + feature.getID() + ": CRS information missing, cannot determine if transformation is needed");
+                                diagnostics.record(Diagnostics.Category.CRS_MISSING, feature.getID());
                                 continue;
                             }
 
                             String geomType = geom.getGeometryType();
                             if ("Polygon".equalsIgnoreCase(geomType) || "MultiPolygon".equalsIgnoreCase(geomType)) {
-                                double area = geom.getArea();
+                                double area = geodesic != null ? geodesic.area(geom) : geom.getArea();
                                 totalArea += area;
                                 polygonCount++;
-
-                                // 写入CSV行
-                                StringBuilder line = new StringBuilder();
-                                for (String fieldName : fieldNames) {
-                                    Object val = feature.getAttribute(fieldName);
-                                    line.append(escapeCsv(val != null ? val.toString() : "")).append(CSV_SEPARATOR);
-                                }
-                                line.append(String.format(AREA_FORMAT, area));
-                                writer.println(line.toString());
+                                vertexCount += geom.getNumPoints();
+                                writeAreaRow(writer, feature, fieldNames, area);
                             }
                         }
                     }
-                    
-                    // 每处理1000个要素后提示垃圾回收
-                    if (featureCount % 1000 == 0) {
-                        System.gc();
-                    }
                 }
             } catch (IOException e) {
                 System.out.println("Failed to write CSV file: " + e.getMessage());
                 e.printStackTrace();
                 return;
             }
+            progress.finish();
+            // 坐标缓冲区路径不构造几何对象，顶点数只统计 JTS 路径的要素
+            areaSpan.end(featureCount, vertexCount);
 
             // 输出统计结果
             System.out.println("=== Polygon Area Calculation ===");
             System.out.println("Shapefile: " + shpFile.getAbsolutePath());
             System.out.println("Total features: " + featureCount);
             System.out.println("Polygon/MultiPolygon features: " + polygonCount);
+            if (fastEngine) {
+                System.out.println(String.format("Computed from coordinate buffers: %d (%.1f%%), via JTS: %d", fastCount,
+                        polygonCount > 0 ? 100.0 * fastCount / polygonCount : 0.0, polygonCount - fastCount));
+                if (validity == null && fastCount < polygonCount) {
+                    // 没有旁车文件时只有预筛能证明有效的记录走坐标缓冲区
+                    System.out.println("Note: run checkshp on this file first; its .vld sidecar lets every valid record "
+                            + "use the coordinate buffers.");
+                }
+            }
             System.out.println("--- Area Calculation Settings ---");
             System.out.println("Coordinate System (CRS): "
                     + (areaCalculationCRS != null ? areaCalculationCRS.getName().toString() : "unknown"));
+            if (geodesic != null) {
+                System.out.println("Geodesic area on ellipsoid: " + geodesic.getEllipsoidName());
+            }
+            if (local != null) {
+                System.out.println("Local projection: " + local.describe() + ", zones used: " + local.getZoneCount());
+            }
             System.out.println("Area Unit: " + areaUnit);
             System.out.println("Total area: " + String.format("%.6f", totalArea) + " " + areaUnit);
             System.out.println("CSV file saved to: " + csvFile.getAbsolutePath());
+            diagnostics.printSummary(System.out);
+            if (options.diagnosticsFile != null) {
+                System.out.println("Diagnostics written to: " + options.diagnosticsFile.getAbsolutePath());
+            }
+            writeMetrics(metrics, options.metricsFile, diagnostics);
 
         } catch (Exception e) {
             System.out.println("Failed to calculate polygon areas: " + e.getMessage());
@@ -2840,6 +4459,7 @@ public class gcheckshp {
             if (store != null) {
                 store.dispose();
             }
+            closeDiagnostics(diagnostics);
         }
     }
 }
@@ -0,0 +1,138 @@
+package com.example.gcheckshp;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link RingKernels.Kernels} 的 SIMD 实现（jdk.incubator.vector），由 {@link RingKernels} 在模块可用时通过反射加载。
+ *
+ * 交错坐标直接按向量加载：偶数通道为x，奇数通道为y。面积把相邻两点的向量交换通道后相乘，
+ * 偶数通道与奇数通道之差即为叉积；点在环内判断按边批量比较，交点数取奇偶。
+ */
+final class VectorRingKernels implements RingKernels.Kernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    // 交换相邻通道：(x, y) -> (y, x)
+    private final VectorShuffle<Double> swap;
+    // 偶数通道为+1，奇数通道为-1
+    private final DoubleVector sign;
+    private final VectorMask<Double> evenLanes;
+    private final VectorMask<Double> oddLanes;
+    // 边批量读取时x坐标的下标（0, 2, 4, ...）
+    private final int[] strideIndex;
+
+    VectorRingKernels() {
+        if (LANES < 2) {
+            throw new IllegalStateException("Vector species too narrow: " + SPECIES);
+        }
+        swap = VectorShuffle.fromOp(SPECIES, i -> i ^ 1);
+        double[] signs = new double[LANES];
+        boolean[] even = new boolean[LANES];
+        strideIndex = new int[LANES];
+        for (int i = 0; i < LANES; i++) {
+            signs[i] = (i & 1) == 0 ? 1.0 : -1.0;
+            even[i] = (i & 1) == 0;
+            strideIndex[i] = i * 2;
+        }
+        sign = DoubleVector.fromArray(SPECIES, signs, 0);
+        evenLanes = VectorMask.fromArray(SPECIES, even, 0);
+        oddLanes = evenLanes.not();
+    }
+
+    @Override
+    public double signedArea(double[] coords, int from, int count) {
+        boolean closed = RingKernels.isClosed(coords, from, count);
+        if ((closed ? count : count + 1) < 3) {
+            return 0.0;
+        }
+        int base = from * 2;
+        int end = base + count * 2;
+        double x0 = coords[base];
+        double y0 = coords[base + 1];
+        // 以首点为原点：闭合边（末点到首点）的叉积为0，未闭合的环无需补点
+        DoubleVector origin = DoubleVector.broadcast(SPECIES, x0).blend(y0, oddLanes);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int k = base;
+        // 每次处理 LANES/2 条边：a 为 p[i..]，b 为 p[i+1..]
+        for (; k + LANES + 2 <= end; k += LANES) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, coords, k).sub(origin);
+            DoubleVector b = DoubleVector.fromArray(SPECIES, coords, k + 2).sub(origin).rearrange(swap);
+            acc = a.mul(b).fma(sign, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; k + 4 <= end; k += 2) {
+            sum += (coords[k] - x0) * (coords[k + 3] - y0) - (coords[k + 2] - x0) * (coords[k + 1] - y0);
+        }
+        // 叉积之和逆时针为正，JTS 约定顺时针为正
+        return -sum / 2.0;
+    }
+
+    @Override
+    public void envelope(double[] coords, int from, int count, double[] out) {
+        int base = from * 2;
+        int end = base + count * 2;
+        DoubleVector min = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        DoubleVector max = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        int k = base;
+        for (; k + LANES <= end; k += LANES) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, coords, k);
+            min = min.min(v);
+            max = max.max(v);
+        }
+        double minX = min.reduceLanes(VectorOperators.MIN, evenLanes);
+        double maxX = max.reduceLanes(VectorOperators.MAX, evenLanes);
+        double minY = min.reduceLanes(VectorOperators.MIN, oddLanes);
+        double maxY = max.reduceLanes(VectorOperators.MAX, oddLanes);
+        for (; k < end; k += 2) {
+            minX = Math.min(minX, coords[k]);
+            maxX = Math.max(maxX, coords[k]);
+            minY = Math.min(minY, coords[k + 1]);
+            maxY = Math.max(maxY, coords[k + 1]);
+        }
+        out[0] = minX;
+        out[1] = maxX;
+        out[2] = minY;
+        out[3] = maxY;
+    }
+
+    @Override
+    public boolean containsPoint(double[] coords, int from, int count, double x, double y) {
+        int base = from * 2;
+        int crossings = 0;
+        int i = 0;
+        // 边 p[i] -> p[i+1]，每次处理 LANES 条
+        for (; i + LANES < count; i += LANES) {
+            int k = base + i * 2;
+            DoubleVector xi = DoubleVector.fromArray(SPECIES, coords, k, strideIndex, 0);
+            DoubleVector yi = DoubleVector.fromArray(SPECIES, coords, k + 1, strideIndex, 0);
+            DoubleVector xj = DoubleVector.fromArray(SPECIES, coords, k + 2, strideIndex, 0);
+            DoubleVector yj = DoubleVector.fromArray(SPECIES, coords, k + 3, strideIndex, 0);
+            VectorMask<Double> straddles = yi.compare(VectorOperators.GT, y)
+                    .eq(yj.compare(VectorOperators.GT, y)).not();
+            if (!straddles.anyTrue()) {
+                continue;
+            }
+            // 水平边不会被选中，除零结果被掩码排除
+            DoubleVector crossX = xj.sub(xi).mul(yi.neg().add(y)).div(yj.sub(yi)).add(xi);
+            crossings += straddles.and(crossX.compare(VectorOperators.GT, x)).trueCount();
+        }
+        // 剩余的边及闭合边（末点 -> 首点）
+        for (; i < count; i++) {
+            int k = base + i * 2;
+            int next = base + (i + 1 < count ? i + 1 : 0) * 2;
+            double xi = coords[k];
+            double yi = coords[k + 1];
+            double xj = coords[next];
+            double yj = coords[next + 1];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                crossings++;
+            }
+        }
+        return (crossings & 1) != 0;
+    }
+}